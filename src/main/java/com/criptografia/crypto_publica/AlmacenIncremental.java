@@ -0,0 +1,487 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Cifrado incremental de archivos grandes con fragmentación definida por el contenido.
+ *
+ * Pensado para instantáneas que cambian poco entre una copia y la siguiente: el texto
+ * plano se corta en fragmentos cuyos límites dependen del contenido (hash "Gear"
+ * rodante), de modo que insertar o borrar bytes solo altera los fragmentos cercanos.
+ * Cada fragmento se identifica por el HMAC-SHA256 de su contenido y se cifra por
+ * separado con AES-GCM o ChaCha20-Poly1305 (el que indique la cabecera del archivo de
+ * claves, fijado al crear el almacén); si el almacén ya tiene un fragmento con ese id, no se vuelve
+ * a cifrar ni a escribir.
+ *
+ * Estructura del almacén (un directorio):
+ * - almacen.clave:  [Long. cabecera (2)][Cabecera del sobre][Long. clave (2)][Clave AES + clave HMAC envueltas (EnvolvedorClave)]
+ * - fragmentos/xx/<id hex>:  [Nonce (12)][Fragmento cifrado + Tag (16)]       (AAD = id del fragmento)
+ *
+ * Manifiesto firmado de cada archivo:
+ * [Magia "CPMF" (4)][Versión (1)][Longitud del archivo (8)][Cantidad (4)]
+ * cantidad × [Id (32)][Longitud del fragmento (4)]
+ * [Long. algoritmo (2)][Algoritmo de firma (UTF-8)][Long. firma (2)][Firma de todo lo anterior]
+ *
+ * La tabla "Gear" se deriva de la clave HMAC, así que los puntos de corte tampoco
+ * revelan el contenido a quien no tiene la clave. Los fragmentos que ya no referencia
+ * ningún manifiesto no se borran automáticamente.
+ */
+public class AlmacenIncremental {
+
+    private static final byte[] MAGIA = {'C', 'P', 'M', 'F'};
+    private static final int VERSION = 1;
+    private static final String ARCHIVO_CLAVE = "almacen.clave";
+    private static final String DIRECTORIO_FRAGMENTOS = "fragmentos";
+
+    // Tamaños de fragmento: mínimo, medio (por la máscara) y máximo
+    private static final int FRAGMENTO_MIN = 16 * 1024;
+    private static final int FRAGMENTO_MAX = 256 * 1024;
+    private static final long MASCARA_CORTE = (1L << 16) - 1; // media ~64 KB después del mínimo
+
+    private static final int TAMANIO_ID = 32;
+    private static final int TAMANIO_CLAVE = 32;
+    private static final int TAMANIO_TAG = 16;
+    private static final String ALGORITMO_HMAC = "HmacSHA256";
+
+    private final Path directorio;
+    private final CifradoDatos cifradoDatos;
+    private final SecretKey claveAES;
+    private final SecretKeySpec claveHMAC;
+    private final long[] tablaGear;
+
+    /**
+     * Resultado de cifrar un archivo en el almacén.
+     */
+    public static class Resultado {
+        private final long fragmentos;
+        private final long fragmentosNuevos;
+        private final long bytesTotales;
+        private final long bytesNuevos;
+        private final long duracionNanos;
+
+        Resultado(long fragmentos, long fragmentosNuevos, long bytesTotales, long bytesNuevos, long duracionNanos) {
+            this.fragmentos       = fragmentos;
+            this.fragmentosNuevos = fragmentosNuevos;
+            this.bytesTotales     = bytesTotales;
+            this.bytesNuevos      = bytesNuevos;
+            this.duracionNanos    = duracionNanos;
+        }
+
+        public long getFragmentos() {
+            return fragmentos;
+        }
+
+        public long getFragmentosNuevos() {
+            return fragmentosNuevos;
+        }
+
+        public long getBytesTotales() {
+            return bytesTotales;
+        }
+
+        public long getBytesNuevos() {
+            return bytesNuevos;
+        }
+
+        public long getDuracionNanos() {
+            return duracionNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d fragmentos (%d nuevos), %d bytes (%d cifrados y escritos) en %.2f s",
+                    fragmentos, fragmentosNuevos, bytesTotales, bytesNuevos, duracionNanos / 1e9);
+        }
+    }
+
+    private AlmacenIncremental(Path directorio, CifradoDatos cifradoDatos, byte[] claves) throws Exception {
+        this.directorio   = directorio;
+        this.cifradoDatos = cifradoDatos;
+        this.claveAES     = new SecretKeySpec(claves, 0, TAMANIO_CLAVE, "AES");
+        this.claveHMAC    = new SecretKeySpec(claves, TAMANIO_CLAVE, TAMANIO_CLAVE, ALGORITMO_HMAC);
+        this.tablaGear    = derivarTablaGear(claveHMAC);
+    }
+
+    // =========================================================================
+    //                          CREACIÓN Y APERTURA
+    // =========================================================================
+
+    /**
+     * Crea un almacén nuevo con claves aleatorias protegidas por la clave pública del propietario.
+     *
+     * @param directorio Directorio del almacén (se crea si no existe)
+     * @param clavePub   Clave pública RSA, EC o ML-KEM del propietario
+     * @return Almacén listo para usar
+     * @throws Exception si el almacén ya existe o la E/S falla
+     */
+    public static AlmacenIncremental crear(Path directorio, PublicKey clavePub) throws Exception {
+        Files.createDirectories(directorio.resolve(DIRECTORIO_FRAGMENTOS));
+        byte[] claves = FuenteAleatoria.bytes(2 * TAMANIO_CLAVE);
+
+        CabeceraSobre datosCabecera = new CabeceraSobre(GeneradorClaves.calcularHuella(clavePub));
+        datosCabecera.setCifrado(CifradoDatos.preferido());
+        byte[] cabecera = datosCabecera.codificar();
+        byte[] claveCifrada = EnvolvedorClave.envolver(new SecretKeySpec(claves, "AES"), clavePub);
+        ByteBuffer archivo = ByteBuffer.allocate(2 + cabecera.length + 2 + claveCifrada.length);
+        archivo.putShort((short) cabecera.length).put(cabecera);
+        archivo.putShort((short) claveCifrada.length).put(claveCifrada);
+        Files.write(directorio.resolve(ARCHIVO_CLAVE), archivo.array(), StandardOpenOption.CREATE_NEW);
+
+        AlmacenIncremental almacen = new AlmacenIncremental(directorio, datosCabecera.getCifrado(), claves);
+        Arrays.fill(claves, (byte) 0);
+        return almacen;
+    }
+
+    /**
+     * Indica si el directorio ya contiene un almacén.
+     *
+     * @param directorio Directorio a comprobar
+     * @return true si existe su archivo de claves
+     */
+    public static boolean existe(Path directorio) {
+        return Files.exists(directorio.resolve(ARCHIVO_CLAVE));
+    }
+
+    /**
+     * Abre un almacén existente. Se necesita la clave privada tanto para cifrar
+     * (los ids de fragmento dependen de la clave HMAC) como para descifrar. Si la clave
+     * pública se puede derivar de la privada, el id de clave de la cabecera se comprueba
+     * antes de desenvolver nada.
+     *
+     * @param directorio Directorio del almacén
+     * @param clavePriv  Clave privada del propietario
+     * @return Almacén listo para usar
+     * @throws Exception si el archivo de claves no es válido o la clave no corresponde
+     */
+    public static AlmacenIncremental abrir(Path directorio, PrivateKey clavePriv) throws Exception {
+        ByteBuffer archivo = ByteBuffer.wrap(Files.readAllBytes(directorio.resolve(ARCHIVO_CLAVE)));
+        CabeceraSobre datosCabecera = CabeceraSobre.decodificar(leerCampo(archivo));
+        PublicKey clavePub = GeneradorClaves.clavePublicaDe(clavePriv);
+        if (clavePub != null && (datosCabecera.getIdClave() == null
+                || !MessageDigest.isEqual(datosCabecera.getIdClave(), GeneradorClaves.calcularHuella(clavePub)))) {
+            throw new IllegalArgumentException("El almacén está protegido con otra clave");
+        }
+        CifradoDatos cifradoDatos = datosCabecera.getCifrado();
+        byte[] claveCifrada = leerCampo(archivo);
+        byte[] claves = EnvolvedorClave.desenvolver(claveCifrada, clavePriv).getEncoded();
+        if (claves.length != 2 * TAMANIO_CLAVE) {
+            throw new IllegalArgumentException("Archivo de claves del almacén no válido");
+        }
+        AlmacenIncremental almacen = new AlmacenIncremental(directorio, cifradoDatos, claves);
+        Arrays.fill(claves, (byte) 0);
+        return almacen;
+    }
+
+    // =========================================================================
+    //                              CIFRADO
+    // =========================================================================
+
+    /**
+     * Cifra un archivo en el almacén: solo los fragmentos nuevos se cifran y escriben.
+     *
+     * @param origen         Archivo en claro
+     * @param manifiesto     Manifiesto firmado a crear (describe el archivo)
+     * @param clavePrivFirma Clave privada para firmar el manifiesto
+     * @param algoritmoFirma Algoritmo de firma (MotorFirma.FIRMA_RSA o FIRMA_ECDSA)
+     * @return Estadísticas de reutilización
+     * @throws Exception si la lectura, el cifrado o la escritura fallan
+     */
+    public Resultado cifrar(Path origen, Path manifiesto, PrivateKey clavePrivFirma, String algoritmoFirma)
+            throws Exception {
+        long inicio = System.nanoTime();
+        Mac mac = Mac.getInstance(ALGORITMO_HMAC);
+        mac.init(claveHMAC);
+        Cipher cipherAES = cifradoDatos.crear();
+
+        ByteArrayOutputStream entradas = new ByteArrayOutputStream();
+        long fragmentos = 0, nuevos = 0, bytesTotales = 0, bytesNuevos = 0;
+
+        try (InputStream entrada = Files.newInputStream(origen)) {
+            Fragmentador fragmentador = new Fragmentador(entrada, tablaGear);
+            byte[] fragmento;
+            while ((fragmento = fragmentador.siguiente()) != null) {
+                byte[] id = mac.doFinal(fragmento);
+                Path ruta = rutaFragmento(id);
+                if (!Files.exists(ruta)) {
+                    escribirFragmento(cipherAES, id, fragmento, ruta);
+                    nuevos++;
+                    bytesNuevos += fragmento.length;
+                }
+                entradas.write(id);
+                entradas.write(ByteBuffer.allocate(4).putInt(fragmento.length).array());
+                fragmentos++;
+                bytesTotales += fragmento.length;
+            }
+        }
+
+        byte[] cuerpo = ByteBuffer.allocate(MAGIA.length + 1 + 8 + 4 + entradas.size())
+                .put(MAGIA)
+                .put((byte) VERSION)
+                .putLong(bytesTotales)
+                .putInt((int) fragmentos)
+                .put(entradas.toByteArray())
+                .array();
+        Signature firma = SelectorProveedores.signature(algoritmoFirma);
+        firma.initSign(clavePrivFirma, FuenteAleatoria.obtener());
+        firma.update(cuerpo);
+        byte[] valorFirma = firma.sign();
+        RegistroAuditoria.registrar(RegistroAuditoria.FIRMAR,
+                algoritmoFirma + " (manifiesto " + manifiesto.getFileName() + ")");
+
+        byte[] nombreAlgoritmo = algoritmoFirma.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer salida = ByteBuffer.allocate(cuerpo.length + 2 + nombreAlgoritmo.length + 2 + valorFirma.length);
+        salida.put(cuerpo);
+        salida.putShort((short) nombreAlgoritmo.length).put(nombreAlgoritmo);
+        salida.putShort((short) valorFirma.length).put(valorFirma);
+        escribirAtomico(manifiesto, salida.array());
+
+        return new Resultado(fragmentos, nuevos, bytesTotales, bytesNuevos, System.nanoTime() - inicio);
+    }
+
+    private void escribirFragmento(Cipher cipherAES, byte[] id, byte[] fragmento, Path ruta) throws Exception {
+        // Nonce aleatorio: cada id se cifra una sola vez, pero dos procesos podrían coincidir
+        byte[] nonce = FuenteAleatoria.bytes(GeneradorNonce.TAMANIO_NONCE);
+        cifradoDatos.reiniciar(cipherAES, Cipher.ENCRYPT_MODE, claveAES, nonce);
+        cipherAES.updateAAD(id);
+        byte[] salida = new byte[nonce.length + fragmento.length + TAMANIO_TAG];
+        System.arraycopy(nonce, 0, salida, 0, nonce.length);
+        cipherAES.doFinal(fragmento, 0, fragmento.length, salida, nonce.length);
+        Files.createDirectories(ruta.getParent());
+        escribirAtomico(ruta, salida);
+    }
+
+    // =========================================================================
+    //                              DESCIFRADO
+    // =========================================================================
+
+    /**
+     * Verifica la firma del manifiesto y reconstruye el archivo original.
+     *
+     * @param manifiesto     Manifiesto firmado
+     * @param clavePubFirma  Clave pública del firmante del manifiesto
+     * @param algoritmoFirma Algoritmo de firma esperado (MotorFirma.FIRMA_RSA o FIRMA_ECDSA)
+     * @param salida         Destino del texto plano
+     * @throws Exception si la firma no es válida o usa otro algoritmo, falta un fragmento o alguno fue alterado
+     */
+    public void descifrar(Path manifiesto, PublicKey clavePubFirma, String algoritmoFirma, OutputStream salida)
+            throws Exception {
+        ByteBuffer datos = ByteBuffer.wrap(Files.readAllBytes(manifiesto));
+        int minimo = MAGIA.length + 1 + 8 + 4;
+        if (datos.remaining() < minimo
+                || !Arrays.equals(datos.array(), 0, MAGIA.length, MAGIA, 0, MAGIA.length)
+                || datos.get(MAGIA.length) != VERSION) {
+            throw new IllegalArgumentException("Manifiesto no reconocido");
+        }
+        long longitud = datos.getLong(MAGIA.length + 1);
+        int cantidad = datos.getInt(MAGIA.length + 9);
+        long tamanioCuerpo = minimo + (long) cantidad * (TAMANIO_ID + 4);
+        if (cantidad < 0 || tamanioCuerpo > datos.capacity()) {
+            throw new IllegalArgumentException("Manifiesto truncado");
+        }
+        datos.position((int) tamanioCuerpo);
+        String algoritmo = new String(leerCampo(datos), StandardCharsets.UTF_8);
+        byte[] valorFirma = leerCampo(datos);
+        if (!algoritmo.equals(algoritmoFirma)) {
+            throw new IllegalArgumentException("Algoritmo de firma inesperado: " + algoritmo);
+        }
+
+        // 1. Verificar la firma antes de tocar ningún fragmento
+        Signature verificador = SelectorProveedores.signature(algoritmoFirma);
+        verificador.initVerify(clavePubFirma);
+        verificador.update(datos.array(), 0, (int) tamanioCuerpo);
+        if (!verificador.verify(valorFirma)) {
+            throw new SecurityException("La firma del manifiesto no es válida");
+        }
+
+        // 2. Descifrar y comprobar cada fragmento en orden
+        Mac mac = Mac.getInstance(ALGORITMO_HMAC);
+        mac.init(claveHMAC);
+        Cipher cipherAES = cifradoDatos.crear();
+        long escritos = 0;
+        byte[] id = new byte[TAMANIO_ID];
+        for (int i = 0; i < cantidad; i++) {
+            int posicion = minimo + i * (TAMANIO_ID + 4);
+            datos.get(posicion, id);
+            int longitudFragmento = datos.getInt(posicion + TAMANIO_ID);
+
+            byte[] cifrado = Files.readAllBytes(rutaFragmento(id));
+            if (cifrado.length != GeneradorNonce.TAMANIO_NONCE + longitudFragmento + TAMANIO_TAG) {
+                throw new IllegalStateException("Fragmento " + i + " con longitud inesperada");
+            }
+            cifradoDatos.reiniciar(cipherAES, Cipher.DECRYPT_MODE, claveAES,
+                    Arrays.copyOf(cifrado, GeneradorNonce.TAMANIO_NONCE));
+            cipherAES.updateAAD(id);
+            byte[] fragmento = cipherAES.doFinal(cifrado, GeneradorNonce.TAMANIO_NONCE,
+                    cifrado.length - GeneradorNonce.TAMANIO_NONCE);
+            if (!MessageDigest.isEqual(mac.doFinal(fragmento), id)) {
+                throw new IllegalStateException("Fragmento " + i + " no corresponde a su id");
+            }
+            salida.write(fragmento);
+            escritos += fragmento.length;
+        }
+        if (escritos != longitud) {
+            throw new IllegalStateException("Longitud reconstruida distinta de la del manifiesto");
+        }
+        RegistroAuditoria.registrar(RegistroAuditoria.DESCIFRAR, "incremental (" + manifiesto.getFileName() + ")");
+        salida.flush();
+    }
+
+    // =========================================================================
+    //                      FRAGMENTACIÓN POR CONTENIDO
+    // =========================================================================
+
+    /**
+     * Fragmentador con hash "Gear" rodante: h = (h << 1) + gear[byte]. Se corta cuando
+     * los bits bajos del hash son cero, respetando los tamaños mínimo y máximo.
+     */
+    private static class Fragmentador {
+        private final InputStream entrada;
+        private final long[] gear;
+        private final byte[] bufer = new byte[1024 * 1024];
+        private int inicio = 0;
+        private int fin = 0;
+        private boolean agotado = false;
+
+        Fragmentador(InputStream entrada, long[] gear) {
+            this.entrada = entrada;
+            this.gear = gear;
+        }
+
+        byte[] siguiente() throws IOException {
+            rellenar();
+            int disponibles = fin - inicio;
+            if (disponibles == 0) {
+                return null;
+            }
+            int corte = Math.min(disponibles, FRAGMENTO_MAX);
+            if (disponibles > FRAGMENTO_MIN) {
+                long hash = 0;
+                for (int i = inicio + FRAGMENTO_MIN; i < inicio + corte; i++) {
+                    hash = (hash << 1) + gear[bufer[i] & 0xFF];
+                    if ((hash & MASCARA_CORTE) == 0) {
+                        corte = i + 1 - inicio;
+                        break;
+                    }
+                }
+            }
+            byte[] fragmento = Arrays.copyOfRange(bufer, inicio, inicio + corte);
+            inicio += corte;
+            return fragmento;
+        }
+
+        /**
+         * Mantiene al menos FRAGMENTO_MAX bytes en el búfer mientras quede entrada.
+         */
+        private void rellenar() throws IOException {
+            if (agotado || fin - inicio >= FRAGMENTO_MAX) {
+                return;
+            }
+            System.arraycopy(bufer, inicio, bufer, 0, fin - inicio);
+            fin -= inicio;
+            inicio = 0;
+            while (fin < bufer.length) {
+                int leidos = entrada.read(bufer, fin, bufer.length - fin);
+                if (leidos < 0) {
+                    agotado = true;
+                    break;
+                }
+                fin += leidos;
+            }
+        }
+    }
+
+    private static long[] derivarTablaGear(SecretKeySpec claveHMAC) throws Exception {
+        Mac mac = Mac.getInstance(ALGORITMO_HMAC);
+        mac.init(claveHMAC);
+        long[] tabla = new long[256];
+        for (int i = 0; i < tabla.length; i++) {
+            byte[] valor = mac.doFinal(("gear-" + i).getBytes(StandardCharsets.US_ASCII));
+            tabla[i] = ByteBuffer.wrap(valor).getLong();
+        }
+        return tabla;
+    }
+
+    // =========================================================================
+    //                              AUXILIARES
+    // =========================================================================
+
+    private Path rutaFragmento(byte[] id) {
+        String hex = HexFormat.of().formatHex(id);
+        return directorio.resolve(DIRECTORIO_FRAGMENTOS).resolve(hex.substring(0, 2)).resolve(hex);
+    }
+
+    private static void escribirAtomico(Path destino, byte[] contenido) throws IOException {
+        Path temporal = destino.resolveSibling(destino.getFileName() + ".tmp");
+        Files.write(temporal, contenido);
+        Files.move(temporal, destino, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static byte[] leerCampo(ByteBuffer entrada) {
+        if (entrada.remaining() < 2) {
+            throw new IllegalArgumentException("Datos truncados");
+        }
+        int longitud = entrada.getShort() & 0xFFFF;
+        if (entrada.remaining() < longitud) {
+            throw new IllegalArgumentException("Datos truncados");
+        }
+        byte[] campo = new byte[longitud];
+        entrada.get(campo);
+        return campo;
+    }
+
+    /**
+     * Lista los ids de fragmento que referencia un manifiesto (sin verificar su firma).
+     * Útil para calcular qué fragmentos siguen en uso.
+     *
+     * @param manifiesto Manifiesto del archivo
+     * @return Ids de fragmento en orden
+     * @throws IOException si la lectura falla
+     */
+    public static List<byte[]> fragmentosDe(Path manifiesto) throws IOException {
+        ByteBuffer datos = ByteBuffer.wrap(Files.readAllBytes(manifiesto));
+        int minimo = MAGIA.length + 1 + 8 + 4;
+        if (datos.capacity() < minimo) {
+            throw new IllegalArgumentException("Manifiesto no reconocido");
+        }
+        int cantidad = datos.getInt(MAGIA.length + 9);
+        if (cantidad < 0 || minimo + (long) cantidad * (TAMANIO_ID + 4) > datos.capacity()) {
+            throw new IllegalArgumentException("Manifiesto truncado");
+        }
+        List<byte[]> ids = new ArrayList<>(cantidad);
+        for (int i = 0; i < cantidad; i++) {
+            byte[] id = new byte[TAMANIO_ID];
+            datos.get(minimo + i * (TAMANIO_ID + 4), id);
+            ids.add(id);
+        }
+        return ids;
+    }
+}
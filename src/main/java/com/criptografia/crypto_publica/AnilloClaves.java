@@ -0,0 +1,151 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Anillo de claves indexado por identificador de clave (huella de la clave pública).
+ *
+ * Al descifrar un sobre híbrido, la clave privada se selecciona con una búsqueda
+ * en tabla hash a partir del identificador de la cabecera. El coste no depende
+ * de cuántas claves haya cargadas y nunca se malgasta una operación RSA privada
+ * probando claves que no corresponden.
+ *
+ * Estados de una clave:
+ * - ACTUAL:   se usa para cifrar y descifrar (solo puede haber una)
+ * - RETIRADA: solo se usa para descifrar mensajes antiguos tras una rotación
+ */
+public class AnilloClaves {
+
+    public enum Estado { ACTUAL, RETIRADA }
+
+    /**
+     * Entrada del anillo: par de claves con su identificador y estado.
+     */
+    public static class Entrada {
+        private final byte[] id;
+        private final PublicKey clavePub;
+        private final PrivateKey clavePriv;
+        private volatile Estado estado;
+
+        Entrada(byte[] id, PublicKey clavePub, PrivateKey clavePriv, Estado estado) {
+            this.id        = id;
+            this.clavePub  = clavePub;
+            this.clavePriv = clavePriv;
+            this.estado    = estado;
+        }
+
+        public byte[] getId() {
+            return id.clone();
+        }
+
+        public PublicKey getClavePub() {
+            return clavePub;
+        }
+
+        public PrivateKey getClavePriv() {
+            return clavePriv;
+        }
+
+        public Estado getEstado() {
+            return estado;
+        }
+    }
+
+    private final Map<ByteBuffer, Entrada> entradas = new ConcurrentHashMap<>();
+    private volatile Entrada actual;
+
+    /**
+     * Agrega un par de claves al anillo.
+     *
+     * @param par    Par de claves
+     * @param estado Estado inicial (si es ACTUAL, la clave actual previa pasa a RETIRADA)
+     * @return Identificador de la clave (huella SHA-256 de la pública)
+     * @throws Exception si no se puede calcular la huella
+     */
+    public byte[] agregar(KeyPair par, Estado estado) throws Exception {
+        byte[] id = GeneradorClaves.calcularHuella(par.getPublic());
+        Entrada entrada = new Entrada(id, par.getPublic(), par.getPrivate(), Estado.RETIRADA);
+        entradas.put(ByteBuffer.wrap(id), entrada);
+        if (estado == Estado.ACTUAL) {
+            activar(entrada);
+        }
+        return id.clone();
+    }
+
+    /**
+     * Rota la clave actual: el nuevo par pasa a ser ACTUAL y el anterior queda RETIRADO.
+     *
+     * @param nuevo Nuevo par de claves
+     * @return Identificador del nuevo par
+     * @throws Exception si no se puede calcular la huella
+     */
+    public byte[] rotar(KeyPair nuevo) throws Exception {
+        return agregar(nuevo, Estado.ACTUAL);
+    }
+
+    /**
+     * Elimina una clave del anillo (los mensajes cifrados para ella dejan de poder leerse).
+     *
+     * @param id Identificador de la clave
+     * @return true si la clave existía
+     */
+    public synchronized boolean eliminar(byte[] id) {
+        Entrada eliminada = entradas.remove(ByteBuffer.wrap(id));
+        if (eliminada != null && eliminada == actual) {
+            actual = null;
+        }
+        return eliminada != null;
+    }
+
+    /**
+     * Busca la entrada correspondiente a un identificador de clave en O(1).
+     *
+     * @param id Identificador de la clave
+     * @return Entrada encontrada, o null si el anillo no contiene esa clave
+     */
+    public Entrada buscar(byte[] id) {
+        return entradas.get(ByteBuffer.wrap(id));
+    }
+
+    /**
+     * @return Entrada de la clave actual, o null si no hay ninguna
+     */
+    public Entrada getActual() {
+        return actual;
+    }
+
+    /**
+     * @return Todas las entradas (actual y retiradas)
+     */
+    public Collection<Entrada> getEntradas() {
+        return new ArrayList<>(entradas.values());
+    }
+
+    public int tamanio() {
+        return entradas.size();
+    }
+
+    private synchronized void activar(Entrada nueva) {
+        Entrada previa = actual;
+        nueva.estado = Estado.ACTUAL;
+        actual = nueva;
+        if (previa != null && previa != nueva) {
+            previa.estado = Estado.RETIRADA;
+        }
+    }
+}
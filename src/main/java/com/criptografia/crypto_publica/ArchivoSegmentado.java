@@ -0,0 +1,360 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+
+/**
+ * Archivo cifrado con acceso aleatorio: segmentos AEAD de tamaño fijo
+ * (AES-GCM o ChaCha20-Poly1305, según indique la cabecera del sobre).
+ *
+ * Formato del archivo:
+ * [Magia "CPSG" (4)][Versión (1)]
+ * [Long. cabecera (2)][Cabecera del sobre][Long. clave (2)][Clave AES cifrada con RSA]
+ * [Prefijo de nonce (4)][Tamaño de segmento (4)][Longitud del texto plano (8)]
+ * [Segmento 0][Segmento 1]...[Segmento N-1]
+ *
+ * Cada segmento es [Datos cifrados][Tag GCM (16)] y solo el último puede ser más corto.
+ * Como todos los segmentos tienen el mismo tamaño, el índice de segmentos es implícito:
+ * la posición del segmento i se calcula en O(1) a partir del inicio de los datos.
+ *
+ * Cada segmento se autentica por separado con:
+ * - Nonce: prefijo + número de segmento (nunca se repite bajo la clave del archivo)
+ * - AAD:   SHA-256 de la cabecera del archivo + número de segmento + indicador de último
+ * Así no se pueden reordenar, mezclar entre archivos ni truncar segmentos sin detectarlo.
+ *
+ * Leer 4 KB de un archivo de 50 GB cuesta un único descifrado RSA (al abrir)
+ * más el descifrado de uno o dos segmentos.
+ */
+public class ArchivoSegmentado {
+
+    public static final int TAMANIO_SEGMENTO_POR_DEFECTO = 64 * 1024;
+    private static final int TAMANIO_SEGMENTO_MIN = 1024;
+    private static final int TAMANIO_SEGMENTO_MAX = 16 * 1024 * 1024;
+
+    private static final byte[] MAGIA = {'C', 'P', 'S', 'G'};
+    private static final int VERSION = 1;
+    private static final int TAMANIO_TAG = 16;
+
+    // =========================================================================
+    //                              ESCRITURA
+    // =========================================================================
+
+    /**
+     * Cifra un archivo completo en formato segmentado.
+     *
+     * @param origen      Archivo en claro
+     * @param destino     Archivo cifrado a crear
+     * @param clavePubRSA Clave pública RSA del destinatario
+     * @throws Exception si el cifrado o la E/S fallan
+     */
+    public static void cifrar(Path origen, Path destino, PublicKey clavePubRSA) throws Exception {
+        try (InputStream entrada = Files.newInputStream(origen);
+             OutputStream salida = Files.newOutputStream(destino)) {
+            cifrar(entrada, Files.size(origen), salida, clavePubRSA, TAMANIO_SEGMENTO_POR_DEFECTO);
+        }
+    }
+
+    /**
+     * Cifra un flujo de longitud conocida en formato segmentado.
+     *
+     * @param entrada          Flujo en claro
+     * @param longitud         Cantidad exacta de bytes que se leerán de la entrada
+     * @param salida           Flujo de salida
+     * @param clavePubRSA      Clave pública RSA del destinatario
+     * @param tamanioSegmento  Tamaño del segmento en claro (bytes)
+     * @throws Exception si el cifrado o la E/S fallan
+     */
+    public static void cifrar(InputStream entrada, long longitud, OutputStream salida, PublicKey clavePubRSA,
+                              int tamanioSegmento) throws Exception {
+        if (tamanioSegmento < TAMANIO_SEGMENTO_MIN || tamanioSegmento > TAMANIO_SEGMENTO_MAX) {
+            throw new IllegalArgumentException("Tamaño de segmento fuera de rango: " + tamanioSegmento);
+        }
+        if (longitud < 0) {
+            throw new IllegalArgumentException("Longitud negativa");
+        }
+
+        SecretKey claveAES = MotorCifrado.generarClaveDatos();
+        GeneradorNonce nonces = new GeneradorNonce();
+        byte[] prefijo = nonces.getPrefijo();
+        CabeceraSobre datosCabecera = new CabeceraSobre(GeneradorClaves.calcularHuella(clavePubRSA));
+        CifradoDatos cifradoDatos = CifradoDatos.preferido();
+        datosCabecera.setCifrado(cifradoDatos);
+        byte[] cabeceraArchivo = codificarCabecera(datosCabecera.codificar(),
+                EnvolvedorClave.envolver(claveAES, clavePubRSA),
+                prefijo, tamanioSegmento, longitud);
+        byte[] hashCabecera = SelectorProveedores.messageDigest("SHA-256").digest(cabeceraArchivo);
+        salida.write(cabeceraArchivo);
+
+        long segmentos = contarSegmentos(longitud, tamanioSegmento);
+        byte[] bloque = new byte[tamanioSegmento];
+        byte[] cifrado = new byte[tamanioSegmento + TAMANIO_TAG];
+        long restantes = longitud;
+        for (long i = 0; i < segmentos; i++) {
+            int n = (int) Math.min(tamanioSegmento, restantes);
+            leerCompleto(entrada, bloque, n);
+            restantes -= n;
+
+            Cipher cipherAES = cifradoDatos.iniciar(Cipher.ENCRYPT_MODE, claveAES,
+                    GeneradorNonce.componer(prefijo, i));
+            cipherAES.updateAAD(aad(hashCabecera, i, i == segmentos - 1));
+            int escritos = cipherAES.doFinal(bloque, 0, n, cifrado, 0);
+            salida.write(cifrado, 0, escritos);
+        }
+        salida.flush();
+    }
+
+    // =========================================================================
+    //                              LECTURA
+    // =========================================================================
+
+    /**
+     * Lee y descifra un rango de bytes de un archivo segmentado.
+     * Para muchas lecturas sobre el mismo archivo conviene usar {@link Lector}.
+     *
+     * @param archivo      Archivo cifrado
+     * @param clavePrivRSA Clave privada RSA del destinatario
+     * @param posicion     Posición inicial en el texto plano
+     * @param longitud     Cantidad de bytes a leer
+     * @return Bytes descifrados (menos de los pedidos si se alcanza el final)
+     * @throws Exception si el descifrado, la autenticación o la E/S fallan
+     */
+    public static byte[] leerRango(Path archivo, PrivateKey clavePrivRSA, long posicion, int longitud)
+            throws Exception {
+        try (Lector lector = abrir(archivo, clavePrivRSA)) {
+            return lector.leer(posicion, longitud);
+        }
+    }
+
+    /**
+     * Abre un archivo segmentado descifrando la clave de datos una sola vez.
+     *
+     * @param archivo      Archivo cifrado
+     * @param clavePrivRSA Clave privada RSA del destinatario
+     * @return Lector listo para leer rangos
+     * @throws Exception si el formato es inválido o la clave no corresponde
+     */
+    public static Lector abrir(Path archivo, PrivateKey clavePrivRSA) throws Exception {
+        return new Lector(archivo, clavePrivRSA, null);
+    }
+
+    /**
+     * Abre un archivo segmentado seleccionando la clave privada del anillo.
+     *
+     * @param archivo Archivo cifrado
+     * @param anillo  Anillo de claves del destinatario
+     * @return Lector listo para leer rangos
+     * @throws Exception si el formato es inválido o el anillo no contiene la clave
+     */
+    public static Lector abrir(Path archivo, AnilloClaves anillo) throws Exception {
+        return new Lector(archivo, null, anillo);
+    }
+
+    /**
+     * Lector de rangos de un archivo segmentado. Es seguro usarlo desde varios
+     * hilos: las lecturas del canal son posicionales y cada una usa su propio Cipher.
+     */
+    public static class Lector implements Closeable {
+        private final FileChannel canal;
+        private final SecretKey claveAES;
+        private final CifradoDatos cifradoDatos;
+        private final byte[] prefijo;
+        private final byte[] hashCabecera;
+        private final int tamanioSegmento;
+        private final long longitud;
+        private final long inicioDatos;
+        private final long segmentos;
+
+        private Lector(Path archivo, PrivateKey clavePrivRSA, AnilloClaves anillo) throws Exception {
+            canal = FileChannel.open(archivo, StandardOpenOption.READ);
+            try {
+                ByteBuffer inicio = leerExacto(0, MAGIA.length + 1 + 2);
+                for (byte b : MAGIA) {
+                    if (inicio.get() != b) {
+                        throw new IllegalArgumentException("El archivo no tiene formato segmentado");
+                    }
+                }
+                int version = inicio.get() & 0xFF;
+                if (version != VERSION) {
+                    throw new IllegalArgumentException("Versión de archivo segmentado no soportada: " + version);
+                }
+                long pos = inicio.position();
+                byte[] cabecera = new byte[inicio.getShort() & 0xFFFF];
+                pos += 2;
+                leerExacto(pos, cabecera.length).get(cabecera);
+                pos += cabecera.length;
+                byte[] claveCifrada = new byte[leerExacto(pos, 2).getShort() & 0xFFFF];
+                pos += 2;
+                leerExacto(pos, claveCifrada.length).get(claveCifrada);
+                pos += claveCifrada.length;
+
+                ByteBuffer parametros = leerExacto(pos, GeneradorNonce.TAMANIO_PREFIJO + 4 + 8);
+                prefijo = new byte[GeneradorNonce.TAMANIO_PREFIJO];
+                parametros.get(prefijo);
+                tamanioSegmento = parametros.getInt();
+                longitud = parametros.getLong();
+                inicioDatos = pos + parametros.capacity();
+                if (tamanioSegmento < TAMANIO_SEGMENTO_MIN || tamanioSegmento > TAMANIO_SEGMENTO_MAX
+                        || longitud < 0) {
+                    throw new IllegalArgumentException("Parámetros de archivo segmentado inválidos");
+                }
+                segmentos = contarSegmentos(longitud, tamanioSegmento);
+                long esperado = inicioDatos + longitud + segmentos * TAMANIO_TAG;
+                if (canal.size() != esperado) {
+                    throw new IllegalArgumentException("Archivo segmentado truncado o con datos sobrantes");
+                }
+
+                byte[] cabeceraArchivo = new byte[(int) inicioDatos];
+                leerExacto(0, cabeceraArchivo.length).get(cabeceraArchivo);
+                hashCabecera = SelectorProveedores.messageDigest("SHA-256").digest(cabeceraArchivo);
+
+                CabeceraSobre datosCabecera = CabeceraSobre.decodificar(cabecera);
+                cifradoDatos = datosCabecera.getCifrado();
+                PrivateKey clave = clavePrivRSA;
+                if (anillo != null) {
+                    byte[] idClave = datosCabecera.getIdClave();
+                    AnilloClaves.Entrada entrada = idClave == null ? null : anillo.buscar(idClave);
+                    if (entrada == null) {
+                        throw new IllegalArgumentException("El anillo no contiene la clave del destinatario");
+                    }
+                    clave = entrada.getClavePriv();
+                }
+                claveAES = EnvolvedorClave.desenvolver(claveCifrada, clave);
+            } catch (Exception ex) {
+                canal.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * @return Longitud total del texto plano
+         */
+        public long getLongitud() {
+            return longitud;
+        }
+
+        /**
+         * Descifra un rango del texto plano tocando solo los segmentos que lo cubren.
+         *
+         * @param posicion Posición inicial en el texto plano
+         * @param cantidad Cantidad de bytes a leer
+         * @return Bytes descifrados (menos de los pedidos si se alcanza el final)
+         * @throws Exception si algún segmento no se autentica o la E/S falla
+         */
+        public byte[] leer(long posicion, int cantidad) throws Exception {
+            if (posicion < 0 || cantidad < 0) {
+                throw new IllegalArgumentException("Rango inválido");
+            }
+            if (posicion >= longitud || cantidad == 0) {
+                return new byte[0];
+            }
+            int total = (int) Math.min(cantidad, longitud - posicion);
+            byte[] resultado = new byte[total];
+
+            long primero = posicion / tamanioSegmento;
+            long ultimo  = (posicion + total - 1) / tamanioSegmento;
+            int copiados = 0;
+            for (long i = primero; i <= ultimo; i++) {
+                byte[] plano = descifrarSegmento(i);
+                int desde = (int) (i == primero ? posicion - primero * tamanioSegmento : 0);
+                int n = Math.min(plano.length - desde, total - copiados);
+                System.arraycopy(plano, desde, resultado, copiados, n);
+                copiados += n;
+            }
+            return resultado;
+        }
+
+        private byte[] descifrarSegmento(long indice) throws Exception {
+            long desplazamiento = indice * tamanioSegmento;
+            int longitudPlano = (int) Math.min(tamanioSegmento, longitud - desplazamiento);
+            ByteBuffer cifrado = leerExacto(inicioDatos + desplazamiento + indice * TAMANIO_TAG,
+                    longitudPlano + TAMANIO_TAG);
+
+            Cipher cipherAES = cifradoDatos.iniciar(Cipher.DECRYPT_MODE, claveAES,
+                    GeneradorNonce.componer(prefijo, indice));
+            cipherAES.updateAAD(aad(hashCabecera, indice, indice == segmentos - 1));
+            return cipherAES.doFinal(cifrado.array(), 0, cifrado.capacity());
+        }
+
+        private ByteBuffer leerExacto(long posicion, int cantidad) throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate(cantidad);
+            while (buffer.hasRemaining()) {
+                if (canal.read(buffer, posicion + buffer.position()) < 0) {
+                    throw new EOFException("Archivo segmentado truncado");
+                }
+            }
+            buffer.flip();
+            return buffer;
+        }
+
+        @Override
+        public void close() throws IOException {
+            canal.close();
+        }
+    }
+
+    // =========================================================================
+    //                              AUXILIARES
+    // =========================================================================
+
+    private static byte[] codificarCabecera(byte[] cabecera, byte[] claveCifrada, byte[] prefijo,
+                                            int tamanioSegmento, long longitud) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(512);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.write(MAGIA);
+        out.writeByte(VERSION);
+        out.writeShort(cabecera.length);
+        out.write(cabecera);
+        out.writeShort(claveCifrada.length);
+        out.write(claveCifrada);
+        out.write(prefijo);
+        out.writeInt(tamanioSegmento);
+        out.writeLong(longitud);
+        return buffer.toByteArray();
+    }
+
+    private static long contarSegmentos(long longitud, int tamanioSegmento) {
+        // Un archivo vacío tiene un único segmento vacío, para que también quede autenticado
+        return Math.max(1, (longitud + tamanioSegmento - 1) / tamanioSegmento);
+    }
+
+    private static byte[] aad(byte[] hashCabecera, long indice, boolean ultimo) {
+        return ByteBuffer.allocate(hashCabecera.length + 9)
+                .put(hashCabecera)
+                .putLong(indice)
+                .put((byte) (ultimo ? 1 : 0))
+                .array();
+    }
+
+    private static void leerCompleto(InputStream entrada, byte[] destino, int cantidad) throws IOException {
+        int leidos = 0;
+        while (leidos < cantidad) {
+            int n = entrada.read(destino, leidos, cantidad - leidos);
+            if (n < 0) {
+                throw new EOFException("La entrada terminó antes de la longitud indicada");
+            }
+            leidos += n;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.PrintStream;
+import java.security.KeyPair;
+
+/**
+ * Banco de pruebas de la etapa de compresión del modo híbrido.
+ *
+ * Compara, para un mismo mensaje, el cifrado híbrido sin compresión y con
+ * compresión adaptativa: bytes escritos (longitud del sobre) y tiempo de
+ * extremo a extremo (cifrar + descifrar).
+ */
+public class BancoCompresion {
+
+    private static final int ITERACIONES_CALENTAMIENTO = 50;
+
+    /**
+     * Ejecuta la comparación e imprime los resultados.
+     *
+     * @param mensaje     Mensaje de prueba
+     * @param iteraciones Número de iteraciones medidas por variante
+     * @param out         Salida de resultados
+     * @throws Exception si el cifrado falla
+     */
+    public static void comparar(String mensaje, int iteraciones, PrintStream out) throws Exception {
+        KeyPair par = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_RSA, 2048);
+
+        long[] sinComprimir = medir(mensaje, par, null, iteraciones);
+        long[] conDeflate   = medir(mensaje, par, Compresion.DEFLATE, iteraciones);
+
+        out.printf("Mensaje: %d caracteres%n", mensaje.length());
+        out.printf("%-16s %14s %18s%n", "Variante", "Bytes escritos", "Tiempo medio (ms)");
+        out.printf("%-16s %14d %18.3f%n", "Sin compresión", sinComprimir[0], sinComprimir[1] / 1e6);
+        out.printf("%-16s %14d %18.3f%n", "Deflate (auto)", conDeflate[0], conDeflate[1] / 1e6);
+        out.printf("Ahorro: %.1f%% de bytes, %.1f%% de tiempo%n",
+                100.0 * (sinComprimir[0] - conDeflate[0]) / sinComprimir[0],
+                100.0 * (sinComprimir[1] - conDeflate[1]) / sinComprimir[1]);
+    }
+
+    /**
+     * @return {longitud del sobre, tiempo medio en nanosegundos de cifrar + descifrar}
+     */
+    private static long[] medir(String mensaje, KeyPair par, CodecCompresion codec, int iteraciones)
+            throws Exception {
+        String sobre = null;
+        for (int i = 0; i < ITERACIONES_CALENTAMIENTO; i++) {
+            sobre = MotorCifrado.cifrarHibrido(mensaje, par.getPublic(), codec);
+            MotorCifrado.descifrarHibrido(sobre, par.getPrivate());
+        }
+
+        long inicio = System.nanoTime();
+        for (int i = 0; i < iteraciones; i++) {
+            sobre = MotorCifrado.cifrarHibrido(mensaje, par.getPublic(), codec);
+            if (!MotorCifrado.descifrarHibrido(sobre, par.getPrivate()).equals(mensaje)) {
+                throw new IllegalStateException("El mensaje descifrado no coincide");
+            }
+        }
+        long duracion = System.nanoTime() - inicio;
+        return new long[]{sobre.length(), duracion / Math.max(1, iteraciones)};
+    }
+
+    /**
+     * Genera un mensaje JSON de ejemplo, similar a un registro de eventos.
+     *
+     * @param registros Número de registros
+     * @return Texto JSON
+     */
+    public static String generarJsonEjemplo(int registros) {
+        StringBuilder sb = new StringBuilder(registros * 120);
+        sb.append('[');
+        for (int i = 0; i < registros; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i)
+              .append(",\"nivel\":\"").append(i % 7 == 0 ? "WARN" : "INFO")
+              .append("\",\"servicio\":\"pagos-").append(i % 5)
+              .append("\",\"mensaje\":\"Operación procesada correctamente\",\"duracionMs\":")
+              .append(FuenteAleatoria.obtener().nextInt(500)).append('}');
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.crypto.SecretKey;
+
+/**
+ * Banco de rendimiento de las opciones que ofrece la interfaz, medido en esta máquina.
+ *
+ * Para cada configuración (RSA 2048/4096, EC 256/384) mide la generación de claves,
+ * el cifrado y descifrado (RSA directo e híbrido) y la firma y verificación.
+ * Si el JDK ofrece ML-KEM y ML-DSA (JDK 24 o posterior) se miden también
+ * ML-KEM-768/1024 (envoltura híbrida), ML-DSA-65/87 y las combinaciones
+ * clásica + poscuántica, para planificar la migración con costes reales.
+ * Cada prueba se calienta primero (para que el JIT compile las rutas calientes) y
+ * después se mide durante un tiempo fijo registrando la latencia de cada operación.
+ *
+ * Las operaciones del banco no se anotan en el registro de auditoría.
+ */
+public class BancoRendimiento {
+
+    // Mensaje pequeño para que también quepa en RSA directo con la clave de 2048 bits
+    public static final int TAMANIO_MENSAJE = 100;
+    private static final int TAMANIO_BLOQUE_DATOS = 64 * 1024;
+    private static final int MUESTRAS_MINIMAS = 3;
+
+    /**
+     * Resultado de una prueba.
+     */
+    public static class Medicion {
+        private final String configuracion;
+        private final String operacion;
+        private final long duracionNanos;
+        private final RegistroLatencias latencias;
+
+        Medicion(String configuracion, String operacion, long duracionNanos, RegistroLatencias latencias) {
+            this.configuracion = configuracion;
+            this.operacion     = operacion;
+            this.duracionNanos = duracionNanos;
+            this.latencias     = latencias;
+        }
+
+        public String getConfiguracion() {
+            return configuracion;
+        }
+
+        public String getOperacion() {
+            return operacion;
+        }
+
+        public RegistroLatencias getLatencias() {
+            return latencias;
+        }
+
+        public double getOpsPorSegundo() {
+            return duracionNanos == 0 ? 0 : latencias.getCantidad() * 1_000_000_000.0 / duracionNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-20s %-22s %10.1f op/s  %s",
+                    configuracion, operacion, getOpsPorSegundo(), latencias.resumen());
+        }
+    }
+
+    /**
+     * Recibe cada medición en cuanto termina.
+     */
+    @FunctionalInterface
+    public interface Progreso {
+        void medicion(Medicion medicion, int completadas, int total);
+    }
+
+    @FunctionalInterface
+    private interface Tarea {
+        void ejecutar() throws Exception;
+    }
+
+    private static class Caso {
+        final String configuracion;
+        final String operacion;
+        final Tarea tarea;
+
+        Caso(String configuracion, String operacion, Tarea tarea) {
+            this.configuracion = configuracion;
+            this.operacion = operacion;
+            this.tarea = tarea;
+        }
+    }
+
+    /**
+     * Ejecuta todas las pruebas. Se puede cancelar interrumpiendo el hilo.
+     *
+     * @param calentamientoMillis Tiempo de calentamiento por prueba
+     * @param medicionMillis      Tiempo de medición por prueba
+     * @param progreso            Receptor de cada medición (puede ser null)
+     * @return Todas las mediciones, en el orden en que se hicieron
+     * @throws Exception si una operación falla o el hilo se interrumpe
+     */
+    public static List<Medicion> ejecutar(long calentamientoMillis, long medicionMillis, Progreso progreso)
+            throws Exception {
+        List<Medicion> resultados = new ArrayList<>();
+        RegistroAuditoria.sinAuditoria(() -> {
+            List<Caso> casos = new ArrayList<>();
+            agregarCasosRSA(casos, 2048);
+            agregarCasosRSA(casos, 4096);
+            agregarCasosEC(casos, 256);
+            agregarCasosEC(casos, 384);
+            if (GeneradorClaves.disponible(GeneradorClaves.ALGORITMO_ML_KEM)) {
+                agregarCasosMLKEM(casos, 768);
+                agregarCasosMLKEM(casos, 1024);
+            }
+            if (GeneradorClaves.disponible(GeneradorClaves.ALGORITMO_ML_DSA)) {
+                agregarCasosMLDSA(casos, 65);
+                agregarCasosMLDSA(casos, 87);
+            }
+            if (GeneradorClaves.disponible(GeneradorClaves.ALGORITMO_ML_KEM)
+                    && GeneradorClaves.disponible(GeneradorClaves.ALGORITMO_ML_DSA)) {
+                agregarCasosHibridos(casos);
+            }
+            agregarCasosCifradoDatos(casos);
+
+            for (Caso caso : casos) {
+                Medicion medicion = medir(caso, calentamientoMillis, medicionMillis);
+                resultados.add(medicion);
+                if (progreso != null) {
+                    progreso.medicion(medicion, resultados.size(), casos.size());
+                }
+            }
+        });
+        return resultados;
+    }
+
+    private static void agregarCasosRSA(List<Caso> casos, int tamanio) throws Exception {
+        String config = GeneradorClaves.ALGORITMO_RSA + "-" + tamanio;
+        KeyPair par = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_RSA, tamanio);
+        String mensaje = mensajePrueba();
+        String cifradoRSA = MotorCifrado.cifrarRSA(mensaje, par.getPublic());
+        String cifradoHibrido = MotorCifrado.cifrarHibrido(mensaje, par.getPublic());
+        String firma = MotorFirma.firmar(mensaje, par.getPrivate(), MotorFirma.FIRMA_RSA);
+
+        casos.add(new Caso(config, "generar claves",
+                () -> GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_RSA, tamanio)));
+        casos.add(new Caso(config, "cifrar RSA directo", () -> MotorCifrado.cifrarRSA(mensaje, par.getPublic())));
+        casos.add(new Caso(config, "descifrar RSA directo", () -> MotorCifrado.descifrarRSA(cifradoRSA, par.getPrivate())));
+        casos.add(new Caso(config, "cifrar híbrido", () -> MotorCifrado.cifrarHibrido(mensaje, par.getPublic())));
+        casos.add(new Caso(config, "descifrar híbrido",
+                () -> MotorCifrado.descifrarHibrido(cifradoHibrido, par.getPrivate())));
+        casos.add(new Caso(config, "firmar", () -> MotorFirma.firmar(mensaje, par.getPrivate(), MotorFirma.FIRMA_RSA)));
+        casos.add(new Caso(config, "verificar",
+                () -> MotorFirma.verificar(mensaje, firma, par.getPublic(), MotorFirma.FIRMA_RSA)));
+    }
+
+    private static void agregarCasosEC(List<Caso> casos, int tamanio) throws Exception {
+        String config = GeneradorClaves.ALGORITMO_EC + "-" + tamanio;
+        KeyPair par = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_EC, tamanio);
+        String mensaje = mensajePrueba();
+        String cifradoHibrido = MotorCifrado.cifrarHibrido(mensaje, par.getPublic());
+        String firma = MotorFirma.firmar(mensaje, par.getPrivate(), MotorFirma.FIRMA_ECDSA);
+
+        casos.add(new Caso(config, "generar claves",
+                () -> GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_EC, tamanio)));
+        casos.add(new Caso(config, "cifrar híbrido", () -> MotorCifrado.cifrarHibrido(mensaje, par.getPublic())));
+        casos.add(new Caso(config, "descifrar híbrido",
+                () -> MotorCifrado.descifrarHibrido(cifradoHibrido, par.getPrivate())));
+        casos.add(new Caso(config, "firmar", () -> MotorFirma.firmar(mensaje, par.getPrivate(), MotorFirma.FIRMA_ECDSA)));
+        casos.add(new Caso(config, "verificar",
+                () -> MotorFirma.verificar(mensaje, firma, par.getPublic(), MotorFirma.FIRMA_ECDSA)));
+    }
+
+    private static void agregarCasosMLKEM(List<Caso> casos, int parametros) throws Exception {
+        String config = GeneradorClaves.ALGORITMO_ML_KEM + "-" + parametros;
+        KeyPair par = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_ML_KEM, parametros);
+        String mensaje = mensajePrueba();
+        String cifradoHibrido = MotorCifrado.cifrarHibrido(mensaje, par.getPublic());
+
+        casos.add(new Caso(config, "generar claves",
+                () -> GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_ML_KEM, parametros)));
+        casos.add(new Caso(config, "cifrar híbrido", () -> MotorCifrado.cifrarHibrido(mensaje, par.getPublic())));
+        casos.add(new Caso(config, "descifrar híbrido",
+                () -> MotorCifrado.descifrarHibrido(cifradoHibrido, par.getPrivate())));
+    }
+
+    private static void agregarCasosMLDSA(List<Caso> casos, int parametros) throws Exception {
+        String config = GeneradorClaves.ALGORITMO_ML_DSA + "-" + parametros;
+        KeyPair par = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_ML_DSA, parametros);
+        String mensaje = mensajePrueba();
+        String firma = MotorFirma.firmar(mensaje, par.getPrivate(), MotorFirma.FIRMA_ML_DSA);
+
+        casos.add(new Caso(config, "generar claves",
+                () -> GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_ML_DSA, parametros)));
+        casos.add(new Caso(config, "firmar", () -> MotorFirma.firmar(mensaje, par.getPrivate(), MotorFirma.FIRMA_ML_DSA)));
+        casos.add(new Caso(config, "verificar",
+                () -> MotorFirma.verificar(mensaje, firma, par.getPublic(), MotorFirma.FIRMA_ML_DSA)));
+    }
+
+    /**
+     * Combinaciones clásica + poscuántica: RSA-3072 y EC-256 con ML-KEM-768 (cifrado)
+     * y con ML-DSA-65 (firma), los niveles de seguridad comparables.
+     */
+    private static void agregarCasosHibridos(List<Caso> casos) throws Exception {
+        String mensaje = mensajePrueba();
+        KeyPair kem = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_ML_KEM, 768);
+        KeyPair dsa = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_ML_DSA, 65);
+
+        for (String algoritmo : new String[]{GeneradorClaves.ALGORITMO_RSA, GeneradorClaves.ALGORITMO_EC}) {
+            boolean rsa = algoritmo.equals(GeneradorClaves.ALGORITMO_RSA);
+            KeyPair clasico = GeneradorClaves.generarParClaves(algoritmo, rsa ? 3072 : 256);
+            String algoritmoFirma = rsa ? MotorFirma.FIRMA_RSA : MotorFirma.FIRMA_ECDSA;
+            String prefijo = algoritmo + "-" + (rsa ? 3072 : 256);
+
+            String configCifrado = prefijo + "+ML-KEM-768";
+            String cifrado = MotorCifrado.cifrarHibrido(mensaje, clasico.getPublic(), kem.getPublic());
+            casos.add(new Caso(configCifrado, "cifrar híbrido",
+                    () -> MotorCifrado.cifrarHibrido(mensaje, clasico.getPublic(), kem.getPublic())));
+            casos.add(new Caso(configCifrado, "descifrar híbrido",
+                    () -> MotorCifrado.descifrarHibrido(cifrado, clasico.getPrivate(), kem.getPrivate())));
+
+            String configFirma = prefijo + "+ML-DSA-65";
+            String firma = MotorFirma.firmarHibrido(mensaje, clasico.getPrivate(), algoritmoFirma, dsa.getPrivate());
+            casos.add(new Caso(configFirma, "firmar",
+                    () -> MotorFirma.firmarHibrido(mensaje, clasico.getPrivate(), algoritmoFirma, dsa.getPrivate())));
+            casos.add(new Caso(configFirma, "verificar", () -> MotorFirma.verificarHibrido(
+                    mensaje, firma, clasico.getPublic(), algoritmoFirma, dsa.getPublic())));
+        }
+    }
+
+    /**
+     * Cifrado del contenido sin la envoltura de la clave, con bloques de 64 KB: compara
+     * AES-GCM y ChaCha20-Poly1305 en esta máquina (ver CifradoDatos).
+     */
+    private static void agregarCasosCifradoDatos(List<Caso> casos) throws Exception {
+        byte[] bloque = new byte[TAMANIO_BLOQUE_DATOS];
+        SecretKey clave = MotorCifrado.generarClaveDatos();
+        for (CifradoDatos cifrado : CifradoDatos.values()) {
+            CabeceraSobre datosCabecera = new CabeceraSobre();
+            datosCabecera.setCifrado(cifrado);
+            byte[] cabecera = datosCabecera.codificar();
+            byte[] sellado;
+            try {
+                sellado = MotorCifrado.cifrarContenido(clave, cabecera, cifrado, bloque);
+            } catch (GeneralSecurityException ex) {
+                continue; // cifrado no disponible en este JDK
+            }
+            casos.add(new Caso(cifrado.getNombre(), "cifrar 64 KB",
+                    () -> MotorCifrado.cifrarContenido(clave, cabecera, cifrado, bloque)));
+            casos.add(new Caso(cifrado.getNombre(), "descifrar 64 KB",
+                    () -> MotorCifrado.descifrarContenido(clave, cabecera, datosCabecera, sellado)));
+        }
+    }
+
+    private static Medicion medir(Caso caso, long calentamientoMillis, long medicionMillis) throws Exception {
+        // Calentamiento: al menos una operación
+        long fin = System.nanoTime() + calentamientoMillis * 1_000_000L;
+        do {
+            comprobarInterrupcion();
+            caso.tarea.ejecutar();
+        } while (System.nanoTime() < fin);
+
+        RegistroLatencias latencias = new RegistroLatencias();
+        long inicio = System.nanoTime();
+        fin = inicio + medicionMillis * 1_000_000L;
+        long ahora = inicio;
+        while (ahora < fin || latencias.getCantidad() < MUESTRAS_MINIMAS) {
+            comprobarInterrupcion();
+            long t0 = System.nanoTime();
+            caso.tarea.ejecutar();
+            ahora = System.nanoTime();
+            latencias.registrar(ahora - t0);
+        }
+        return new Medicion(caso.configuracion, caso.operacion, ahora - inicio, latencias);
+    }
+
+    private static void comprobarInterrupcion() throws InterruptedException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedException("Banco de rendimiento cancelado");
+        }
+    }
+
+    private static String mensajePrueba() {
+        StringBuilder sb = new StringBuilder(TAMANIO_MENSAJE);
+        while (sb.length() < TAMANIO_MENSAJE) {
+            sb.append("Mensaje de prueba. ");
+        }
+        return sb.substring(0, TAMANIO_MENSAJE);
+    }
+
+    /**
+     * Convierte las mediciones a CSV (separador coma, punto decimal) para planificación de capacidad.
+     *
+     * @param mediciones Mediciones a exportar
+     * @return Texto CSV con cabecera
+     */
+    public static String aCsv(List<Medicion> mediciones) {
+        StringBuilder sb = new StringBuilder("configuracion,operacion,ops_por_segundo,muestras,"
+                + "p50_ms,p90_ms,p99_ms,max_ms,promedio_ms\n");
+        for (Medicion m : mediciones) {
+            RegistroLatencias l = m.getLatencias();
+            sb.append(String.format(Locale.ROOT, "%s,%s,%.2f,%d,%.4f,%.4f,%.4f,%.4f,%.4f\n",
+                    m.getConfiguracion(), m.getOperacion(), m.getOpsPorSegundo(), l.getCantidad(),
+                    RegistroLatencias.ms(l.percentil(50)), RegistroLatencias.ms(l.percentil(90)),
+                    RegistroLatencias.ms(l.percentil(99)), RegistroLatencias.ms(l.maximo()),
+                    l.promedio() / 1_000_000.0));
+        }
+        return sb.toString();
+    }
+}
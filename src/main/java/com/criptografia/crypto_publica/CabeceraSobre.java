@@ -0,0 +1,249 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cabecera binaria de los sobres híbridos.
+ *
+ * Formato:
+ * [Versión (1 byte)] + campos [Etiqueta (1 byte)][Longitud (2 bytes)][Valor]
+ *
+ * Campos definidos:
+ * - ETIQUETA_ID_CLAVE: huella SHA-256 de la clave pública del destinatario
+ * - ETIQUETA_FIRMA:    algoritmo de la firma incrustada al final del texto plano
+ * - ETIQUETA_COMPRESION: códec aplicado antes de cifrar [Id (1)] + [Longitud original (4)]
+ * - ETIQUETA_DESTINATARIOS: número de destinatarios de un sobre multidestinatario (4)
+ * - ETIQUETA_CIFRADO: cifrado del contenido (1), ver CifradoDatos; sin ella, AES-GCM
+ *
+ * Una etiqueta desconocida hace fallar la decodificación: es preferible
+ * rechazar un sobre que no se entiende por completo a descifrarlo a medias.
+ * La cabecera codificada se usa como dato autenticado (AAD) del cifrado AES-GCM.
+ */
+public class CabeceraSobre {
+
+    public static final int VERSION_ACTUAL = 1;
+
+    // Etiquetas de campos
+    static final int ETIQUETA_ID_CLAVE = 0x01;
+    static final int ETIQUETA_FIRMA    = 0x02;
+    static final int ETIQUETA_COMPRESION = 0x03;
+    static final int ETIQUETA_DESTINATARIOS = 0x04;
+    static final int ETIQUETA_CIFRADO = 0x05;
+
+    // Límite de tamaño de un valor (u16)
+    private static final int MAX_VALOR = 0xFFFF;
+
+    private int version = VERSION_ACTUAL;
+    private byte[] idClave;
+    private String algoritmoFirma;
+    private int codecCompresion;
+    private int longitudOriginal;
+    private int destinatarios;
+    private CifradoDatos cifrado = CifradoDatos.AES_GCM;
+
+    public CabeceraSobre() {
+    }
+
+    public CabeceraSobre(byte[] idClave) {
+        this.idClave = idClave;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return Huella de la clave pública del destinatario, o null si no se indicó
+     */
+    public byte[] getIdClave() {
+        return idClave;
+    }
+
+    public void setIdClave(byte[] idClave) {
+        this.idClave = idClave;
+    }
+
+    /**
+     * @return Algoritmo de la firma incrustada (ver MotorFirmaCifrado), o null si el sobre no va firmado
+     */
+    public String getAlgoritmoFirma() {
+        return algoritmoFirma;
+    }
+
+    public void setAlgoritmoFirma(String algoritmoFirma) {
+        this.algoritmoFirma = algoritmoFirma;
+    }
+
+    /**
+     * @return Identificador del códec de compresión (0 = sin compresión)
+     */
+    public int getCodecCompresion() {
+        return codecCompresion;
+    }
+
+    /**
+     * @return Longitud del texto plano antes de comprimir (solo si hay compresión)
+     */
+    public int getLongitudOriginal() {
+        return longitudOriginal;
+    }
+
+    /**
+     * Indica que el texto plano fue comprimido antes de cifrar.
+     *
+     * @param codec            Identificador del códec
+     * @param longitudOriginal Longitud del texto plano sin comprimir
+     */
+    public void setCompresion(int codec, int longitudOriginal) {
+        this.codecCompresion  = codec;
+        this.longitudOriginal = longitudOriginal;
+    }
+
+    /**
+     * @return Número de destinatarios (0 si el sobre tiene un único destinatario)
+     */
+    public int getDestinatarios() {
+        return destinatarios;
+    }
+
+    public void setDestinatarios(int destinatarios) {
+        this.destinatarios = destinatarios;
+    }
+
+    /**
+     * @return Cifrado del contenido (AES-GCM si la cabecera no lo indica)
+     */
+    public CifradoDatos getCifrado() {
+        return cifrado;
+    }
+
+    public void setCifrado(CifradoDatos cifrado) {
+        this.cifrado = cifrado;
+    }
+
+    /**
+     * Serializa la cabecera a bytes.
+     *
+     * @return Cabecera codificada
+     */
+    public byte[] codificar() {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(64);
+        salida.write(version);
+        if (idClave != null) {
+            escribirCampo(salida, ETIQUETA_ID_CLAVE, idClave);
+        }
+        if (algoritmoFirma != null) {
+            escribirCampo(salida, ETIQUETA_FIRMA, algoritmoFirma.getBytes(StandardCharsets.UTF_8));
+        }
+        if (codecCompresion != 0) {
+            byte[] valor = new byte[5];
+            valor[0] = (byte) codecCompresion;
+            System.arraycopy(entero(longitudOriginal), 0, valor, 1, 4);
+            escribirCampo(salida, ETIQUETA_COMPRESION, valor);
+        }
+        if (destinatarios != 0) {
+            escribirCampo(salida, ETIQUETA_DESTINATARIOS, entero(destinatarios));
+        }
+        // AES-GCM no se registra: así los sobres siguen siendo legibles por versiones anteriores
+        if (cifrado != CifradoDatos.AES_GCM) {
+            escribirCampo(salida, ETIQUETA_CIFRADO, new byte[]{(byte) cifrado.getId()});
+        }
+        return salida.toByteArray();
+    }
+
+    /**
+     * Reconstruye una cabecera a partir de sus bytes.
+     *
+     * @param datos Cabecera codificada
+     * @return Cabecera decodificada
+     * @throws IllegalArgumentException si el formato o la versión son inválidos
+     */
+    public static CabeceraSobre decodificar(byte[] datos) {
+        if (datos.length == 0) {
+            throw new IllegalArgumentException("Cabecera de sobre vacía");
+        }
+        CabeceraSobre cabecera = new CabeceraSobre();
+        cabecera.version = datos[0] & 0xFF;
+        if (cabecera.version != VERSION_ACTUAL) {
+            throw new IllegalArgumentException("Versión de sobre no soportada: " + cabecera.version);
+        }
+
+        int pos = 1;
+        while (pos < datos.length) {
+            if (pos + 3 > datos.length) {
+                throw new IllegalArgumentException("Cabecera de sobre truncada");
+            }
+            int etiqueta = datos[pos] & 0xFF;
+            int longitud = ((datos[pos + 1] & 0xFF) << 8) | (datos[pos + 2] & 0xFF);
+            pos += 3;
+            if (pos + longitud > datos.length) {
+                throw new IllegalArgumentException("Cabecera de sobre truncada");
+            }
+            byte[] valor = new byte[longitud];
+            System.arraycopy(datos, pos, valor, 0, longitud);
+            pos += longitud;
+
+            switch (etiqueta) {
+                case ETIQUETA_ID_CLAVE:
+                    cabecera.idClave = valor;
+                    break;
+                case ETIQUETA_FIRMA:
+                    cabecera.algoritmoFirma = new String(valor, StandardCharsets.UTF_8);
+                    break;
+                case ETIQUETA_COMPRESION:
+                    if (valor.length != 5 || valor[0] == 0) {
+                        throw new IllegalArgumentException("Campo de compresión inválido");
+                    }
+                    cabecera.codecCompresion  = valor[0] & 0xFF;
+                    cabecera.longitudOriginal = leerEntero(valor, 1);
+                    if (cabecera.longitudOriginal < 0) {
+                        throw new IllegalArgumentException("Campo de compresión inválido");
+                    }
+                    break;
+                case ETIQUETA_DESTINATARIOS:
+                    if (valor.length != 4 || leerEntero(valor, 0) <= 0) {
+                        throw new IllegalArgumentException("Campo de destinatarios inválido");
+                    }
+                    cabecera.destinatarios = leerEntero(valor, 0);
+                    break;
+                case ETIQUETA_CIFRADO:
+                    if (valor.length != 1) {
+                        throw new IllegalArgumentException("Campo de cifrado inválido");
+                    }
+                    cabecera.cifrado = CifradoDatos.porId(valor[0] & 0xFF);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Campo de cabecera desconocido: " + etiqueta);
+            }
+        }
+        return cabecera;
+    }
+
+    private static void escribirCampo(ByteArrayOutputStream salida, int etiqueta, byte[] valor) {
+        if (valor.length > MAX_VALOR) {
+            throw new IllegalArgumentException("Campo de cabecera demasiado grande");
+        }
+        salida.write(etiqueta);
+        salida.write(valor.length >>> 8);
+        salida.write(valor.length);
+        salida.write(valor, 0, valor.length);
+    }
+
+    private static byte[] entero(int valor) {
+        return new byte[]{(byte) (valor >>> 24), (byte) (valor >>> 16), (byte) (valor >>> 8), (byte) valor};
+    }
+
+    private static int leerEntero(byte[] datos, int pos) {
+        return ((datos[pos] & 0xFF) << 24) | ((datos[pos + 1] & 0xFF) << 16)
+                | ((datos[pos + 2] & 0xFF) << 8) | (datos[pos + 3] & 0xFF);
+    }
+}
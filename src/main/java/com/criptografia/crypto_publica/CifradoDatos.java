@@ -0,0 +1,237 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Cifrado autenticado (AEAD) del contenido de los sobres.
+ *
+ * Ambos usan claves de 256 bits, nonce de 96 bits y tag de 128 bits, así que los
+ * formatos de sobre no cambian: solo se registra en la cabecera cuál se usó
+ * (ver CabeceraSobre.ETIQUETA_CIFRADO; sin la etiqueta, AES-GCM).
+ *
+ * ChaCha20-Poly1305 es mucho más rápido que AES-GCM en máquinas sin aceleración AES
+ * por hardware (p. ej. máquinas virtuales que la ocultan). El cifrado usado para
+ * sobres nuevos se elige:
+ * - Por propiedad del sistema: -Dcrypto.cifrado=AES-GCM | ChaCha20-Poly1305 | auto
+ * - En modo auto, el Precalentador mide ambos al arrancar y elige el más rápido;
+ *   hasta entonces se usa AES-GCM.
+ * Para descifrar siempre se usa el que indique la cabecera.
+ */
+public enum CifradoDatos {
+
+    AES_GCM(1, "AES-GCM", "AES/GCM/NoPadding", "AES"),
+    CHACHA20_POLY1305(2, "ChaCha20-Poly1305", "ChaCha20-Poly1305", "ChaCha20");
+
+    public static final int TAMANIO_TAG = 16;
+
+    static final String PROPIEDAD = "crypto.cifrado";
+
+    // Tiempo de medición por cifrado en modo automático y tamaño de cada operación
+    private static final long MEDICION_NANOS = 100_000_000L;
+    private static final int TAMANIO_MEDICION = 16 * 1024;
+
+    private static volatile CifradoDatos preferido = AES_GCM;
+    private static volatile String motivo = "por defecto";
+
+    static {
+        String valor = System.getProperty(PROPIEDAD);
+        if (valor != null && !valor.equalsIgnoreCase("auto")) {
+            try {
+                preferido = porNombre(valor);
+                motivo = "fijado por propiedad";
+            } catch (IllegalArgumentException ex) {
+                motivo = "propiedad ignorada: " + ex.getMessage();
+            }
+        }
+    }
+
+    private final int id;
+    private final String nombre;
+    private final String transformacion;
+    private final String algoritmoClave;
+
+    CifradoDatos(int id, String nombre, String transformacion, String algoritmoClave) {
+        this.id             = id;
+        this.nombre         = nombre;
+        this.transformacion = transformacion;
+        this.algoritmoClave = algoritmoClave;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getNombre() {
+        return nombre;
+    }
+
+    /**
+     * Crea e inicializa un Cipher con el nonce indicado.
+     *
+     * @param modo  Cipher.ENCRYPT_MODE o Cipher.DECRYPT_MODE
+     * @param clave Clave de datos de 256 bits
+     * @param nonce Nonce de 12 bytes (nunca repetido bajo la misma clave al cifrar)
+     * @return Cipher listo para usar
+     * @throws Exception si la inicialización falla
+     */
+    public Cipher iniciar(int modo, SecretKey clave, byte[] nonce) throws Exception {
+        Cipher cipher = crear();
+        reiniciar(cipher, modo, clave, nonce);
+        return cipher;
+    }
+
+    /**
+     * Crea un Cipher sin inicializar, para reutilizarlo con reiniciar() en bucles de registros.
+     *
+     * @return Cipher del proveedor elegido por SelectorProveedores
+     * @throws Exception si el cifrado no está disponible
+     */
+    public Cipher crear() throws Exception {
+        return SelectorProveedores.cipher(transformacion);
+    }
+
+    /**
+     * Inicializa (o reinicializa) un Cipher creado con crear() para un nonce nuevo.
+     *
+     * @param cipher Cipher de este cifrado
+     * @param modo   Cipher.ENCRYPT_MODE o Cipher.DECRYPT_MODE
+     * @param clave  Clave de datos de 256 bits
+     * @param nonce  Nonce de 12 bytes
+     * @throws Exception si la inicialización falla
+     */
+    public void reiniciar(Cipher cipher, int modo, SecretKey clave, byte[] nonce) throws Exception {
+        // La clave de datos se genera como "AES"; algunos proveedores exigen el nombre exacto
+        SecretKey claveCifrado = clave.getAlgorithm().equals(algoritmoClave)
+                ? clave
+                : new SecretKeySpec(clave.getEncoded(), algoritmoClave);
+        if (this == AES_GCM) {
+            cipher.init(modo, claveCifrado, new GCMParameterSpec(TAMANIO_TAG * 8, nonce));
+        } else {
+            cipher.init(modo, claveCifrado, new IvParameterSpec(nonce));
+        }
+    }
+
+    /**
+     * @param id Identificador registrado en la cabecera
+     * @return Cifrado correspondiente
+     * @throws IllegalArgumentException si el identificador es desconocido
+     */
+    public static CifradoDatos porId(int id) {
+        for (CifradoDatos cifrado : values()) {
+            if (cifrado.id == id) {
+                return cifrado;
+            }
+        }
+        throw new IllegalArgumentException("Cifrado de datos desconocido: " + id);
+    }
+
+    /**
+     * @param nombre Nombre del cifrado ("AES-GCM" o "ChaCha20-Poly1305", sin distinguir mayúsculas)
+     * @return Cifrado correspondiente
+     * @throws IllegalArgumentException si el nombre es desconocido
+     */
+    public static CifradoDatos porNombre(String nombre) {
+        for (CifradoDatos cifrado : values()) {
+            if (cifrado.nombre.equalsIgnoreCase(nombre)) {
+                return cifrado;
+            }
+        }
+        throw new IllegalArgumentException("Cifrado de datos desconocido: " + nombre);
+    }
+
+    // =========================================================================
+    //                              SELECCIÓN
+    // =========================================================================
+
+    /**
+     * @return Cifrado que se usa para los sobres nuevos
+     */
+    public static CifradoDatos preferido() {
+        return preferido;
+    }
+
+    /**
+     * Fija el cifrado para los sobres nuevos.
+     */
+    public static void fijar(CifradoDatos cifrado) {
+        preferido = cifrado;
+        motivo = "fijado";
+    }
+
+    /**
+     * Indica si el modo automático está activado por propiedad del sistema.
+     */
+    public static boolean autoActivado() {
+        return "auto".equalsIgnoreCase(System.getProperty(PROPIEDAD));
+    }
+
+    /**
+     * Mide el rendimiento de cifrado de AES-GCM y ChaCha20-Poly1305 en esta máquina
+     * y elige el más rápido para los sobres nuevos.
+     *
+     * @throws Exception si no se puede generar la clave de prueba
+     */
+    public static void autoseleccionar() throws Exception {
+        SecretKey clave = MotorCifrado.generarClaveDatos();
+        byte[] datos = new byte[TAMANIO_MEDICION];
+        byte[] salida = new byte[TAMANIO_MEDICION + TAMANIO_TAG];
+
+        StringBuilder detalle = new StringBuilder();
+        CifradoDatos mejor = AES_GCM;
+        double mejorMBs = -1;
+        for (CifradoDatos cifrado : values()) {
+            double mbs;
+            try {
+                mbs = medir(cifrado, clave, datos, salida);
+            } catch (Exception ex) {
+                detalle.append(cifrado.nombre).append(" no disponible; ");
+                continue;
+            }
+            detalle.append(String.format("%s %.0f MB/s; ", cifrado.nombre, mbs));
+            if (mbs > mejorMBs) {
+                mejorMBs = mbs;
+                mejor = cifrado;
+            }
+        }
+        preferido = mejor;
+        motivo = "automático (" + detalle.substring(0, Math.max(0, detalle.length() - 2)) + ")";
+    }
+
+    private static double medir(CifradoDatos cifrado, SecretKey clave, byte[] datos, byte[] salida)
+            throws Exception {
+        // Nonces distintos en cada operación: algunos proveedores rechazan repetirlos
+        GeneradorNonce nonces = new GeneradorNonce();
+        for (int i = 0; i < 20; i++) {
+            cifrado.iniciar(Cipher.ENCRYPT_MODE, clave, nonces.siguiente()).doFinal(datos, 0, datos.length, salida, 0);
+        }
+        long inicio = System.nanoTime();
+        long fin = inicio + MEDICION_NANOS;
+        long operaciones = 0;
+        long ahora;
+        do {
+            cifrado.iniciar(Cipher.ENCRYPT_MODE, clave, nonces.siguiente()).doFinal(datos, 0, datos.length, salida, 0);
+            operaciones++;
+            ahora = System.nanoTime();
+        } while (ahora < fin);
+        return operaciones * (double) datos.length / 1e6 / ((ahora - inicio) / 1e9);
+    }
+
+    /**
+     * @return Cifrado preferido y motivo de la elección
+     */
+    public static String diagnostico() {
+        return "Cifrado de datos: " + preferido.nombre + " (" + motivo + ")";
+    }
+}
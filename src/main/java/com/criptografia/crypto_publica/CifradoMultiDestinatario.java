@@ -0,0 +1,264 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Cifrado híbrido para varios destinatarios con un único cifrado del contenido.
+ *
+ * El mensaje se cifra una sola vez (AES-GCM o ChaCha20-Poly1305) y la clave de datos se envuelve
+ * para cada destinatario con EnvolvedorClave: RSA-OAEP, ECDH o ML-KEM según su clave
+ * (las envolturas se calculan en paralelo).
+ * El coste pasa de N × mensaje a mensaje + N operaciones de clave pública pequeñas.
+ *
+ * Formato de salida:
+ * [Cabecera (Base64)] + "||SEPARATOR||" + [Tabla de destinatarios (Base64)]
+ *     + "||SEPARATOR||" + [IV + Mensaje cifrado con AES (Base64)]
+ *
+ * Tabla de destinatarios (tabla hash de direccionamiento abierto):
+ * [Número de ranuras (4)] + ranuras × [Id de clave (32)][Posición (4)][Longitud (2)] + [Claves envueltas]
+ *
+ * La ranura de un destinatario se obtiene de los primeros bytes de su id de clave
+ * (sondeo lineal), de modo que cada receptor localiza su clave envuelta en O(1)
+ * sin recorrer la lista de destinatarios. Una ranura libre tiene longitud 0.
+ */
+public class CifradoMultiDestinatario {
+
+    private static final int TAMANIO_ID    = 32; // SHA-256
+    private static final int TAMANIO_RANURA = TAMANIO_ID + 4 + 2;
+
+    /**
+     * Cifra un mensaje para varios destinatarios.
+     *
+     * @param mensajeOriginal Texto plano a cifrar
+     * @param destinatarios   Claves públicas RSA, EC o ML-KEM de los destinatarios (se ignoran duplicados)
+     * @return Sobre multidestinatario
+     * @throws Exception si el cifrado o alguna envoltura fallan
+     */
+    public static String cifrar(String mensajeOriginal, List<PublicKey> destinatarios) throws Exception {
+        return cifrar(mensajeOriginal, destinatarios, null);
+    }
+
+    /**
+     * Cifra un mensaje para varios destinatarios, con compresión opcional.
+     *
+     * @param mensajeOriginal Texto plano a cifrar
+     * @param destinatarios   Claves públicas RSA, EC o ML-KEM de los destinatarios (se ignoran duplicados)
+     * @param codec           Códec de compresión, o null para no comprimir
+     * @return Sobre multidestinatario
+     * @throws Exception si el cifrado o alguna envoltura fallan
+     */
+    public static String cifrar(String mensajeOriginal, List<PublicKey> destinatarios,
+                                CodecCompresion codec) throws Exception {
+        // 1. Identificar destinatarios (sin duplicados, conservando el orden)
+        Map<ByteBuffer, PublicKey> porId = new LinkedHashMap<>();
+        for (PublicKey clavePub : destinatarios) {
+            porId.putIfAbsent(ByteBuffer.wrap(GeneradorClaves.calcularHuella(clavePub)), clavePub);
+        }
+        if (porId.isEmpty()) {
+            throw new IllegalArgumentException("Debe indicar al menos un destinatario");
+        }
+
+        // 2. Cifrar el contenido una sola vez
+        SecretKey claveAES = MotorCifrado.generarClaveDatos();
+        CabeceraSobre datosCabecera = new CabeceraSobre();
+        datosCabecera.setDestinatarios(porId.size());
+        datosCabecera.setCifrado(CifradoDatos.preferido());
+        byte[] textoPlano = MotorCifrado.comprimirSiConviene(
+                mensajeOriginal.getBytes(StandardCharsets.UTF_8), datosCabecera, codec);
+        byte[] cabecera = datosCabecera.codificar();
+        byte[] ivMasMensaje = MotorCifrado.cifrarContenido(claveAES, cabecera, datosCabecera.getCifrado(), textoPlano);
+
+        // 3. Envolver la clave de datos para cada destinatario en paralelo
+        List<ByteBuffer> ids = new ArrayList<>(porId.keySet());
+        byte[][] envolturas = new byte[ids.size()][];
+        try {
+            IntStream.range(0, ids.size()).parallel().forEach(i -> {
+                try {
+                    envolturas[i] = EnvolvedorClave.envolver(claveAES, porId.get(ids.get(i)));
+                } catch (Exception ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+        } catch (IllegalStateException ex) {
+            throw ex.getCause() instanceof Exception ? (Exception) ex.getCause() : ex;
+        }
+
+        // 4. Construir la tabla de destinatarios
+        byte[] tabla = construirTabla(ids, envolturas);
+
+        Base64.Encoder b64 = Base64.getEncoder();
+        return b64.encodeToString(cabecera) + MotorCifrado.SEPARADOR_HIBRIDO
+                + b64.encodeToString(tabla) + MotorCifrado.SEPARADOR_HIBRIDO
+                + b64.encodeToString(ivMasMensaje);
+    }
+
+    /**
+     * Descifra un sobre multidestinatario con una clave concreta.
+     *
+     * @param sobre        Sobre multidestinatario
+     * @param clavePub     Clave pública propia (identifica la entrada en la tabla)
+     * @param clavePriv    Clave privada correspondiente
+     * @return Mensaje original
+     * @throws Exception si la clave no es destinataria o el descifrado falla
+     */
+    public static String descifrar(String sobre, PublicKey clavePub, PrivateKey clavePriv) throws Exception {
+        Sobre s = Sobre.leer(sobre);
+        byte[] envoltura = s.buscar(GeneradorClaves.calcularHuella(clavePub));
+        if (envoltura == null) {
+            throw new IllegalArgumentException("La clave indicada no es destinataria del mensaje");
+        }
+        return s.descifrar(envoltura, clavePriv);
+    }
+
+    /**
+     * Descifra un sobre multidestinatario con la primera clave del anillo que sea destinataria.
+     * Se sondea la tabla una vez por clave del anillo; solo se desenvuelve una clave.
+     *
+     * @param sobre  Sobre multidestinatario
+     * @param anillo Anillo de claves del receptor
+     * @return Mensaje original
+     * @throws Exception si ninguna clave del anillo es destinataria o el descifrado falla
+     */
+    public static String descifrar(String sobre, AnilloClaves anillo) throws Exception {
+        Sobre s = Sobre.leer(sobre);
+        for (AnilloClaves.Entrada entrada : anillo.getEntradas()) {
+            byte[] envoltura = s.buscar(entrada.getId());
+            if (envoltura != null) {
+                return s.descifrar(envoltura, entrada.getClavePriv());
+            }
+        }
+        throw new IllegalArgumentException("Ninguna clave del anillo es destinataria del mensaje");
+    }
+
+    // =========================================================================
+    //                          TABLA DE DESTINATARIOS
+    // =========================================================================
+
+    private static byte[] construirTabla(List<ByteBuffer> ids, byte[][] envolturas) {
+        // Factor de carga <= 0.5 para que el sondeo sea corto
+        int ranuras = Integer.highestOneBit(Math.max(1, ids.size() * 2 - 1)) << 1;
+        int tamanioRanuras = 4 + ranuras * TAMANIO_RANURA;
+        int total = tamanioRanuras;
+        for (byte[] envoltura : envolturas) {
+            if (envoltura.length > 0xFFFF) {
+                throw new IllegalArgumentException("Clave envuelta demasiado grande");
+            }
+            total += envoltura.length;
+        }
+
+        ByteBuffer tabla = ByteBuffer.allocate(total);
+        tabla.putInt(0, ranuras);
+        int posicion = tamanioRanuras;
+        for (int i = 0; i < ids.size(); i++) {
+            byte[] id = ids.get(i).array();
+            int ranura = ranuraInicial(id, ranuras);
+            while (tabla.getShort(desplazamientoRanura(ranura) + TAMANIO_ID + 4) != 0) {
+                ranura = (ranura + 1) & (ranuras - 1);
+            }
+            int d = desplazamientoRanura(ranura);
+            tabla.put(d, id);
+            tabla.putInt(d + TAMANIO_ID, posicion);
+            tabla.putShort(d + TAMANIO_ID + 4, (short) envolturas[i].length);
+            tabla.put(posicion, envolturas[i]);
+            posicion += envolturas[i].length;
+        }
+        return tabla.array();
+    }
+
+    private static int ranuraInicial(byte[] id, int ranuras) {
+        int hash = ((id[0] & 0xFF) << 24) | ((id[1] & 0xFF) << 16) | ((id[2] & 0xFF) << 8) | (id[3] & 0xFF);
+        return hash & (ranuras - 1);
+    }
+
+    private static int desplazamientoRanura(int ranura) {
+        return 4 + ranura * TAMANIO_RANURA;
+    }
+
+    /**
+     * Sobre multidestinatario decodificado.
+     */
+    private static class Sobre {
+        byte[] cabecera;
+        CabeceraSobre datosCabecera;
+        ByteBuffer tabla;
+        int ranuras;
+        byte[] ivMasMensaje;
+
+        static Sobre leer(String texto) {
+            String[] partes = MotorCifrado.separarPartes(texto);
+            if (partes.length != 3) {
+                throw new IllegalArgumentException("El mensaje no es un sobre multidestinatario");
+            }
+            Sobre s = new Sobre();
+            Base64.Decoder b64 = Base64.getDecoder();
+            s.cabecera = b64.decode(partes[0]);
+            s.datosCabecera = CabeceraSobre.decodificar(s.cabecera);
+            if (s.datosCabecera.getDestinatarios() == 0 || s.datosCabecera.getAlgoritmoFirma() != null) {
+                throw new IllegalArgumentException("El mensaje no es un sobre multidestinatario");
+            }
+            s.tabla = ByteBuffer.wrap(b64.decode(partes[1]));
+            s.ivMasMensaje = b64.decode(partes[2]);
+
+            if (s.tabla.capacity() < 4) {
+                throw new IllegalArgumentException("Tabla de destinatarios truncada");
+            }
+            s.ranuras = s.tabla.getInt(0);
+            if (s.ranuras <= 0 || Integer.bitCount(s.ranuras) != 1
+                    || s.ranuras < s.datosCabecera.getDestinatarios()
+                    || (long) s.ranuras * TAMANIO_RANURA + 4 > s.tabla.capacity()) {
+                throw new IllegalArgumentException("Tabla de destinatarios inválida");
+            }
+            return s;
+        }
+
+        /**
+         * Busca la clave envuelta de un destinatario (sondeo lineal desde su ranura).
+         *
+         * @return Clave envuelta, o null si el id no está en la tabla
+         */
+        byte[] buscar(byte[] id) {
+            int ranura = ranuraInicial(id, ranuras);
+            for (int intentos = 0; intentos < ranuras; intentos++) {
+                int d = desplazamientoRanura(ranura);
+                int longitud = tabla.getShort(d + TAMANIO_ID + 4) & 0xFFFF;
+                if (longitud == 0) {
+                    return null;
+                }
+                if (Arrays.equals(tabla.array(), d, d + TAMANIO_ID, id, 0, id.length)) {
+                    int posicion = tabla.getInt(d + TAMANIO_ID);
+                    if (posicion < 0 || posicion + longitud > tabla.capacity()) {
+                        throw new IllegalArgumentException("Tabla de destinatarios inválida");
+                    }
+                    return Arrays.copyOfRange(tabla.array(), posicion, posicion + longitud);
+                }
+                ranura = (ranura + 1) & (ranuras - 1);
+            }
+            return null;
+        }
+
+        String descifrar(byte[] envoltura, PrivateKey clavePriv) throws Exception {
+            SecretKey claveAES = EnvolvedorClave.desenvolver(envoltura, clavePriv);
+            return new String(MotorCifrado.descifrarContenido(claveAES, cabecera, datosCabecera, ivMasMensaje),
+                    StandardCharsets.UTF_8);
+        }
+    }
+}
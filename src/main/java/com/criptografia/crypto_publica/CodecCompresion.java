@@ -0,0 +1,51 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.IOException;
+
+/**
+ * Códec de compresión aplicable antes del cifrado AES-GCM en modo híbrido.
+ *
+ * El identificador se guarda en la cabecera del sobre, por lo que debe ser
+ * estable y único. Los códecs propios se registran con Compresion.registrar.
+ */
+public interface CodecCompresion {
+
+    /**
+     * @return Identificador del códec (1..255), guardado en la cabecera del sobre
+     */
+    int getId();
+
+    /**
+     * @return Nombre legible del códec
+     */
+    String getNombre();
+
+    /**
+     * Comprime un bloque de datos.
+     *
+     * @param datos    Datos originales
+     * @param offset   Posición inicial
+     * @param longitud Cantidad de bytes a comprimir
+     * @return Datos comprimidos
+     * @throws IOException si la compresión falla
+     */
+    byte[] comprimir(byte[] datos, int offset, int longitud) throws IOException;
+
+    /**
+     * Descomprime un bloque cuya longitud original se conoce de antemano.
+     *
+     * @param datos            Datos comprimidos
+     * @param longitudOriginal Longitud exacta esperada del resultado
+     * @return Datos originales
+     * @throws IOException si los datos están corruptos o no coinciden con la longitud esperada
+     */
+    byte[] descomprimir(byte[] datos, int longitudOriginal) throws IOException;
+}
@@ -0,0 +1,186 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Etapa de compresión adaptativa del modo híbrido.
+ *
+ * Antes de comprimir un mensaje completo se comprime una muestra (inicio,
+ * centro y final del mensaje). Si la muestra no baja del umbral, el mensaje
+ * se considera incompresible (ya comprimido, cifrado, binario aleatorio) y
+ * se cifra tal cual, sin pagar el coste de Deflater.
+ */
+public final class Compresion {
+
+    /**
+     * Códec Deflate (zlib) de java.util.zip.
+     */
+    public static final CodecCompresion DEFLATE = new CodecDeflate(1, Deflater.DEFAULT_COMPRESSION);
+
+    // Los mensajes más cortos no compensan la cabecera ni el tiempo de compresión
+    private static final int LONGITUD_MINIMA = 256;
+
+    // Tamaño de cada ventana de la muestra (se toman hasta tres)
+    private static final int TAMANIO_VENTANA = 4096;
+
+    // Proporción comprimido/original a partir de la cual no se comprime
+    private static final double UMBRAL_PROPORCION = 0.90;
+
+    // Límite de tamaño al descomprimir (protege frente a "bombas" de compresión)
+    public static final int LIMITE_DESCOMPRESION = 256 * 1024 * 1024;
+
+    private static final Map<Integer, CodecCompresion> CODECS = new ConcurrentHashMap<>();
+
+    static {
+        registrar(DEFLATE);
+    }
+
+    private Compresion() {
+    }
+
+    /**
+     * Registra un códec para que pueda descomprimirse por su identificador.
+     *
+     * @param codec Códec a registrar
+     */
+    public static void registrar(CodecCompresion codec) {
+        if (codec.getId() < 1 || codec.getId() > 255) {
+            throw new IllegalArgumentException("El identificador del códec debe estar entre 1 y 255");
+        }
+        CodecCompresion previo = CODECS.putIfAbsent(codec.getId(), codec);
+        if (previo != null && previo != codec) {
+            throw new IllegalArgumentException("Identificador de códec ya registrado: " + codec.getId());
+        }
+    }
+
+    /**
+     * Busca un códec registrado.
+     *
+     * @param id Identificador guardado en la cabecera
+     * @return Códec correspondiente
+     * @throws IllegalArgumentException si el códec no está registrado
+     */
+    public static CodecCompresion porId(int id) {
+        CodecCompresion codec = CODECS.get(id);
+        if (codec == null) {
+            throw new IllegalArgumentException("Códec de compresión desconocido: " + id);
+        }
+        return codec;
+    }
+
+    /**
+     * Decide, a partir de una muestra, si vale la pena comprimir los datos.
+     *
+     * @param datos Datos a evaluar
+     * @param codec Códec con el que se comprimiría
+     * @return true si la muestra se comprime por debajo del umbral
+     * @throws IOException si la compresión de la muestra falla
+     */
+    public static boolean esCompresible(byte[] datos, CodecCompresion codec) throws IOException {
+        if (datos.length < LONGITUD_MINIMA) {
+            return false;
+        }
+        if (datos.length <= 3 * TAMANIO_VENTANA) {
+            return proporcion(datos, codec) < UMBRAL_PROPORCION;
+        }
+
+        byte[] muestra = new byte[3 * TAMANIO_VENTANA];
+        System.arraycopy(datos, 0, muestra, 0, TAMANIO_VENTANA);
+        System.arraycopy(datos, (datos.length - TAMANIO_VENTANA) / 2, muestra, TAMANIO_VENTANA, TAMANIO_VENTANA);
+        System.arraycopy(datos, datos.length - TAMANIO_VENTANA, muestra, 2 * TAMANIO_VENTANA, TAMANIO_VENTANA);
+        return proporcion(muestra, codec) < UMBRAL_PROPORCION;
+    }
+
+    private static double proporcion(byte[] muestra, CodecCompresion codec) throws IOException {
+        return (double) codec.comprimir(muestra, 0, muestra.length).length / muestra.length;
+    }
+
+    /**
+     * Implementación Deflate con nivel configurable.
+     */
+    private static class CodecDeflate implements CodecCompresion {
+        private final int id;
+        private final int nivel;
+
+        CodecDeflate(int id, int nivel) {
+            this.id    = id;
+            this.nivel = nivel;
+        }
+
+        @Override
+        public int getId() {
+            return id;
+        }
+
+        @Override
+        public String getNombre() {
+            return "Deflate";
+        }
+
+        @Override
+        public byte[] comprimir(byte[] datos, int offset, int longitud) {
+            Deflater deflater = new Deflater(nivel);
+            try {
+                deflater.setInput(datos, offset, longitud);
+                deflater.finish();
+                ByteArrayOutputStream salida = new ByteArrayOutputStream(Math.max(64, longitud / 4));
+                byte[] bloque = new byte[16 * 1024];
+                while (!deflater.finished()) {
+                    int n = deflater.deflate(bloque);
+                    salida.write(bloque, 0, n);
+                }
+                return salida.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        public byte[] descomprimir(byte[] datos, int longitudOriginal) throws IOException {
+            if (longitudOriginal < 0 || longitudOriginal > LIMITE_DESCOMPRESION) {
+                throw new IOException("Longitud descomprimida fuera de rango: " + longitudOriginal);
+            }
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(datos);
+                byte[] resultado = new byte[longitudOriginal];
+                int total = 0;
+                while (total < longitudOriginal && !inflater.finished()) {
+                    int n = inflater.inflate(resultado, total, longitudOriginal - total);
+                    if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        break;
+                    }
+                    total += n;
+                }
+                if (total == longitudOriginal && !inflater.finished()) {
+                    // Con el buffer justo lleno el fin del flujo puede no haberse procesado aún
+                    if (inflater.inflate(new byte[1]) != 0) {
+                        throw new IOException("Los datos descomprimidos superan la longitud esperada");
+                    }
+                }
+                if (total != longitudOriginal || !inflater.finished()) {
+                    throw new IOException("Datos comprimidos corruptos o de longitud inesperada");
+                }
+                return resultado;
+            } catch (DataFormatException e) {
+                throw new IOException("Datos comprimidos corruptos", e);
+            } finally {
+                inflater.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Contenedor cifrado con muchos archivos bajo una sola clave de datos.
+ *
+ * La clave de datos se envuelve una única vez con la clave pública RSA, EC o ML-KEM del
+ * destinatario (ver EnvolvedorClave). Cada archivo se divide en segmentos de 1 MB que
+ * se cifran con AES-GCM o ChaCha20-Poly1305 (según la cabecera) en paralelo sobre un
+ * ForkJoinPool (robo de trabajo): como el
+ * tamaño cifrado de cada segmento se conoce de antemano, cada tarea escribe en su
+ * posición final del contenedor sin esperar a las demás.
+ *
+ * Un índice central cifrado al final del contenedor describe los archivos, de modo
+ * que listar o extraer uno solo no requiere descifrar el resto.
+ *
+ * Formato:
+ * [Magia "CPAR" (4)][Versión (1)][Long. cabecera (2)][Cabecera del sobre]
+ * [Long. clave (2)][Clave de datos envuelta][Prefijo del nonce (4)]      ← apertura
+ * Segmentos: [Segmento cifrado + Tag (16)] ...                             (nonce = prefijo + contador)
+ * [Índice cifrado + Tag (16)]                                                (nonce = prefijo + 0)
+ * [Posición del índice (8)][Long. índice (4)][Magia "CPAR" (4)]             ← pie
+ *
+ * Índice en claro: [Cantidad (4)] cantidad × [Long. nombre (2)][Nombre UTF-8]
+ * [Longitud (8)][Posición (8)][Primer contador (8)]
+ *
+ * Todos los cifrados usan como AAD el SHA-256 de la apertura; el contador del
+ * nonce liga cada segmento a su archivo y a su lugar dentro de él.
+ */
+public class ContenedorCifrado implements AutoCloseable {
+
+    public static final int TAMANIO_SEGMENTO = 1024 * 1024;
+
+    private static final byte[] MAGIA = {'C', 'P', 'A', 'R'};
+    private static final int VERSION = 1;
+    private static final int TAMANIO_TAG = 16;
+    private static final int TAMANIO_PIE = 8 + 4 + MAGIA.length;
+
+    /**
+     * Archivo dentro del contenedor.
+     */
+    public static class Entrada {
+        private final String nombre;
+        private final long longitud;
+        private final long posicion;
+        private final long primerContador;
+
+        Entrada(String nombre, long longitud, long posicion, long primerContador) {
+            this.nombre         = nombre;
+            this.longitud       = longitud;
+            this.posicion       = posicion;
+            this.primerContador = primerContador;
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public long getLongitud() {
+            return longitud;
+        }
+
+        long segmentos() {
+            return (longitud + TAMANIO_SEGMENTO - 1) / TAMANIO_SEGMENTO;
+        }
+
+        long longitudCifrada() {
+            return longitud + segmentos() * TAMANIO_TAG;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%12d  %s", longitud, nombre);
+        }
+    }
+
+    /**
+     * Resultado de crear un contenedor.
+     */
+    public static class Resultado {
+        private final int archivos;
+        private final long bytes;
+        private final long duracionNanos;
+
+        Resultado(int archivos, long bytes, long duracionNanos) {
+            this.archivos      = archivos;
+            this.bytes         = bytes;
+            this.duracionNanos = duracionNanos;
+        }
+
+        public int getArchivos() {
+            return archivos;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getDuracionNanos() {
+            return duracionNanos;
+        }
+
+        @Override
+        public String toString() {
+            double segundos = duracionNanos / 1e9;
+            return String.format("%d archivos, %d bytes en %.2f s (%.1f MB/s)",
+                    archivos, bytes, segundos, segundos == 0 ? 0 : bytes / 1e6 / segundos);
+        }
+    }
+
+    private final FileChannel canal;
+    private final CifradoDatos cifradoDatos;
+    private final SecretKey claveDatos;
+    private final byte[] prefijo;
+    private final byte[] aad;
+    private final Map<String, Entrada> entradas;
+
+    private ContenedorCifrado(FileChannel canal, CifradoDatos cifradoDatos, SecretKey claveDatos, byte[] prefijo,
+                              byte[] aad, Map<String, Entrada> entradas) {
+        this.canal        = canal;
+        this.cifradoDatos = cifradoDatos;
+        this.claveDatos   = claveDatos;
+        this.prefijo      = prefijo;
+        this.aad          = aad;
+        this.entradas     = entradas;
+    }
+
+    // =========================================================================
+    //                              CREACIÓN
+    // =========================================================================
+
+    /**
+     * Empaqueta y cifra todos los archivos regulares de un directorio (recursivamente).
+     *
+     * @param directorio Directorio de origen
+     * @param destino    Contenedor a crear (se sobrescribe si existe)
+     * @param clavePub   Clave pública RSA, EC o ML-KEM del destinatario
+     * @param hilos      Hilos del pool (0 = uno por procesador)
+     * @return Estadísticas del empaquetado
+     * @throws Exception si la lectura, el cifrado o la escritura fallan
+     */
+    public static Resultado crear(Path directorio, Path destino, PublicKey clavePub, int hilos) throws Exception {
+        long inicio = System.nanoTime();
+        List<Path> archivos;
+        try (Stream<Path> recorrido = Files.walk(directorio)) {
+            archivos = recorrido.filter(Files::isRegularFile).sorted().toList();
+        }
+
+        // 1. Apertura: cabecera, clave envuelta una sola vez y prefijo del nonce
+        SecretKey claveDatos = MotorCifrado.generarClaveDatos();
+        byte[] prefijo = new GeneradorNonce().getPrefijo();
+        CabeceraSobre datosCabecera = new CabeceraSobre(GeneradorClaves.calcularHuella(clavePub));
+        CifradoDatos cifradoDatos = CifradoDatos.preferido();
+        datosCabecera.setCifrado(cifradoDatos);
+        byte[] cabecera = datosCabecera.codificar();
+        byte[] claveEnvuelta = EnvolvedorClave.envolver(claveDatos, clavePub);
+        byte[] apertura = ByteBuffer.allocate(MAGIA.length + 1 + 2 + cabecera.length + 2 + claveEnvuelta.length
+                        + prefijo.length)
+                .put(MAGIA)
+                .put((byte) VERSION)
+                .putShort((short) cabecera.length).put(cabecera)
+                .putShort((short) claveEnvuelta.length).put(claveEnvuelta)
+                .put(prefijo)
+                .array();
+        byte[] aad = SelectorProveedores.messageDigest("SHA-256").digest(apertura);
+
+        // 2. Plan: posición y contador de cada archivo, conocidos antes de cifrar
+        List<Entrada> plan = new ArrayList<>(archivos.size());
+        long posicion = apertura.length;
+        long contador = 1;
+        long bytes = 0;
+        for (Path archivo : archivos) {
+            String nombre = directorio.relativize(archivo).toString().replace('\\', '/');
+            Entrada entrada = new Entrada(nombre, Files.size(archivo), posicion, contador);
+            plan.add(entrada);
+            posicion += entrada.longitudCifrada();
+            contador += entrada.segmentos();
+            bytes += entrada.getLongitud();
+        }
+
+        try (FileChannel salida = FileChannel.open(destino, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            escribirCompleto(salida, ByteBuffer.wrap(apertura), 0);
+
+            // 3. Segmentos en paralelo, cada uno en su posición final
+            List<Callable<Void>> tareas = new ArrayList<>();
+            for (int i = 0; i < plan.size(); i++) {
+                Path origen = archivos.get(i);
+                Entrada entrada = plan.get(i);
+                for (long s = 0; s < entrada.segmentos(); s++) {
+                    long segmento = s;
+                    tareas.add(() -> {
+                        cifrarSegmento(origen, entrada, segmento, salida, cifradoDatos, claveDatos, prefijo, aad);
+                        return null;
+                    });
+                }
+            }
+            ejecutarEnParalelo(tareas, hilos);
+
+            // 4. Índice cifrado y pie
+            ByteArrayOutputStream indice = new ByteArrayOutputStream();
+            indice.write(ByteBuffer.allocate(4).putInt(plan.size()).array());
+            for (Entrada entrada : plan) {
+                byte[] nombre = entrada.getNombre().getBytes(StandardCharsets.UTF_8);
+                if (nombre.length > 0xFFFF) {
+                    throw new IllegalArgumentException("Nombre de archivo demasiado largo: " + entrada.getNombre());
+                }
+                indice.write(ByteBuffer.allocate(2 + nombre.length + 24)
+                        .putShort((short) nombre.length).put(nombre)
+                        .putLong(entrada.longitud).putLong(entrada.posicion).putLong(entrada.primerContador)
+                        .array());
+            }
+            Cipher cipherAES = cifradoDatos.iniciar(Cipher.ENCRYPT_MODE, claveDatos, GeneradorNonce.componer(prefijo, 0));
+            cipherAES.updateAAD(aad);
+            byte[] indiceCifrado = cipherAES.doFinal(indice.toByteArray());
+            escribirCompleto(salida, ByteBuffer.wrap(indiceCifrado), posicion);
+            escribirCompleto(salida, ByteBuffer.allocate(TAMANIO_PIE)
+                    .putLong(posicion).putInt(indiceCifrado.length).put(MAGIA).flip(),
+                    posicion + indiceCifrado.length);
+        }
+        return new Resultado(plan.size(), bytes, System.nanoTime() - inicio);
+    }
+
+    private static void cifrarSegmento(Path origen, Entrada entrada, long segmento, FileChannel salida,
+                                       CifradoDatos cifradoDatos, SecretKey claveDatos, byte[] prefijo, byte[] aad)
+            throws Exception {
+        long desplazamiento = segmento * TAMANIO_SEGMENTO;
+        int longitud = (int) Math.min(TAMANIO_SEGMENTO, entrada.longitud - desplazamiento);
+        ByteBuffer claro = ByteBuffer.allocate(longitud);
+        try (FileChannel lectura = FileChannel.open(origen, StandardOpenOption.READ)) {
+            leerCompleto(lectura, claro, desplazamiento);
+        } catch (EOFException ex) {
+            throw new IOException("El archivo cambió durante el empaquetado: " + origen, ex);
+        }
+        claro.flip();
+
+        Cipher cipherAES = cifradoDatos.iniciar(Cipher.ENCRYPT_MODE, claveDatos,
+                GeneradorNonce.componer(prefijo, entrada.primerContador + segmento));
+        cipherAES.updateAAD(aad);
+        ByteBuffer cifrado = ByteBuffer.allocate(longitud + TAMANIO_TAG);
+        cipherAES.doFinal(claro, cifrado);
+        cifrado.flip();
+        escribirCompleto(salida, cifrado, entrada.posicion + segmento * (TAMANIO_SEGMENTO + TAMANIO_TAG));
+    }
+
+    // =========================================================================
+    //                          APERTURA Y EXTRACCIÓN
+    // =========================================================================
+
+    /**
+     * Abre un contenedor: desenvuelve la clave y descifra solo el índice.
+     *
+     * @param contenedor Archivo del contenedor
+     * @param clavePriv  Clave privada RSA, EC o ML-KEM del destinatario
+     * @return Contenedor abierto (cerrar al terminar)
+     * @throws Exception si el formato no es válido o la clave no corresponde
+     */
+    public static ContenedorCifrado abrir(Path contenedor, PrivateKey clavePriv) throws Exception {
+        FileChannel canal = FileChannel.open(contenedor, StandardOpenOption.READ);
+        try {
+            long tamanio = canal.size();
+            ByteBuffer inicioApertura = ByteBuffer.allocate(MAGIA.length + 1 + 2);
+            if (tamanio < inicioApertura.capacity() + TAMANIO_PIE) {
+                throw new IllegalArgumentException("Contenedor no reconocido");
+            }
+            leerCompleto(canal, inicioApertura, 0);
+            if (!inicioApertura.flip().slice(0, MAGIA.length).equals(ByteBuffer.wrap(MAGIA))
+                    || inicioApertura.get(MAGIA.length) != VERSION) {
+                throw new IllegalArgumentException("Contenedor no reconocido");
+            }
+
+            // Apertura: cabecera, clave envuelta y prefijo
+            long posicion = inicioApertura.capacity();
+            byte[] cabecera = leerCampo(canal, posicion, inicioApertura.getShort(MAGIA.length + 1) & 0xFFFF);
+            CifradoDatos cifradoDatos = CabeceraSobre.decodificar(cabecera).getCifrado();
+            posicion += cabecera.length;
+            int longitudClave = ByteBuffer.wrap(leerCampo(canal, posicion, 2)).getShort() & 0xFFFF;
+            byte[] claveEnvuelta = leerCampo(canal, posicion + 2, longitudClave);
+            posicion += 2 + claveEnvuelta.length;
+            byte[] prefijo = leerCampo(canal, posicion, GeneradorNonce.TAMANIO_PREFIJO);
+            posicion += prefijo.length;
+
+            ByteBuffer apertura = ByteBuffer.allocate((int) posicion);
+            leerCompleto(canal, apertura, 0);
+            byte[] aad = SelectorProveedores.messageDigest("SHA-256").digest(apertura.array());
+
+            // Pie e índice
+            ByteBuffer pie = ByteBuffer.allocate(TAMANIO_PIE);
+            leerCompleto(canal, pie, tamanio - TAMANIO_PIE);
+            long posicionIndice = pie.getLong(0);
+            int longitudIndice = pie.getInt(8);
+            if (!pie.slice(12, MAGIA.length).equals(ByteBuffer.wrap(MAGIA))
+                    || posicionIndice < posicion || longitudIndice < 4 + TAMANIO_TAG
+                    || posicionIndice + longitudIndice + TAMANIO_PIE != tamanio) {
+                throw new IllegalArgumentException("Pie del contenedor no válido");
+            }
+            SecretKey claveDatos = EnvolvedorClave.desenvolver(claveEnvuelta, clavePriv);
+            byte[] indiceCifrado = leerCampo(canal, posicionIndice, longitudIndice);
+            Cipher cipherAES = cifradoDatos.iniciar(Cipher.DECRYPT_MODE, claveDatos, GeneradorNonce.componer(prefijo, 0));
+            cipherAES.updateAAD(aad);
+            ByteBuffer indice = ByteBuffer.wrap(cipherAES.doFinal(indiceCifrado));
+
+            // El índice está autenticado; aun así se comprueban los rangos antes de usarlos
+            int cantidad = indice.getInt();
+            Map<String, Entrada> entradas = new LinkedHashMap<>();
+            for (int i = 0; i < cantidad; i++) {
+                byte[] nombre = new byte[indice.getShort() & 0xFFFF];
+                indice.get(nombre);
+                Entrada entrada = new Entrada(new String(nombre, StandardCharsets.UTF_8),
+                        indice.getLong(), indice.getLong(), indice.getLong());
+                if (entrada.longitud < 0 || entrada.posicion < posicion
+                        || entrada.posicion + entrada.longitudCifrada() > posicionIndice) {
+                    throw new IllegalArgumentException("Entrada del índice fuera de rango: " + entrada.nombre);
+                }
+                entradas.put(entrada.nombre, entrada);
+            }
+            return new ContenedorCifrado(canal, cifradoDatos, claveDatos, prefijo, aad, entradas);
+        } catch (Exception ex) {
+            canal.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * @return Archivos del contenedor, en el orden en que se empaquetaron
+     */
+    public List<Entrada> getEntradas() {
+        return Collections.unmodifiableList(new ArrayList<>(entradas.values()));
+    }
+
+    /**
+     * Descifra un único archivo del contenedor.
+     *
+     * @param nombre Nombre del archivo (ruta relativa con '/')
+     * @param salida Destino del contenido en claro
+     * @throws Exception si el archivo no existe o algún segmento fue alterado
+     */
+    public void extraer(String nombre, OutputStream salida) throws Exception {
+        Entrada entrada = entradas.get(nombre);
+        if (entrada == null) {
+            throw new IllegalArgumentException("El contenedor no tiene el archivo: " + nombre);
+        }
+        for (long s = 0; s < entrada.segmentos(); s++) {
+            ByteBuffer claro = descifrarSegmento(entrada, s);
+            salida.write(claro.array(), 0, claro.limit());
+        }
+        salida.flush();
+    }
+
+    /**
+     * Descifra todos los archivos en paralelo dentro de un directorio.
+     *
+     * @param destino Directorio de destino
+     * @param hilos   Hilos del pool (0 = uno por procesador)
+     * @throws Exception si un nombre sale del directorio o algún segmento fue alterado
+     */
+    public void extraerTodo(Path destino, int hilos) throws Exception {
+        Path base = destino.toAbsolutePath().normalize();
+        List<Callable<Void>> tareas = new ArrayList<>();
+        for (Entrada entrada : entradas.values()) {
+            Path archivo = base.resolve(entrada.nombre).normalize();
+            if (!archivo.startsWith(base) || archivo.equals(base)) {
+                throw new IllegalArgumentException("Nombre de archivo no permitido: " + entrada.nombre);
+            }
+            // Crear (o vaciar) el archivo antes de repartir sus segmentos
+            Files.createDirectories(archivo.getParent());
+            Files.write(archivo, new byte[0]);
+            for (long s = 0; s < entrada.segmentos(); s++) {
+                long segmento = s;
+                tareas.add(() -> {
+                    ByteBuffer claro = descifrarSegmento(entrada, segmento);
+                    try (FileChannel escritura = FileChannel.open(archivo, StandardOpenOption.WRITE)) {
+                        escribirCompleto(escritura, claro, segmento * TAMANIO_SEGMENTO);
+                    }
+                    return null;
+                });
+            }
+        }
+        ejecutarEnParalelo(tareas, hilos);
+    }
+
+    private ByteBuffer descifrarSegmento(Entrada entrada, long segmento) throws Exception {
+        int longitud = (int) Math.min(TAMANIO_SEGMENTO, entrada.longitud - segmento * TAMANIO_SEGMENTO);
+        ByteBuffer cifrado = ByteBuffer.allocate(longitud + TAMANIO_TAG);
+        leerCompleto(canal, cifrado, entrada.posicion + segmento * (TAMANIO_SEGMENTO + TAMANIO_TAG));
+        cifrado.flip();
+
+        Cipher cipherAES = cifradoDatos.iniciar(Cipher.DECRYPT_MODE, claveDatos,
+                GeneradorNonce.componer(prefijo, entrada.primerContador + segmento));
+        cipherAES.updateAAD(aad);
+        ByteBuffer claro = ByteBuffer.allocate(longitud);
+        cipherAES.doFinal(cifrado, claro);
+        return claro.flip();
+    }
+
+    @Override
+    public void close() throws IOException {
+        canal.close();
+    }
+
+    // =========================================================================
+    //                              AUXILIARES
+    // =========================================================================
+
+    private static void ejecutarEnParalelo(List<Callable<Void>> tareas, int hilos) throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors());
+        try {
+            for (Future<Void> resultado : pool.invokeAll(tareas)) {
+                try {
+                    resultado.get();
+                } catch (ExecutionException ex) {
+                    throw ex.getCause() instanceof Exception causa ? causa : ex;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static byte[] leerCampo(FileChannel canal, long posicion, int longitud) throws IOException {
+        ByteBuffer campo = ByteBuffer.allocate(longitud);
+        leerCompleto(canal, campo, posicion);
+        return campo.array();
+    }
+
+    private static void leerCompleto(FileChannel canal, ByteBuffer destino, long posicion) throws IOException {
+        while (destino.hasRemaining()) {
+            int leidos = canal.read(destino, posicion);
+            if (leidos < 0) {
+                throw new EOFException("Contenedor truncado");
+            }
+            posicion += leidos;
+        }
+    }
+
+    private static void escribirCompleto(FileChannel canal, ByteBuffer origen, long posicion) throws IOException {
+        while (origen.hasRemaining()) {
+            posicion += canal.write(origen, posicion);
+        }
+    }
+}
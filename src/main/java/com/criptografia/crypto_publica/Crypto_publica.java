@@ -5,6 +5,8 @@
 package com.criptografia.crypto_publica;
 
 import javax.swing.*;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 /**
  *
@@ -13,6 +15,25 @@ import javax.swing.*;
 public class Crypto_publica {
 
     public static void main(String[] args) {
+        // Registro de auditoría opcional (-Dcrypto.auditoria.archivo=...)
+        try {
+            RegistroAuditoria.configurarDesdePropiedades();
+        } catch (Exception e) {
+            System.err.println("✗ No se pudo abrir el registro de auditoría: " + e.getMessage());
+            System.exit(1);
+        }
+
+        // --medir-arranque: interfaz gráfica informando los tiempos de arranque
+        if (args.length == 1 && args[0].equals("--medir-arranque")) {
+            MetricasArranque.habilitar();
+        } else if (args.length > 0) {
+            // Con argumentos se ejecuta en modo línea de comandos, sin interfaz gráfica
+            System.exit(LineaComandos.ejecutar(args));
+        }
+
+        // Cargar proveedores y calentar las rutas criptográficas mientras aparece la ventana
+        Precalentador.iniciarEnSegundoPlano();
+
         // Configurar look and feel del sistema para mejor apariencia
         try {
             UIManager.setLookAndFeel(UIManager.getSystemLookAndFeelClassName());
@@ -23,6 +44,12 @@ public class Crypto_publica {
         // Crear y mostrar la ventana principal en el hilo de Swing
         SwingUtilities.invokeLater(() -> {
             VentanaPrincipal ventana = new VentanaPrincipal();
+            ventana.addWindowListener(new WindowAdapter() {
+                @Override
+                public void windowOpened(WindowEvent e) {
+                    MetricasArranque.marcarVentanaVisible();
+                }
+            });
             ventana.setVisible(true);
         });
     }
@@ -0,0 +1,469 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.crypto.SecretKey;
+
+/**
+ * Descifrado masivo de mensajes híbridos (uno por línea) en una canalización por etapas.
+ *
+ * MotorCifrado.descifrarHibrido hace en secuencia, en un solo hilo, la separación,
+ * la decodificación Base64, la desenvoltura RSA, el descifrado AEAD y la decodificación
+ * UTF-8. Aquí cada paso va en su etapa, unidas por colas acotadas:
+ *
+ *   lectura ──cola──▶ desenvoltura (N hilos) ──cola──▶ descifrado y salida
+ *
+ * - Lectura y validación (1 hilo): lee líneas y valida y decodifica cada sobre
+ *   (ValidadorSobre), de modo que los inválidos no cuestan una operación de clave privada
+ * - Desenvoltura (N hilos, por defecto uno por núcleo): la operación de clave privada,
+ *   que es la cara; así satura las CPU mientras la E/S y el análisis se solapan con ella
+ * - Descifrado y salida (hilo que llama): descifra el contenido y entrega los resultados
+ *   en el orden de entrada
+ *
+ * Las colas acotadas aplican contrapresión: si la desenvoltura no da abasto, la lectura
+ * se detiene en vez de cargar el archivo entero en memoria. Un semáforo limita además
+ * los mensajes en vuelo, de modo que el búfer de reordenación de la salida también
+ * queda acotado.
+ *
+ * Un mensaje inválido no detiene el lote: su error se entrega en su posición. Los
+ * errores de E/S, en cambio, cancelan todas las etapas.
+ *
+ * Cada etapa lleva métricas (elementos, tiempo ocupado y profundidad de su cola de
+ * entrada) que pueden consultarse con metricas() mientras el lote avanza.
+ */
+public class DescifradoLotes {
+
+    public static final int CAPACIDAD_COLA_POR_DEFECTO = 256;
+
+    /**
+     * Recibe el resultado de cada mensaje, en el orden de entrada.
+     */
+    public interface Receptor {
+        /**
+         * @param indice Posición del mensaje en la entrada (desde 0)
+         * @param texto  Mensaje descifrado, o null si falló
+         * @param error  Motivo del fallo, o null si se descifró
+         * @throws Exception si la salida falla (cancela el lote)
+         */
+        void resultado(long indice, String texto, Exception error) throws Exception;
+    }
+
+    /**
+     * Métricas de una etapa de la canalización. Se actualizan mientras el lote avanza.
+     */
+    public static class Etapa {
+        private final String nombre;
+        private final int hilos;
+        private final BlockingQueue<?> cola;
+        private final int capacidad;
+        private final AtomicLong elementos = new AtomicLong();
+        private final AtomicLong nanosOcupado = new AtomicLong();
+        private final AtomicLong sumaProfundidad = new AtomicLong();
+        private final AtomicLong profundidadMaxima = new AtomicLong();
+
+        Etapa(String nombre, int hilos, BlockingQueue<?> cola, int capacidad) {
+            this.nombre    = nombre;
+            this.hilos     = hilos;
+            this.cola      = cola;
+            this.capacidad = capacidad;
+        }
+
+        // Se llama al tomar un elemento de la cola de entrada
+        void muestrearCola() {
+            int profundidad = cola.size();
+            sumaProfundidad.addAndGet(profundidad);
+            profundidadMaxima.accumulateAndGet(profundidad, Math::max);
+        }
+
+        void registrar(long nanos) {
+            nanosOcupado.addAndGet(nanos);
+            elementos.incrementAndGet();
+        }
+
+        public String getNombre() {
+            return nombre;
+        }
+
+        public int getHilos() {
+            return hilos;
+        }
+
+        public long getElementos() {
+            return elementos.get();
+        }
+
+        /**
+         * @return Tiempo de trabajo sumado de todos sus hilos (sin las esperas en las colas)
+         */
+        public long getNanosOcupado() {
+            return nanosOcupado.get();
+        }
+
+        /**
+         * @return Profundidad actual de la cola de entrada (0 si la etapa no tiene cola)
+         */
+        public int getProfundidadCola() {
+            return cola != null ? cola.size() : 0;
+        }
+
+        public long getProfundidadMaxima() {
+            return profundidadMaxima.get();
+        }
+
+        /**
+         * @return Profundidad media de la cola de entrada vista al tomar cada elemento
+         */
+        public double getProfundidadMedia() {
+            long n = elementos.get();
+            return n == 0 ? 0 : sumaProfundidad.get() / (double) n;
+        }
+
+        String resumen(long nanosTranscurridos) {
+            double segundos = Math.max(nanosTranscurridos, 1) / 1e9;
+            double ocupacion = 100.0 * nanosOcupado.get() / Math.max(nanosTranscurridos, 1) / hilos;
+            String colaTexto = cola == null ? "-"
+                    : String.format(Locale.ROOT, "%d/%d (máx %d, media %.1f)", getProfundidadCola(), capacidad,
+                            getProfundidadMaxima(), getProfundidadMedia());
+            return String.format(Locale.ROOT, "%-26s %5d %10d %10.1f %8.1f%%  %s%n",
+                    nombre, hilos, elementos.get(), elementos.get() / segundos, ocupacion, colaTexto);
+        }
+    }
+
+    /**
+     * Resultado agregado de un lote.
+     */
+    public static class Resumen {
+        private final long mensajes;
+        private final long errores;
+        private final long duracionNanos;
+        private final String metricas;
+
+        Resumen(long mensajes, long errores, long duracionNanos, String metricas) {
+            this.mensajes      = mensajes;
+            this.errores       = errores;
+            this.duracionNanos = duracionNanos;
+            this.metricas      = metricas;
+        }
+
+        public long getMensajes() {
+            return mensajes;
+        }
+
+        public long getErrores() {
+            return errores;
+        }
+
+        public long getDuracionNanos() {
+            return duracionNanos;
+        }
+
+        public double getMensajesPorSegundo() {
+            return duracionNanos == 0 ? 0 : mensajes * 1e9 / duracionNanos;
+        }
+
+        /**
+         * @return Tabla de métricas por etapa al terminar el lote
+         */
+        public String getMetricas() {
+            return metricas;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d mensajes (%d errores) en %.2f s (%.1f mensajes/s)%n%s",
+                    mensajes, errores, duracionNanos / 1e9, getMensajesPorSegundo(), metricas);
+        }
+    }
+
+    // Elemento que recorre la canalización; cada etapa completa sus campos
+    private static final class Trabajo {
+        final long indice;
+        byte[] cabecera;
+        CabeceraSobre datosCabecera;
+        byte[] claveCifrada;
+        byte[] ivMasMensaje;
+        SecretKey claveDatos;
+        Exception error;
+
+        Trabajo(long indice) {
+            this.indice = indice;
+        }
+    }
+
+    // Marca de fin de entrada: la lectura envía una por hilo de desenvoltura
+    private static final Trabajo FIN = new Trabajo(-1);
+
+    private final PrivateKey clavePriv;
+    private final ValidadorSobre validador;
+    private final int hilosDesenvoltura;
+    private final BlockingQueue<Trabajo> colaDecodificados;
+    private final BlockingQueue<Trabajo> colaDesenvueltos;
+    private final Semaphore enVuelo;
+    private final Etapa lectura;
+    private final Etapa desenvoltura;
+    private final Etapa descifrado;
+    private volatile long inicio;
+
+    /**
+     * Crea una canalización con un hilo de desenvoltura por núcleo.
+     *
+     * @param clavePriv Clave privada RSA o EC del destinatario
+     */
+    public DescifradoLotes(PrivateKey clavePriv) throws Exception {
+        this(clavePriv, 0, CAPACIDAD_COLA_POR_DEFECTO);
+    }
+
+    /**
+     * Crea una canalización que solo acepta sobres dirigidos a la clave indicada
+     * (ver ValidadorSobre.Limites.paraClave).
+     *
+     * @param clavePriv         Clave privada RSA o EC del destinatario
+     * @param hilosDesenvoltura Hilos de la etapa de desenvoltura (0 = todos los núcleos)
+     * @param capacidadCola     Capacidad de cada cola entre etapas
+     * @throws Exception si no se pueden derivar los límites de la clave
+     */
+    public DescifradoLotes(PrivateKey clavePriv, int hilosDesenvoltura, int capacidadCola) throws Exception {
+        this(clavePriv, hilosDesenvoltura, capacidadCola,
+                new ValidadorSobre(new ValidadorSobre.Limites().paraClave(clavePriv)));
+    }
+
+    /**
+     * @param clavePriv         Clave privada RSA o EC del destinatario
+     * @param hilosDesenvoltura Hilos de la etapa de desenvoltura (0 = todos los núcleos)
+     * @param capacidadCola     Capacidad de cada cola entre etapas
+     * @param validador         Validador de la etapa de lectura (sus contadores reflejan los rechazos)
+     */
+    public DescifradoLotes(PrivateKey clavePriv, int hilosDesenvoltura, int capacidadCola,
+                           ValidadorSobre validador) {
+        if (capacidadCola < 1) {
+            throw new IllegalArgumentException("La capacidad de las colas debe ser positiva");
+        }
+        this.clavePriv         = clavePriv;
+        this.validador         = validador;
+        this.hilosDesenvoltura = hilosDesenvoltura > 0 ? hilosDesenvoltura : Runtime.getRuntime().availableProcessors();
+        this.colaDecodificados = new ArrayBlockingQueue<>(capacidadCola);
+        this.colaDesenvueltos  = new ArrayBlockingQueue<>(capacidadCola);
+        // Colas llenas más un mensaje por hilo en proceso: nunca bloquea a una etapa posterior
+        this.enVuelo           = new Semaphore(2 * capacidadCola + this.hilosDesenvoltura + 1);
+        this.lectura           = new Etapa("lectura y validación", 1, null, 0);
+        this.desenvoltura      = new Etapa("desenvoltura de clave", this.hilosDesenvoltura,
+                colaDecodificados, capacidadCola);
+        this.descifrado        = new Etapa("descifrado y salida", 1, colaDesenvueltos, capacidadCola);
+    }
+
+    /**
+     * Descifra todos los mensajes de la entrada (uno por línea; se ignoran las líneas
+     * vacías). Cada instancia procesa un solo lote.
+     *
+     * @param entrada  Mensajes híbridos en Base64, uno por línea
+     * @param receptor Destino de los resultados, en el orden de entrada
+     * @return Resumen con el rendimiento y las métricas por etapa
+     * @throws Exception el primer error de E/S (de la entrada o del receptor)
+     */
+    public Resumen ejecutar(BufferedReader entrada, Receptor receptor) throws Exception {
+        synchronized (this) {
+            if (inicio != 0) {
+                throw new IllegalStateException("Cada instancia procesa un solo lote");
+            }
+            inicio = System.nanoTime();
+        }
+        AtomicReference<Exception> error = new AtomicReference<>();
+        List<Thread> hilos = new ArrayList<>(1 + hilosDesenvoltura);
+
+        hilos.add(new Thread(() -> {
+            try {
+                leer(entrada);
+            } catch (InterruptedException ex) {
+                // Cancelado por un error en otra etapa
+            } catch (Exception ex) {
+                error.compareAndSet(null, ex);
+            }
+        }, "lotes-lectura"));
+        for (int h = 0; h < hilosDesenvoltura; h++) {
+            hilos.add(new Thread(() -> {
+                try {
+                    desenvolver();
+                } catch (InterruptedException ex) {
+                    // Cancelado por un error en otra etapa
+                }
+            }, "lotes-desenvoltura-" + h));
+        }
+        for (Thread t : hilos) {
+            t.setDaemon(true);
+            t.start();
+        }
+
+        long errores = 0;
+        try {
+            errores = descifrarEnOrden(receptor, error);
+        } catch (Exception ex) {
+            error.compareAndSet(null, ex);
+        }
+        if (error.get() != null) {
+            for (Thread t : hilos) {
+                t.interrupt();
+            }
+        }
+        for (Thread t : hilos) {
+            t.join();
+        }
+        if (error.get() != null) {
+            throw error.get();
+        }
+        long duracion = System.nanoTime() - inicio;
+        return new Resumen(descifrado.getElementos(), errores, duracion, metricas());
+    }
+
+    /**
+     * Describe el estado de cada etapa. Puede llamarse desde otro hilo durante el lote.
+     *
+     * @return Tabla con hilos, elementos, rendimiento, ocupación y profundidad de cola
+     */
+    public String metricas() {
+        long transcurrido = inicio == 0 ? 0 : System.nanoTime() - inicio;
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "%-26s %5s %10s %10s %9s  %s%n",
+                "Etapa", "Hilos", "Elementos", "Elem/s", "Ocupación", "Cola de entrada"));
+        sb.append(lectura.resumen(transcurrido));
+        sb.append(desenvoltura.resumen(transcurrido));
+        sb.append(descifrado.resumen(transcurrido));
+        sb.append(validador.metricas());
+        return sb.toString();
+    }
+
+    public List<Etapa> getEtapas() {
+        return List.of(lectura, desenvoltura, descifrado);
+    }
+
+    // =========================================================================
+    //                              ETAPAS
+    // =========================================================================
+
+    private void leer(BufferedReader entrada) throws Exception {
+        Exception fallo = null;
+        try {
+            long indice = 0;
+            String linea;
+            while ((linea = entrada.readLine()) != null) {
+                if (linea.isBlank()) {
+                    continue;
+                }
+                enVuelo.acquire();
+                long t0 = System.nanoTime();
+                Trabajo trabajo = decodificar(indice++, linea.trim());
+                lectura.registrar(System.nanoTime() - t0);
+                colaDecodificados.put(trabajo);
+            }
+        } catch (InterruptedException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            fallo = ex;
+        }
+        // Aun tras un error de E/S las demás etapas deben terminar
+        for (int h = 0; h < hilosDesenvoltura; h++) {
+            colaDecodificados.put(FIN);
+        }
+        if (fallo != null) {
+            throw fallo;
+        }
+    }
+
+    private Trabajo decodificar(long indice, String linea) {
+        Trabajo trabajo = new Trabajo(indice);
+        try {
+            // Los sobres rechazados no llegan a la etapa de desenvoltura
+            ValidadorSobre.Sobre sobre = validador.validar(linea);
+            if (sobre.getDatosCabecera() != null) {
+                MotorCifrado.rechazarNoSimple(sobre.getDatosCabecera());
+            }
+            trabajo.cabecera      = sobre.getCabecera();
+            trabajo.datosCabecera = sobre.getDatosCabecera();
+            trabajo.claveCifrada  = sobre.getClaveCifrada();
+            trabajo.ivMasMensaje  = sobre.getContenido();
+        } catch (Exception ex) {
+            trabajo.error = ex;
+        }
+        return trabajo;
+    }
+
+    private void desenvolver() throws InterruptedException {
+        while (true) {
+            desenvoltura.muestrearCola();
+            Trabajo trabajo = colaDecodificados.take();
+            if (trabajo == FIN) {
+                colaDesenvueltos.put(FIN);
+                return;
+            }
+            long t0 = System.nanoTime();
+            if (trabajo.error == null) {
+                try {
+                    trabajo.claveDatos = EnvolvedorClave.desenvolver(trabajo.claveCifrada, clavePriv);
+                } catch (Exception ex) {
+                    trabajo.error = ex;
+                }
+                trabajo.claveCifrada = null;
+            }
+            desenvoltura.registrar(System.nanoTime() - t0);
+            colaDesenvueltos.put(trabajo);
+        }
+    }
+
+    private long descifrarEnOrden(Receptor receptor, AtomicReference<Exception> error) throws Exception {
+        // Los hilos de desenvoltura terminan en cualquier orden: se reordena por índice
+        Map<Long, Trabajo> pendientes = new HashMap<>();
+        long siguiente = 0;
+        long errores = 0;
+        int finales = 0;
+        while (finales < hilosDesenvoltura) {
+            descifrado.muestrearCola();
+            Trabajo trabajo = colaDesenvueltos.take();
+            if (trabajo == FIN) {
+                finales++;
+                continue;
+            }
+            pendientes.put(trabajo.indice, trabajo);
+            while ((trabajo = pendientes.remove(siguiente)) != null) {
+                long t0 = System.nanoTime();
+                String texto = null;
+                if (trabajo.error == null) {
+                    try {
+                        texto = new String(MotorCifrado.descifrarContenido(trabajo.claveDatos, trabajo.cabecera,
+                                trabajo.datosCabecera, trabajo.ivMasMensaje), StandardCharsets.UTF_8);
+                    } catch (Exception ex) {
+                        trabajo.error = ex;
+                    }
+                }
+                if (trabajo.error != null) {
+                    errores++;
+                }
+                receptor.resultado(trabajo.indice, texto, trabajo.error);
+                descifrado.registrar(System.nanoTime() - t0);
+                enVuelo.release();
+                siguiente++;
+            }
+            if (error.get() != null) {
+                break;
+            }
+        }
+        return errores;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.KeyPair;
+
+/**
+ * Destino donde se almacenan los pares de claves a medida que se generan.
+ *
+ * Las implementaciones deben admitir llamadas concurrentes desde varios hilos,
+ * ya que el aprovisionamiento masivo entrega cada par apenas se produce.
+ */
+public interface DestinoClaves {
+
+    /**
+     * Almacena un par de claves.
+     *
+     * @param indice Número de secuencia del par (0..N-1)
+     * @param par    Par de claves generado
+     * @throws Exception si el almacenamiento falla
+     */
+    void guardar(long indice, KeyPair par) throws Exception;
+
+    /**
+     * Crea un destino que escribe cada par en un directorio como dos archivos Base64:
+     * clave-NNNNNNNN.pub (pública, X.509) y clave-NNNNNNNN.key (privada, PKCS#8).
+     * En sistemas POSIX el archivo .key se crea ya con permisos rw------- (solo el
+     * propietario), sin un instante en que otros usuarios puedan leerlo.
+     *
+     * @param directorio Directorio destino (se crea si no existe)
+     * @return Destino basado en archivos
+     * @throws IOException si el directorio no puede crearse
+     */
+    static DestinoClaves enDirectorio(Path directorio) throws IOException {
+        Files.createDirectories(directorio);
+        FileAttribute<?>[] soloPropietario = directorio.getFileSystem().supportedFileAttributeViews().contains("posix")
+                ? new FileAttribute<?>[] {PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+                : new FileAttribute<?>[0];
+        return (indice, par) -> {
+            String base = String.format("clave-%08d", indice);
+            Files.write(directorio.resolve(base + ".pub"),
+                    GeneradorClaves.clavePubABase64(par.getPublic()).getBytes(StandardCharsets.US_ASCII),
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+            Path clavePriv = Files.createFile(directorio.resolve(base + ".key"), soloPropietario);
+            Files.write(clavePriv,
+                    GeneradorClaves.clavePrivABase64(par.getPrivate()).getBytes(StandardCharsets.US_ASCII),
+                    StandardOpenOption.WRITE);
+        };
+    }
+}
@@ -0,0 +1,452 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.Closeable;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Directorio compacto de claves públicas fuera del heap.
+ *
+ * Pensado para millones de claves de destinatarios: en lugar de mantener un objeto
+ * PublicKey por clave (cientos de bytes de heap cada uno y trabajo extra para el GC),
+ * las claves se guardan codificadas (X.509) en un MemorySegment fuera del heap y se
+ * indexan por huella (SHA-256) con una tabla de direccionamiento abierto.
+ *
+ * Los objetos PublicKey se reconstruyen bajo demanda y los más usados se conservan
+ * en una pequeña caché LRU en el heap.
+ *
+ * Tabla de índice: ranuras × [Huella (32)][Posición en datos + 1 (8)]  (0 = ranura libre)
+ * Datos:           registros [Algoritmo (1)][Longitud (2)][Clave codificada X.509]
+ *
+ * Archivo persistido (se abre proyectado en memoria, sin copiar):
+ * [Magia "CPDC" (4)][Versión (1)][Reservado (3)][Cantidad (8)][Ranuras (8)][Long. datos (8)]
+ * [Tabla de índice][Datos]
+ */
+public class DirectorioClaves implements Closeable {
+
+    private static final byte[] MAGIA = {'C', 'P', 'D', 'C'};
+    private static final int VERSION = 1;
+    private static final int TAMANIO_CABECERA = 32;
+
+    private static final int TAMANIO_ID = 32; // SHA-256
+    private static final int TAMANIO_RANURA = TAMANIO_ID + 8;
+    private static final int CABECERA_REGISTRO = 3;
+    private static final double CARGA_MAXIMA = 0.7;
+    private static final int TAMANIO_CACHE_POR_DEFECTO = 1024;
+
+    private static final byte ALGORITMO_RSA = 1;
+    private static final byte ALGORITMO_EC  = 2;
+
+    private static final ValueLayout.OfLong  LARGO = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfShort CORTO = ValueLayout.JAVA_SHORT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+
+    private final ReentrantReadWriteLock candado = new ReentrantReadWriteLock();
+    private final Map<ByteBuffer, PublicKey> cache;
+
+    // Arena propietaria de los segmentos actuales (se cierra al crecer o al cerrar el directorio)
+    private Arena arena;
+    private MemorySegment indice;
+    private MemorySegment datos;
+    private long ranuras;
+    private long cantidad;
+    private long longitudDatos;
+    // true si los segmentos son una proyección de solo lectura de un archivo
+    private boolean proyectado;
+
+    public DirectorioClaves() {
+        this(1024, TAMANIO_CACHE_POR_DEFECTO);
+    }
+
+    /**
+     * @param capacidadInicial Cantidad de claves prevista (evita redimensionar la tabla)
+     * @param tamanioCache     Claves reconstruidas que se conservan en la caché del heap
+     */
+    public DirectorioClaves(long capacidadInicial, int tamanioCache) {
+        this.cache = crearCache(tamanioCache);
+        this.ranuras = ranurasPara(capacidadInicial);
+        this.arena = Arena.ofShared();
+        this.indice = arena.allocate(ranuras * TAMANIO_RANURA);
+        // ~300 bytes por clave RSA-2048 codificada
+        this.datos = arena.allocate(Math.max(4096, capacidadInicial * 320));
+    }
+
+    private DirectorioClaves(int tamanioCache) {
+        this.cache = crearCache(tamanioCache);
+    }
+
+    // =========================================================================
+    //                              ESCRITURA
+    // =========================================================================
+
+    /**
+     * Agrega una clave pública al directorio (las duplicadas se ignoran).
+     *
+     * @param clavePub Clave pública RSA o EC
+     * @return Id de la clave (huella SHA-256)
+     * @throws Exception si la huella no se puede calcular
+     */
+    public byte[] agregar(PublicKey clavePub) throws Exception {
+        return agregar(clavePub.getEncoded(), clavePub.getAlgorithm());
+    }
+
+    /**
+     * Agrega una clave ya codificada, sin crear el objeto PublicKey (carga masiva).
+     *
+     * @param codificada Clave pública codificada en X.509
+     * @param algoritmo  Algoritmo de la clave ("RSA" o "EC")
+     * @return Id de la clave (huella SHA-256)
+     * @throws Exception si la huella no se puede calcular
+     */
+    public byte[] agregar(byte[] codificada, String algoritmo) throws Exception {
+        byte codigo = codigoAlgoritmo(algoritmo);
+        if (codificada.length == 0 || codificada.length > 0xFFFF) {
+            throw new IllegalArgumentException("Longitud de clave no válida: " + codificada.length);
+        }
+        byte[] id = SelectorProveedores.messageDigest("SHA-256").digest(codificada);
+
+        candado.writeLock().lock();
+        try {
+            if (arena == null) {
+                throw new IllegalStateException("Directorio cerrado");
+            }
+            if (proyectado || (cantidad + 1) > ranuras * CARGA_MAXIMA
+                    || longitudDatos + CABECERA_REGISTRO + codificada.length > datos.byteSize()) {
+                redimensionar(cantidad + 1, longitudDatos + CABECERA_REGISTRO + codificada.length);
+            }
+            long ranura = sondear(id);
+            if (indice.get(LARGO, ranura * TAMANIO_RANURA + TAMANIO_ID) != 0) {
+                return id;
+            }
+            long posicion = longitudDatos;
+            datos.set(ValueLayout.JAVA_BYTE, posicion, codigo);
+            datos.set(CORTO, posicion + 1, (short) codificada.length);
+            MemorySegment.copy(codificada, 0, datos, ValueLayout.JAVA_BYTE, posicion + CABECERA_REGISTRO,
+                    codificada.length);
+            longitudDatos += CABECERA_REGISTRO + codificada.length;
+
+            MemorySegment.copy(id, 0, indice, ValueLayout.JAVA_BYTE, ranura * TAMANIO_RANURA, TAMANIO_ID);
+            indice.set(LARGO, ranura * TAMANIO_RANURA + TAMANIO_ID, posicion + 1);
+            cantidad++;
+            return id;
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    // =========================================================================
+    //                              LECTURA
+    // =========================================================================
+
+    /**
+     * Busca una clave por su id, reconstruyéndola si no está en la caché.
+     *
+     * @param id Huella SHA-256 de la clave pública
+     * @return Clave pública, o null si no está en el directorio
+     * @throws Exception si la clave almacenada no se puede reconstruir
+     */
+    public PublicKey buscar(byte[] id) throws Exception {
+        ByteBuffer claveCache = ByteBuffer.wrap(id.clone());
+        synchronized (cache) {
+            PublicKey enCache = cache.get(claveCache);
+            if (enCache != null) {
+                return enCache;
+            }
+        }
+
+        byte codigo;
+        byte[] codificada;
+        candado.readLock().lock();
+        try {
+            long posicion = posicionDe(id);
+            if (posicion < 0) {
+                return null;
+            }
+            if (posicion + CABECERA_REGISTRO > longitudDatos) {
+                throw new IllegalStateException("Registro de clave corrupto");
+            }
+            codigo = datos.get(ValueLayout.JAVA_BYTE, posicion);
+            int longitud = datos.get(CORTO, posicion + 1) & 0xFFFF;
+            if (posicion + CABECERA_REGISTRO + longitud > longitudDatos) {
+                throw new IllegalStateException("Registro de clave corrupto");
+            }
+            codificada = datos.asSlice(posicion + CABECERA_REGISTRO, longitud).toArray(ValueLayout.JAVA_BYTE);
+        } finally {
+            candado.readLock().unlock();
+        }
+
+        KeyFactory factory = SelectorProveedores.keyFactory(nombreAlgoritmo(codigo));
+        PublicKey clavePub = factory.generatePublic(new X509EncodedKeySpec(codificada));
+        synchronized (cache) {
+            cache.put(claveCache, clavePub);
+        }
+        return clavePub;
+    }
+
+    /**
+     * Indica si el directorio contiene una clave, sin reconstruirla.
+     */
+    public boolean contiene(byte[] id) {
+        candado.readLock().lock();
+        try {
+            return posicionDe(id) >= 0;
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    public long tamanio() {
+        candado.readLock().lock();
+        try {
+            return cantidad;
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    /**
+     * Bytes ocupados fuera del heap (tabla de índice + datos en uso).
+     */
+    public long getBytesFueraDelHeap() {
+        candado.readLock().lock();
+        try {
+            return ranuras * TAMANIO_RANURA + longitudDatos;
+        } finally {
+            candado.readLock().unlock();
+        }
+    }
+
+    // =========================================================================
+    //                              PERSISTENCIA
+    // =========================================================================
+
+    /**
+     * Escribe el directorio en un archivo mediante proyección en memoria.
+     * Se escribe en un temporal y se renombra, de modo que el archivo nunca queda a medias.
+     *
+     * @param archivo Archivo de destino
+     * @throws Exception si la E/S falla
+     */
+    public void guardar(Path archivo) throws Exception {
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        candado.readLock().lock();
+        try (FileChannel canal = FileChannel.open(temporal, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Arena arenaArchivo = Arena.ofConfined()) {
+            long tamanioIndice = ranuras * TAMANIO_RANURA;
+            MemorySegment destino = canal.map(FileChannel.MapMode.READ_WRITE, 0,
+                    TAMANIO_CABECERA + tamanioIndice + longitudDatos, arenaArchivo);
+            MemorySegment.copy(MAGIA, 0, destino, ValueLayout.JAVA_BYTE, 0, MAGIA.length);
+            destino.set(ValueLayout.JAVA_BYTE, MAGIA.length, (byte) VERSION);
+            destino.set(LARGO, 8, cantidad);
+            destino.set(LARGO, 16, ranuras);
+            destino.set(LARGO, 24, longitudDatos);
+            MemorySegment.copy(indice, 0, destino, TAMANIO_CABECERA, tamanioIndice);
+            MemorySegment.copy(datos, 0, destino, TAMANIO_CABECERA + tamanioIndice, longitudDatos);
+            destino.force();
+        } finally {
+            candado.readLock().unlock();
+        }
+        Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Abre un directorio persistido proyectándolo en memoria (sin copiar ni crear objetos
+     * por clave). Si después se agregan claves, el contenido se copia a memoria propia.
+     *
+     * @param archivo Archivo creado con guardar()
+     * @return Directorio listo para consultas
+     * @throws Exception si el archivo no es válido o la E/S falla
+     */
+    public static DirectorioClaves abrir(Path archivo) throws Exception {
+        DirectorioClaves directorio = new DirectorioClaves(TAMANIO_CACHE_POR_DEFECTO);
+        Arena arenaArchivo = Arena.ofShared();
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long tamanio = canal.size();
+            if (tamanio < TAMANIO_CABECERA) {
+                throw new IllegalArgumentException("Directorio de claves no reconocido");
+            }
+            MemorySegment origen = canal.map(FileChannel.MapMode.READ_ONLY, 0, tamanio, arenaArchivo);
+            byte[] magia = origen.asSlice(0, MAGIA.length).toArray(ValueLayout.JAVA_BYTE);
+            if (!Arrays.equals(magia, MAGIA) || origen.get(ValueLayout.JAVA_BYTE, MAGIA.length) != VERSION) {
+                throw new IllegalArgumentException("Directorio de claves no reconocido");
+            }
+            long cantidad = origen.get(LARGO, 8);
+            long ranuras = origen.get(LARGO, 16);
+            long longitudDatos = origen.get(LARGO, 24);
+            if (ranuras <= 0 || Long.bitCount(ranuras) != 1 || cantidad < 0 || cantidad >= ranuras
+                    || longitudDatos < 0 || ranuras > (tamanio - TAMANIO_CABECERA) / TAMANIO_RANURA
+                    || TAMANIO_CABECERA + ranuras * TAMANIO_RANURA + longitudDatos != tamanio) {
+                throw new IllegalArgumentException("Directorio de claves corrupto");
+            }
+            directorio.arena = arenaArchivo;
+            directorio.indice = origen.asSlice(TAMANIO_CABECERA, ranuras * TAMANIO_RANURA);
+            directorio.datos = origen.asSlice(TAMANIO_CABECERA + ranuras * TAMANIO_RANURA, longitudDatos);
+            directorio.ranuras = ranuras;
+            directorio.cantidad = cantidad;
+            directorio.longitudDatos = longitudDatos;
+            directorio.proyectado = true;
+            return directorio;
+        } catch (Exception ex) {
+            arenaArchivo.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Libera la memoria fuera del heap (o la proyección del archivo).
+     */
+    @Override
+    public void close() {
+        candado.writeLock().lock();
+        try {
+            if (arena != null) {
+                arena.close();
+                arena = null;
+            }
+            synchronized (cache) {
+                cache.clear();
+            }
+        } finally {
+            candado.writeLock().unlock();
+        }
+    }
+
+    // =========================================================================
+    //                          TABLA DE ÍNDICE
+    // =========================================================================
+
+    /**
+     * Sondeo lineal: devuelve la ranura del id, o la primera libre si no está
+     * (-1 si la tabla está llena, solo posible en un archivo corrupto).
+     */
+    private long sondear(byte[] id) {
+        MemorySegment segmentoId = MemorySegment.ofArray(id);
+        long mascara = ranuras - 1;
+        long ranura = ranuraInicial(id) & mascara;
+        for (long intentos = 0; intentos < ranuras; intentos++) {
+            long d = ranura * TAMANIO_RANURA;
+            if (indice.get(LARGO, d + TAMANIO_ID) == 0
+                    || MemorySegment.mismatch(indice, d, d + TAMANIO_ID, segmentoId, 0, TAMANIO_ID) == -1) {
+                return ranura;
+            }
+            ranura = (ranura + 1) & mascara;
+        }
+        return -1;
+    }
+
+    private long posicionDe(byte[] id) {
+        if (id.length != TAMANIO_ID) {
+            return -1;
+        }
+        if (arena == null) {
+            throw new IllegalStateException("Directorio cerrado");
+        }
+        long ranura = sondear(id);
+        return ranura < 0 ? -1 : indice.get(LARGO, ranura * TAMANIO_RANURA + TAMANIO_ID) - 1;
+    }
+
+    /**
+     * Reconstruye la tabla y los datos en segmentos nuevos con espacio suficiente.
+     * Se llama con el candado de escritura tomado.
+     */
+    private void redimensionar(long cantidadMinima, long datosMinimos) {
+        long nuevasRanuras = Math.max(ranuras, ranurasPara(cantidadMinima));
+        long nuevaCapacidadDatos = Math.max(datos.byteSize(), 4096);
+        while (nuevaCapacidadDatos < datosMinimos) {
+            nuevaCapacidadDatos *= 2;
+        }
+
+        Arena nuevaArena = Arena.ofShared();
+        MemorySegment nuevosDatos = nuevaArena.allocate(nuevaCapacidadDatos);
+        MemorySegment.copy(datos, 0, nuevosDatos, 0, longitudDatos);
+        MemorySegment nuevoIndice = nuevaArena.allocate(nuevasRanuras * TAMANIO_RANURA);
+
+        // Reinsertar cada entrada ocupada en la tabla nueva
+        long mascara = nuevasRanuras - 1;
+        byte[] id = new byte[TAMANIO_ID];
+        for (long r = 0; r < ranuras; r++) {
+            long d = r * TAMANIO_RANURA;
+            long valor = indice.get(LARGO, d + TAMANIO_ID);
+            if (valor == 0) {
+                continue;
+            }
+            MemorySegment.copy(indice, ValueLayout.JAVA_BYTE, d, id, 0, TAMANIO_ID);
+            long ranura = ranuraInicial(id) & mascara;
+            while (nuevoIndice.get(LARGO, ranura * TAMANIO_RANURA + TAMANIO_ID) != 0) {
+                ranura = (ranura + 1) & mascara;
+            }
+            MemorySegment.copy(indice, d, nuevoIndice, ranura * TAMANIO_RANURA, TAMANIO_RANURA);
+        }
+
+        arena.close();
+        arena = nuevaArena;
+        indice = nuevoIndice;
+        datos = nuevosDatos;
+        ranuras = nuevasRanuras;
+        proyectado = false;
+    }
+
+    private static long ranurasPara(long claves) {
+        long necesarias = Math.max(16, (long) Math.ceil(claves / CARGA_MAXIMA) + 1);
+        return Long.highestOneBit(necesarias - 1) << 1;
+    }
+
+    private static long ranuraInicial(byte[] id) {
+        // La huella ya es uniforme: basta con sus primeros 8 bytes
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (id[i] & 0xFF);
+        }
+        return hash;
+    }
+
+    private static byte codigoAlgoritmo(String algoritmo) {
+        switch (algoritmo) {
+            case GeneradorClaves.ALGORITMO_RSA: return ALGORITMO_RSA;
+            case GeneradorClaves.ALGORITMO_EC:  return ALGORITMO_EC;
+            default:
+                throw new IllegalArgumentException("Algoritmo de clave no soportado: " + algoritmo);
+        }
+    }
+
+    private static String nombreAlgoritmo(byte codigo) {
+        switch (codigo) {
+            case ALGORITMO_RSA: return GeneradorClaves.ALGORITMO_RSA;
+            case ALGORITMO_EC:  return GeneradorClaves.ALGORITMO_EC;
+            default:
+                throw new IllegalStateException("Algoritmo de clave desconocido: " + codigo);
+        }
+    }
+
+    private static Map<ByteBuffer, PublicKey> crearCache(int tamanio) {
+        return new LinkedHashMap<ByteBuffer, PublicKey>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, PublicKey> mayor) {
+                return size() > tamanio;
+            }
+        };
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.crypto.Cipher;
+import javax.crypto.KEM;
+import javax.crypto.KeyAgreement;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
+
+/**
+ * Envoltura de una clave de datos con la clave pública del destinatario: RSA, EC,
+ * ML-KEM o una combinación clásica + poscuántica.
+ *
+ * - RSA:    RSA-OAEP, igual que MotorCifrado.envolverClave.
+ * - EC:     ECDH con una clave efímera de la misma curva.
+ * - ML-KEM: encapsulación ML-KEM-768/1024 (JDK 24 o posterior).
+ * - Híbrido (clásica + ML-KEM): la clave de envoltura depende de ambos secretos,
+ *   así que hace falta romper los dos algoritmos para recuperar la clave de datos.
+ *
+ * Salvo RSA, todas se construyen igual: cada componente produce un secreto compartido
+ * y su encapsulación; la clave de envoltura es SHA-256(etiqueta || secretos || encapsulaciones)
+ * y protege la clave de datos con AES-GCM (nonce cero: cada clave de envoltura se usa una vez,
+ * AAD = encapsulaciones).
+ *
+ * Formato: n × [Long. encapsulación (2)][Encapsulación] + [Clave de datos cifrada + Tag (16)]
+ * (EC: encapsulación = clave efímera X.509; RSA dentro de un híbrido: secreto cifrado con RSA-OAEP)
+ */
+public final class EnvolvedorClave {
+
+    private static final byte[] ETIQUETA_EC      = "CPEC".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ETIQUETA_KEM     = "CPMK".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ETIQUETA_HIBRIDO = "CPHB".getBytes(StandardCharsets.US_ASCII);
+    private static final int TAMANIO_TAG = 16;
+    private static final int TAMANIO_SECRETO = 32;
+
+    /**
+     * Secreto compartido y el dato que permite al destinatario reconstruirlo.
+     */
+    private static class Encapsulado {
+        final byte[] secreto;
+        final byte[] encapsulacion;
+
+        Encapsulado(byte[] secreto, byte[] encapsulacion) {
+            this.secreto       = secreto;
+            this.encapsulacion = encapsulacion;
+        }
+    }
+
+    private EnvolvedorClave() {
+    }
+
+    /**
+     * Envuelve una clave de datos para el titular de la clave pública.
+     *
+     * @param claveDatos Clave AES a proteger
+     * @param clavePub   Clave pública RSA, EC o ML-KEM del destinatario
+     * @return Clave envuelta
+     * @throws Exception si el algoritmo no está soportado o el cifrado falla
+     */
+    public static byte[] envolver(SecretKey claveDatos, PublicKey clavePub) throws Exception {
+        switch (clavePub.getAlgorithm()) {
+            case GeneradorClaves.ALGORITMO_RSA:
+                return MotorCifrado.envolverClave(claveDatos, clavePub);
+            case GeneradorClaves.ALGORITMO_EC:
+                return sellar(claveDatos, ETIQUETA_EC, encapsular(clavePub));
+            case GeneradorClaves.ALGORITMO_ML_KEM:
+                return sellar(claveDatos, ETIQUETA_KEM, encapsular(clavePub));
+            default:
+                throw new IllegalArgumentException("Algoritmo de clave no soportado: " + clavePub.getAlgorithm());
+        }
+    }
+
+    /**
+     * Envuelve una clave de datos con una clave clásica (RSA o EC) y una ML-KEM a la vez.
+     *
+     * @param claveDatos      Clave AES a proteger
+     * @param clavePubClasica Clave pública RSA o EC del destinatario
+     * @param clavePubKEM     Clave pública ML-KEM del destinatario
+     * @return Clave envuelta
+     * @throws Exception si algún algoritmo no está soportado o el cifrado falla
+     */
+    public static byte[] envolver(SecretKey claveDatos, PublicKey clavePubClasica, PublicKey clavePubKEM)
+            throws Exception {
+        exigirHibrido(clavePubClasica.getAlgorithm(), clavePubKEM.getAlgorithm());
+        return sellar(claveDatos, ETIQUETA_HIBRIDO, encapsular(clavePubClasica), encapsular(clavePubKEM));
+    }
+
+    /**
+     * Recupera una clave de datos envuelta con envolver(SecretKey, PublicKey).
+     *
+     * @param claveEnvuelta Clave envuelta
+     * @param clavePriv     Clave privada RSA, EC o ML-KEM del destinatario
+     * @return Clave AES
+     * @throws Exception si la clave no corresponde o los datos fueron alterados
+     */
+    public static SecretKey desenvolver(byte[] claveEnvuelta, PrivateKey clavePriv) throws Exception {
+        switch (clavePriv.getAlgorithm()) {
+            case GeneradorClaves.ALGORITMO_RSA:
+                return MotorCifrado.desenvolverClave(claveEnvuelta, clavePriv);
+            case GeneradorClaves.ALGORITMO_EC:
+            case GeneradorClaves.ALGORITMO_ML_KEM: {
+                ByteBuffer entrada = ByteBuffer.wrap(claveEnvuelta);
+                byte[] encapsulacion = leerCampo(entrada);
+                Encapsulado encapsulado = desencapsular(clavePriv, encapsulacion);
+                return clavePriv.getAlgorithm().equals(GeneradorClaves.ALGORITMO_ML_KEM)
+                        ? abrir(entrada, ETIQUETA_KEM, "ML-KEM (clave de datos)", encapsulado)
+                        : abrir(entrada, ETIQUETA_EC, "ECDH (clave de datos)", encapsulado);
+            }
+            default:
+                throw new IllegalArgumentException("Algoritmo de clave no soportado: " + clavePriv.getAlgorithm());
+        }
+    }
+
+    /**
+     * Recupera una clave de datos envuelta con la combinación clásica + ML-KEM.
+     *
+     * @param claveEnvuelta    Clave envuelta
+     * @param clavePrivClasica Clave privada RSA o EC del destinatario
+     * @param clavePrivKEM     Clave privada ML-KEM del destinatario
+     * @return Clave AES
+     * @throws Exception si alguna clave no corresponde o los datos fueron alterados
+     */
+    public static SecretKey desenvolver(byte[] claveEnvuelta, PrivateKey clavePrivClasica, PrivateKey clavePrivKEM)
+            throws Exception {
+        exigirHibrido(clavePrivClasica.getAlgorithm(), clavePrivKEM.getAlgorithm());
+        ByteBuffer entrada = ByteBuffer.wrap(claveEnvuelta);
+        Encapsulado clasico = desencapsular(clavePrivClasica, leerCampo(entrada));
+        Encapsulado poscuantico = desencapsular(clavePrivKEM, leerCampo(entrada));
+        return abrir(entrada, ETIQUETA_HIBRIDO, clavePrivClasica.getAlgorithm() + "+ML-KEM (clave de datos)",
+                clasico, poscuantico);
+    }
+
+    private static void exigirHibrido(String clasico, String poscuantico) {
+        if (!(clasico.equals(GeneradorClaves.ALGORITMO_RSA) || clasico.equals(GeneradorClaves.ALGORITMO_EC))
+                || !poscuantico.equals(GeneradorClaves.ALGORITMO_ML_KEM)) {
+            throw new IllegalArgumentException("Combinación híbrida no soportada: " + clasico + "+" + poscuantico);
+        }
+    }
+
+    // =========================================================================
+    //                      ENCAPSULACIÓN POR ALGORITMO
+    // =========================================================================
+
+    private static Encapsulado encapsular(PublicKey clavePub) throws Exception {
+        switch (clavePub.getAlgorithm()) {
+            case GeneradorClaves.ALGORITMO_RSA: {
+                // Solo dentro de un híbrido: un secreto aleatorio viaja cifrado con RSA-OAEP
+                byte[] secreto = FuenteAleatoria.bytes(TAMANIO_SECRETO);
+                Cipher cipherRSA = SelectorProveedores.cipher(MotorCifrado.TRANSFORMACION_RSA);
+                cipherRSA.init(Cipher.ENCRYPT_MODE, clavePub, MotorCifrado.PARAMETROS_OAEP, FuenteAleatoria.obtener());
+                return new Encapsulado(secreto, cipherRSA.doFinal(secreto));
+            }
+            case GeneradorClaves.ALGORITMO_EC: {
+                KeyPairGenerator generador = SelectorProveedores.keyPairGenerator(GeneradorClaves.ALGORITMO_EC);
+                generador.initialize(((ECPublicKey) clavePub).getParams(), FuenteAleatoria.obtener());
+                KeyPair efimera = generador.generateKeyPair();
+                return new Encapsulado(acordar(efimera.getPrivate(), clavePub), efimera.getPublic().getEncoded());
+            }
+            case GeneradorClaves.ALGORITMO_ML_KEM: {
+                KEM.Encapsulated encapsulado = SelectorProveedores.kem(GeneradorClaves.ALGORITMO_ML_KEM)
+                        .newEncapsulator(clavePub, FuenteAleatoria.obtener())
+                        .encapsulate();
+                return new Encapsulado(encapsulado.key().getEncoded(), encapsulado.encapsulation());
+            }
+            default:
+                throw new IllegalArgumentException("Algoritmo de clave no soportado: " + clavePub.getAlgorithm());
+        }
+    }
+
+    private static Encapsulado desencapsular(PrivateKey clavePriv, byte[] encapsulacion) throws Exception {
+        switch (clavePriv.getAlgorithm()) {
+            case GeneradorClaves.ALGORITMO_RSA: {
+                Cipher cipherRSA = SelectorProveedores.cipher(MotorCifrado.TRANSFORMACION_RSA);
+                cipherRSA.init(Cipher.DECRYPT_MODE, clavePriv, MotorCifrado.PARAMETROS_OAEP);
+                return new Encapsulado(cipherRSA.doFinal(encapsulacion), encapsulacion);
+            }
+            case GeneradorClaves.ALGORITMO_EC: {
+                PublicKey efimera = SelectorProveedores.keyFactory(GeneradorClaves.ALGORITMO_EC)
+                        .generatePublic(new X509EncodedKeySpec(encapsulacion));
+                return new Encapsulado(acordar(clavePriv, efimera), encapsulacion);
+            }
+            case GeneradorClaves.ALGORITMO_ML_KEM: {
+                SecretKey secreto = SelectorProveedores.kem(GeneradorClaves.ALGORITMO_ML_KEM)
+                        .newDecapsulator(clavePriv)
+                        .decapsulate(encapsulacion);
+                return new Encapsulado(secreto.getEncoded(), encapsulacion);
+            }
+            default:
+                throw new IllegalArgumentException("Algoritmo de clave no soportado: " + clavePriv.getAlgorithm());
+        }
+    }
+
+    private static byte[] acordar(PrivateKey privada, PublicKey publica) throws Exception {
+        KeyAgreement acuerdo = SelectorProveedores.keyAgreement("ECDH");
+        acuerdo.init(privada);
+        acuerdo.doPhase(publica, true);
+        return acuerdo.generateSecret();
+    }
+
+    // =========================================================================
+    //                  CLAVE DE ENVOLTURA Y CIFRADO DE LA CLAVE
+    // =========================================================================
+
+    private static byte[] sellar(SecretKey claveDatos, byte[] etiqueta, Encapsulado... partes) throws Exception {
+        int longitud = TAMANIO_TAG + claveDatos.getEncoded().length;
+        for (Encapsulado parte : partes) {
+            longitud += 2 + parte.encapsulacion.length;
+        }
+        ByteBuffer salida = ByteBuffer.allocate(longitud);
+        for (Encapsulado parte : partes) {
+            salida.putShort((short) parte.encapsulacion.length).put(parte.encapsulacion);
+        }
+        Cipher cipherAES = iniciarEnvoltura(Cipher.ENCRYPT_MODE, etiqueta, partes);
+        cipherAES.doFinal(ByteBuffer.wrap(claveDatos.getEncoded()), salida);
+        return salida.array();
+    }
+
+    private static SecretKey abrir(ByteBuffer entrada, byte[] etiqueta, String detalleAuditoria,
+                                   Encapsulado... partes) throws Exception {
+        if (entrada.remaining() < TAMANIO_TAG) {
+            throw new IllegalArgumentException("Clave envuelta truncada");
+        }
+        Cipher cipherAES = iniciarEnvoltura(Cipher.DECRYPT_MODE, etiqueta, partes);
+        byte[] claveDatos = cipherAES.doFinal(entrada.array(), entrada.position(), entrada.remaining());
+        RegistroAuditoria.registrar(RegistroAuditoria.DESCIFRAR, detalleAuditoria);
+        return new SecretKeySpec(claveDatos, "AES");
+    }
+
+    private static Cipher iniciarEnvoltura(int modo, byte[] etiqueta, Encapsulado... partes) throws Exception {
+        MessageDigest digest = SelectorProveedores.messageDigest("SHA-256");
+        digest.update(etiqueta);
+        for (Encapsulado parte : partes) {
+            digest.update(parte.secreto);
+        }
+        for (Encapsulado parte : partes) {
+            digest.update(parte.encapsulacion);
+            Arrays.fill(parte.secreto, (byte) 0);
+        }
+        SecretKey claveEnvoltura = new SecretKeySpec(digest.digest(), "AES");
+
+        Cipher cipherAES = SelectorProveedores.cipher(MotorCifrado.TRANSFORMACION_AES);
+        cipherAES.init(modo, claveEnvoltura,
+                new GCMParameterSpec(TAMANIO_TAG * 8, new byte[GeneradorNonce.TAMANIO_NONCE]));
+        for (Encapsulado parte : partes) {
+            cipherAES.updateAAD(parte.encapsulacion);
+        }
+        return cipherAES;
+    }
+
+    private static byte[] leerCampo(ByteBuffer entrada) {
+        int longitud = entrada.remaining() >= 2 ? entrada.getShort() & 0xFFFF : -1;
+        if (longitud < 0 || entrada.remaining() < longitud) {
+            throw new IllegalArgumentException("Clave envuelta truncada");
+        }
+        byte[] campo = new byte[longitud];
+        entrada.get(campo);
+        return campo;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Firma desprendida de archivos grandes mediante un árbol de hashes calculado en paralelo.
+ *
+ * El archivo se divide en bloques de tamaño fijo que se leen mediante proyección en
+ * memoria (mmap). Cada bloque se resume por separado, en paralelo, y los resúmenes
+ * se combinan en un árbol binario cuya raíz es lo que se firma. Así el coste de firmar
+ * o verificar un archivo de varios GB escala con el número de núcleos, en lugar de
+ * quedar limitado por un único SHA-256 secuencial.
+ *
+ * Árbol (con separación de dominios para evitar colisiones entre hojas y nodos):
+ * - Hoja:  SHA-256(0x00 || bloque)
+ * - Nodo:  SHA-256(0x01 || izquierdo || derecho); un nodo sin pareja sube sin cambios
+ *
+ * Mensaje firmado: [Magia "CPFT" (4)][Versión (1)][Tamaño de bloque (4)][Longitud del archivo (8)][Raíz (32)]
+ *
+ * Formato de la firma desprendida:
+ * [Mensaje firmado][Long. algoritmo (2)][Algoritmo de firma (UTF-8)][Long. firma (2)][Firma]
+ */
+public class FirmaArchivo {
+
+    public static final int TAMANIO_BLOQUE_POR_DEFECTO = 4 * 1024 * 1024;
+    private static final int TAMANIO_BLOQUE_MIN = 4 * 1024;
+    private static final int TAMANIO_BLOQUE_MAX = 256 * 1024 * 1024;
+
+    private static final byte[] MAGIA = {'C', 'P', 'F', 'T'};
+    private static final int VERSION = 1;
+    private static final int TAMANIO_HASH = 32;
+    private static final int TAMANIO_MENSAJE = MAGIA.length + 1 + 4 + 8 + TAMANIO_HASH;
+
+    private static final byte PREFIJO_HOJA = 0x00;
+    private static final byte PREFIJO_NODO = 0x01;
+
+    /**
+     * Firma un archivo con el tamaño de bloque por defecto.
+     *
+     * @param archivo   Archivo a firmar
+     * @param clavePriv Clave privada del firmante
+     * @param algoritmo Algoritmo de firma (MotorFirma.FIRMA_RSA o MotorFirma.FIRMA_ECDSA)
+     * @return Firma desprendida
+     * @throws Exception si la lectura o la firma fallan
+     */
+    public static byte[] firmar(Path archivo, PrivateKey clavePriv, String algoritmo) throws Exception {
+        return firmar(archivo, clavePriv, algoritmo, TAMANIO_BLOQUE_POR_DEFECTO);
+    }
+
+    /**
+     * Firma un archivo con un tamaño de bloque concreto.
+     *
+     * @param archivo        Archivo a firmar
+     * @param clavePriv      Clave privada del firmante
+     * @param algoritmo      Algoritmo de firma
+     * @param tamanioBloque  Tamaño de cada bloque del árbol (bytes)
+     * @return Firma desprendida
+     * @throws Exception si la lectura o la firma fallan
+     */
+    public static byte[] firmar(Path archivo, PrivateKey clavePriv, String algoritmo, int tamanioBloque)
+            throws Exception {
+        byte[] mensaje = mensajeFirmado(tamanioBloque, Files.size(archivo), calcularRaiz(archivo, tamanioBloque));
+
+        Signature firma = SelectorProveedores.signature(algoritmo);
+        firma.initSign(clavePriv, FuenteAleatoria.obtener());
+        firma.update(mensaje);
+        byte[] valorFirma = firma.sign();
+        RegistroAuditoria.registrar(RegistroAuditoria.FIRMAR, algoritmo + " (archivo " + archivo.getFileName() + ")");
+
+        byte[] nombreAlgoritmo = algoritmo.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer salida = ByteBuffer.allocate(mensaje.length + 2 + nombreAlgoritmo.length + 2 + valorFirma.length);
+        salida.put(mensaje);
+        salida.putShort((short) nombreAlgoritmo.length).put(nombreAlgoritmo);
+        salida.putShort((short) valorFirma.length).put(valorFirma);
+        return salida.array();
+    }
+
+    /**
+     * Verifica la firma desprendida de un archivo. El árbol se recalcula en paralelo
+     * con el tamaño de bloque registrado en la firma.
+     *
+     * @param archivo            Archivo a verificar
+     * @param firma              Firma desprendida
+     * @param clavePub           Clave pública del firmante
+     * @param algoritmoEsperado  Algoritmo de firma esperado (el de la firma no se elige por su contenido)
+     * @return true si el archivo no fue modificado y la firma es válida
+     * @throws Exception si la firma está mal formada, usa otro algoritmo o la lectura falla
+     */
+    public static boolean verificar(Path archivo, byte[] firma, PublicKey clavePub, String algoritmoEsperado)
+            throws Exception {
+        ByteBuffer entrada = ByteBuffer.wrap(firma);
+        if (firma.length < TAMANIO_MENSAJE + 4
+                || !Arrays.equals(firma, 0, MAGIA.length, MAGIA, 0, MAGIA.length)
+                || firma[MAGIA.length] != VERSION) {
+            throw new IllegalArgumentException("Firma de archivo no reconocida");
+        }
+        byte[] mensaje = new byte[TAMANIO_MENSAJE];
+        entrada.get(mensaje);
+        int tamanioBloque = ByteBuffer.wrap(mensaje).getInt(MAGIA.length + 1);
+        long longitud     = ByteBuffer.wrap(mensaje).getLong(MAGIA.length + 5);
+        String algoritmo  = new String(leerCampo(entrada), StandardCharsets.UTF_8);
+        byte[] valorFirma = leerCampo(entrada);
+        if (entrada.hasRemaining()) {
+            throw new IllegalArgumentException("Firma de archivo no reconocida");
+        }
+        if (!algoritmo.equals(algoritmoEsperado)) {
+            throw new IllegalArgumentException("Algoritmo de firma inesperado: " + algoritmo);
+        }
+
+        // Comprobaciones baratas antes de leer el archivo completo
+        if (Files.size(archivo) != longitud) {
+            return false;
+        }
+        byte[] raiz = calcularRaiz(archivo, tamanioBloque);
+        if (!MessageDigest.isEqual(mensaje, mensajeFirmado(tamanioBloque, longitud, raiz))) {
+            return false;
+        }
+
+        Signature verificador = SelectorProveedores.signature(algoritmoEsperado);
+        verificador.initVerify(clavePub);
+        verificador.update(mensaje);
+        return verificador.verify(valorFirma);
+    }
+
+    /**
+     * Calcula la raíz del árbol de hashes de un archivo.
+     *
+     * @param archivo        Archivo a resumir
+     * @param tamanioBloque  Tamaño de cada bloque (bytes)
+     * @return Raíz del árbol (32 bytes)
+     * @throws Exception si la lectura falla
+     */
+    public static byte[] calcularRaiz(Path archivo, int tamanioBloque) throws Exception {
+        if (tamanioBloque < TAMANIO_BLOQUE_MIN || tamanioBloque > TAMANIO_BLOQUE_MAX) {
+            throw new IllegalArgumentException("Tamaño de bloque fuera de rango: " + tamanioBloque);
+        }
+        try (FileChannel canal = FileChannel.open(archivo, StandardOpenOption.READ)) {
+            long longitud = canal.size();
+            long bloques = Math.max(1, (longitud + tamanioBloque - 1) / tamanioBloque);
+            if (bloques > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Archivo demasiado grande para el tamaño de bloque indicado");
+            }
+
+            // 1. Hojas: cada bloque se proyecta y resume en paralelo
+            byte[][] nivel = new byte[(int) bloques][];
+            try {
+                IntStream.range(0, nivel.length).parallel().forEach(i -> {
+                    long posicion = (long) i * tamanioBloque;
+                    nivel[i] = resumirBloque(canal, posicion, Math.min(tamanioBloque, longitud - posicion));
+                });
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+
+            // 2. Nodos internos: combinar por parejas hasta llegar a la raíz
+            MessageDigest digest = SelectorProveedores.messageDigest("SHA-256");
+            int n = nivel.length;
+            while (n > 1) {
+                int siguiente = 0;
+                for (int i = 0; i < n; i += 2) {
+                    if (i + 1 < n) {
+                        digest.update(PREFIJO_NODO);
+                        digest.update(nivel[i]);
+                        digest.update(nivel[i + 1]);
+                        nivel[siguiente++] = digest.digest();
+                    } else {
+                        nivel[siguiente++] = nivel[i];
+                    }
+                }
+                n = siguiente;
+            }
+            return nivel[0];
+        }
+    }
+
+    private static byte[] resumirBloque(FileChannel canal, long posicion, long longitud) {
+        try {
+            MessageDigest digest = SelectorProveedores.messageDigest("SHA-256");
+            digest.update(PREFIJO_HOJA);
+            if (longitud > 0) {
+                // La arena libera la proyección al terminar, sin esperar al recolector
+                try (Arena arena = Arena.ofConfined()) {
+                    MemorySegment bloque = canal.map(FileChannel.MapMode.READ_ONLY, posicion, longitud, arena);
+                    digest.update(bloque.asByteBuffer());
+                }
+            }
+            return digest.digest();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static byte[] mensajeFirmado(int tamanioBloque, long longitud, byte[] raiz) {
+        return ByteBuffer.allocate(TAMANIO_MENSAJE)
+                .put(MAGIA)
+                .put((byte) VERSION)
+                .putInt(tamanioBloque)
+                .putLong(longitud)
+                .put(raiz)
+                .array();
+    }
+
+    private static byte[] leerCampo(ByteBuffer entrada) {
+        if (entrada.remaining() < 2) {
+            throw new IllegalArgumentException("Firma de archivo truncada");
+        }
+        int longitud = entrada.getShort() & 0xFFFF;
+        if (entrada.remaining() < longitud) {
+            throw new IllegalArgumentException("Firma de archivo truncada");
+        }
+        byte[] campo = new byte[longitud];
+        entrada.get(campo);
+        return campo;
+    }
+}
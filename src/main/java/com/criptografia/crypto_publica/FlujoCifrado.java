@@ -0,0 +1,346 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * Cifrado de flujos de registros pequeños como procesadores reactivos (java.util.concurrent.Flow).
+ *
+ * En lugar de un sobre híbrido por registro (una operación RSA cada vez), se abre una
+ * única sesión: la clave AES se envuelve con RSA una sola vez y cada registro se sella
+ * con el cifrado de datos de la sesión (AES-GCM o ChaCha20-Poly1305, registrado en la
+ * cabecera) usando como nonce el prefijo de la sesión más su número de secuencia.
+ *
+ * Elementos emitidos por el cifrador:
+ * - Primero, la apertura de sesión:
+ *   [Magia "CPRS" (4)][Versión (1)][Long. cabecera (2)][Cabecera del sobre]
+ *   [Long. clave (2)][Clave AES cifrada con RSA][Prefijo de nonce (4)]
+ * - Después, un elemento por registro: [Número de secuencia (8)][Marca (1)][Datos cifrados + Tag GCM (16)]
+ * - Por último, un registro de cierre sin datos con la marca 1 (los demás llevan 0).
+ *
+ * AAD de cada registro: SHA-256 de la apertura de sesión seguido de la marca, de modo
+ * que un registro no se puede trasladar a otra sesión ni hacerse pasar por el cierre.
+ * El descifrador exige números de secuencia consecutivos: un registro repetido,
+ * reordenado o perdido corta el flujo con error, y un flujo que termina sin el
+ * registro de cierre (truncado) también.
+ *
+ * Contrapresión: ambos procesadores publican con un SubmissionPublisher de búfer
+ * acotado y piden a la fuente un elemento por cada uno que entregan, así que un
+ * consumidor lento frena a la fuente en lugar de acumular registros en memoria.
+ * Como en cualquier SubmissionPublisher, los consumidores deben suscribirse antes
+ * de conectar el procesador a su fuente.
+ */
+public class FlujoCifrado {
+
+    private static final byte[] MAGIA = {'C', 'P', 'R', 'S'};
+    private static final int VERSION = 2;
+    private static final int TAMANIO_SECUENCIA = 8;
+    private static final int TAMANIO_CABECERA_REGISTRO = TAMANIO_SECUENCIA + 1;
+    private static final int TAMANIO_TAG = 16;
+    private static final byte MARCA_REGISTRO = 0;
+    private static final byte MARCA_CIERRE = 1;
+
+    // submit() espera espacio con ForkJoinPool.managedBlock, así que el pool común
+    // compensa con hilos de reserva cuando un procesador se bloquea por contrapresión
+    private static final Executor EJECUTOR_POR_DEFECTO = ForkJoinPool.commonPool();
+
+    /**
+     * Base común: publica con búfer acotado y pide a la fuente según se consume.
+     */
+    private abstract static class Procesador extends SubmissionPublisher<byte[]>
+            implements Flow.Processor<byte[], byte[]> {
+
+        private Flow.Subscription suscripcion;
+
+        Procesador(Executor ejecutor, int capacidadBufer) {
+            super(ejecutor != null ? ejecutor : EJECUTOR_POR_DEFECTO, capacidadBufer);
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription suscripcion) {
+            if (this.suscripcion != null) {
+                suscripcion.cancel();
+                return;
+            }
+            this.suscripcion = suscripcion;
+            suscripcion.request(getMaxBufferCapacity());
+        }
+
+        @Override
+        public void onNext(byte[] elemento) {
+            try {
+                procesar(elemento);
+                suscripcion.request(1);
+            } catch (Exception ex) {
+                suscripcion.cancel();
+                closeExceptionally(ex);
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            closeExceptionally(error);
+        }
+
+        @Override
+        public void onComplete() {
+            try {
+                finalizar();
+                close();
+            } catch (Exception ex) {
+                closeExceptionally(ex);
+            }
+        }
+
+        /**
+         * Procesa un elemento de la fuente; submit() bloquea si el búfer está lleno.
+         */
+        abstract void procesar(byte[] elemento) throws Exception;
+
+        void finalizar() throws Exception {
+        }
+    }
+
+    // =========================================================================
+    //                              CIFRADOR
+    // =========================================================================
+
+    /**
+     * Procesador que sella cada registro en claro bajo una única sesión híbrida.
+     */
+    public static class Cifrador extends Procesador {
+
+        private final SecretKey claveAES;
+        private final byte[] apertura;
+        private final byte[] hashApertura;
+        private final byte[] prefijo;
+        private final CifradoDatos cifrado;
+        private final Cipher cipherAES;
+        private long secuencia = 0;
+        private boolean aperturaEmitida = false;
+
+        public Cifrador(PublicKey clavePubRSA) throws Exception {
+            this(clavePubRSA, null, Flow.defaultBufferSize());
+        }
+
+        /**
+         * @param clavePubRSA     Clave pública RSA del destinatario
+         * @param ejecutor        Ejecutor de entrega a los consumidores (null = ForkJoinPool.commonPool())
+         * @param capacidadBufer  Registros pendientes como máximo por consumidor
+         */
+        public Cifrador(PublicKey clavePubRSA, Executor ejecutor, int capacidadBufer) throws Exception {
+            super(ejecutor, capacidadBufer);
+            claveAES = MotorCifrado.generarClaveDatos();
+            prefijo = new GeneradorNonce().getPrefijo();
+            CabeceraSobre datosCabecera = new CabeceraSobre(GeneradorClaves.calcularHuella(clavePubRSA));
+            cifrado = CifradoDatos.preferido();
+            datosCabecera.setCifrado(cifrado);
+            apertura = codificarApertura(datosCabecera.codificar(),
+                    EnvolvedorClave.envolver(claveAES, clavePubRSA), prefijo);
+            hashApertura = SelectorProveedores.messageDigest("SHA-256").digest(apertura);
+            cipherAES = cifrado.crear();
+        }
+
+        @Override
+        void procesar(byte[] registro) throws Exception {
+            emitirApertura();
+            submit(sellar(registro, MARCA_REGISTRO));
+        }
+
+        @Override
+        void finalizar() throws Exception {
+            // Una sesión sin registros sigue emitiendo su apertura y su cierre
+            emitirApertura();
+            submit(sellar(new byte[0], MARCA_CIERRE));
+        }
+
+        private byte[] sellar(byte[] registro, byte marca) throws Exception {
+            if (secuencia < 0) {
+                throw new IllegalStateException("Números de secuencia agotados para esta sesión");
+            }
+            cifrado.reiniciar(cipherAES, Cipher.ENCRYPT_MODE, claveAES, GeneradorNonce.componer(prefijo, secuencia));
+            cipherAES.updateAAD(hashApertura);
+            cipherAES.updateAAD(new byte[] {marca});
+
+            byte[] salida = new byte[TAMANIO_CABECERA_REGISTRO + registro.length + TAMANIO_TAG];
+            ByteBuffer.wrap(salida).putLong(secuencia).put(marca);
+            cipherAES.doFinal(registro, 0, registro.length, salida, TAMANIO_CABECERA_REGISTRO);
+            secuencia++;
+            return salida;
+        }
+
+        private void emitirApertura() {
+            if (!aperturaEmitida) {
+                aperturaEmitida = true;
+                submit(apertura);
+            }
+        }
+    }
+
+    // =========================================================================
+    //                              DESCIFRADOR
+    // =========================================================================
+
+    /**
+     * Procesador que abre la sesión con el primer elemento y descifra los registros
+     * siguientes, comprobando orden y repeticiones.
+     */
+    public static class Descifrador extends Procesador {
+
+        private final PrivateKey clavePrivRSA;
+        private final AnilloClaves anillo;
+        private SecretKey claveAES;
+        private byte[] hashApertura;
+        private byte[] prefijo;
+        private CifradoDatos cifrado;
+        private Cipher cipherAES;
+        private long esperada = 0;
+        private boolean cerrada = false;
+
+        public Descifrador(PrivateKey clavePrivRSA) {
+            this(clavePrivRSA, null, null, Flow.defaultBufferSize());
+        }
+
+        public Descifrador(AnilloClaves anillo) {
+            this(null, anillo, null, Flow.defaultBufferSize());
+        }
+
+        public Descifrador(PrivateKey clavePrivRSA, Executor ejecutor, int capacidadBufer) {
+            this(clavePrivRSA, null, ejecutor, capacidadBufer);
+        }
+
+        public Descifrador(AnilloClaves anillo, Executor ejecutor, int capacidadBufer) {
+            this(null, anillo, ejecutor, capacidadBufer);
+        }
+
+        private Descifrador(PrivateKey clavePrivRSA, AnilloClaves anillo, Executor ejecutor, int capacidadBufer) {
+            super(ejecutor, capacidadBufer);
+            this.clavePrivRSA = clavePrivRSA;
+            this.anillo = anillo;
+        }
+
+        @Override
+        void procesar(byte[] elemento) throws Exception {
+            if (claveAES == null) {
+                abrirSesion(elemento);
+                return;
+            }
+            if (cerrada) {
+                throw new IllegalStateException("Registro recibido después del cierre de la sesión");
+            }
+            if (elemento.length < TAMANIO_CABECERA_REGISTRO + TAMANIO_TAG) {
+                throw new IllegalArgumentException("Registro cifrado truncado");
+            }
+            long secuencia = ByteBuffer.wrap(elemento).getLong();
+            byte marca = elemento[TAMANIO_SECUENCIA];
+            if (marca != MARCA_REGISTRO && marca != MARCA_CIERRE) {
+                throw new IllegalArgumentException("Marca de registro desconocida: " + marca);
+            }
+            if (secuencia != esperada) {
+                throw new IllegalStateException(secuencia < esperada
+                        ? "Registro repetido: secuencia " + secuencia + ", se esperaba " + esperada
+                        : "Registro fuera de orden o perdido: secuencia " + secuencia + ", se esperaba " + esperada);
+            }
+            cifrado.reiniciar(cipherAES, Cipher.DECRYPT_MODE, claveAES, GeneradorNonce.componer(prefijo, secuencia));
+            cipherAES.updateAAD(hashApertura);
+            cipherAES.updateAAD(new byte[] {marca});
+            byte[] registro = cipherAES.doFinal(elemento, TAMANIO_CABECERA_REGISTRO,
+                    elemento.length - TAMANIO_CABECERA_REGISTRO);
+            esperada++;
+            if (marca == MARCA_CIERRE) {
+                if (registro.length != 0) {
+                    throw new IllegalArgumentException("Registro de cierre con datos");
+                }
+                cerrada = true;
+                return;
+            }
+            submit(registro);
+        }
+
+        @Override
+        void finalizar() {
+            if (claveAES == null) {
+                throw new IllegalStateException("El flujo terminó sin apertura de sesión");
+            }
+            if (!cerrada) {
+                throw new IllegalStateException("El flujo terminó sin registro de cierre (posible truncamiento)");
+            }
+        }
+
+        private void abrirSesion(byte[] apertura) throws Exception {
+            ByteBuffer entrada = ByteBuffer.wrap(apertura);
+            if (apertura.length < MAGIA.length + 1
+                    || !Arrays.equals(apertura, 0, MAGIA.length, MAGIA, 0, MAGIA.length)
+                    || apertura[MAGIA.length] != VERSION) {
+                throw new IllegalArgumentException("El flujo no empieza con una apertura de sesión");
+            }
+            entrada.position(MAGIA.length + 1);
+            CabeceraSobre datosCabecera = CabeceraSobre.decodificar(leerCampo(entrada));
+            byte[] claveCifrada = leerCampo(entrada);
+            if (entrada.remaining() != GeneradorNonce.TAMANIO_PREFIJO) {
+                throw new IllegalArgumentException("Apertura de sesión mal formada");
+            }
+            prefijo = new byte[GeneradorNonce.TAMANIO_PREFIJO];
+            entrada.get(prefijo);
+
+            PrivateKey clave = clavePrivRSA;
+            if (anillo != null) {
+                if (datosCabecera.getIdClave() == null) {
+                    throw new IllegalArgumentException("La sesión no identifica la clave del destinatario");
+                }
+                AnilloClaves.Entrada entradaAnillo = anillo.buscar(datosCabecera.getIdClave());
+                if (entradaAnillo == null) {
+                    throw new IllegalArgumentException("Clave del destinatario no encontrada en el anillo");
+                }
+                clave = entradaAnillo.getClavePriv();
+            }
+            claveAES = EnvolvedorClave.desenvolver(claveCifrada, clave);
+            hashApertura = SelectorProveedores.messageDigest("SHA-256").digest(apertura);
+            cifrado = datosCabecera.getCifrado();
+            cipherAES = cifrado.crear();
+        }
+    }
+
+    // =========================================================================
+    //                          FORMATO DE APERTURA
+    // =========================================================================
+
+    private static byte[] codificarApertura(byte[] cabecera, byte[] claveCifrada, byte[] prefijo) {
+        return ByteBuffer.allocate(MAGIA.length + 1 + 2 + cabecera.length + 2 + claveCifrada.length + prefijo.length)
+                .put(MAGIA)
+                .put((byte) VERSION)
+                .putShort((short) cabecera.length).put(cabecera)
+                .putShort((short) claveCifrada.length).put(claveCifrada)
+                .put(prefijo)
+                .array();
+    }
+
+    private static byte[] leerCampo(ByteBuffer entrada) {
+        if (entrada.remaining() < 2) {
+            throw new IllegalArgumentException("Apertura de sesión truncada");
+        }
+        int longitud = entrada.getShort() & 0xFFFF;
+        if (entrada.remaining() < longitud) {
+            throw new IllegalArgumentException("Apertura de sesión truncada");
+        }
+        byte[] campo = new byte[longitud];
+        entrada.get(campo);
+        return campo;
+    }
+}
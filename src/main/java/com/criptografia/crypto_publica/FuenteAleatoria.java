@@ -0,0 +1,94 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+/**
+ * Servicio central de aleatoriedad para todos los motores criptográficos.
+ *
+ * Cada hilo de plataforma obtiene su propia instancia DRBG (NIST SP 800-90A),
+ * sembrada una única vez. Así se evita:
+ * - Pagar la siembra de un SecureRandom nuevo en cada mensaje
+ * - La contención de un SecureRandom compartido entre muchos hilos
+ *
+ * Los hilos virtuales no reciben instancia propia (podrían existir millones):
+ * se reparten entre un conjunto fijo de instancias según su identificador.
+ */
+public final class FuenteAleatoria {
+
+    // Fuerza de seguridad solicitada al DRBG (bits)
+    private static final int FUERZA_DRBG = 256;
+
+    // Instancia por hilo de plataforma
+    private static final ThreadLocal<SecureRandom> POR_HILO =
+            ThreadLocal.withInitial(FuenteAleatoria::crearInstancia);
+
+    // Instancias compartidas por los hilos virtuales (potencia de 2)
+    private static final SecureRandom[] COMPARTIDAS = crearCompartidas();
+
+    private FuenteAleatoria() {
+    }
+
+    /**
+     * Retorna el generador aleatorio asignado al hilo actual.
+     * No debe almacenarse ni pasarse a otros hilos.
+     *
+     * @return SecureRandom del hilo actual
+     */
+    public static SecureRandom obtener() {
+        Thread actual = Thread.currentThread();
+        if (actual.isVirtual()) {
+            return COMPARTIDAS[(int) (actual.threadId() & (COMPARTIDAS.length - 1))];
+        }
+        return POR_HILO.get();
+    }
+
+    /**
+     * Rellena el arreglo con bytes aleatorios.
+     *
+     * @param destino Arreglo a rellenar
+     */
+    public static void rellenar(byte[] destino) {
+        obtener().nextBytes(destino);
+    }
+
+    /**
+     * Genera un arreglo nuevo de bytes aleatorios.
+     *
+     * @param cantidad Cantidad de bytes
+     * @return Arreglo con bytes aleatorios
+     */
+    public static byte[] bytes(int cantidad) {
+        byte[] resultado = new byte[cantidad];
+        rellenar(resultado);
+        return resultado;
+    }
+
+    private static SecureRandom crearInstancia() {
+        try {
+            return SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(FUERZA_DRBG, DrbgParameters.Capability.RESEED_ONLY, null));
+        } catch (NoSuchAlgorithmException e) {
+            // Proveedor sin DRBG: se usa el generador por defecto de la plataforma
+            return new SecureRandom();
+        }
+    }
+
+    private static SecureRandom[] crearCompartidas() {
+        int cantidad = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2);
+        SecureRandom[] instancias = new SecureRandom[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            instancias[i] = crearInstancia();
+        }
+        return instancias;
+    }
+}
@@ -9,11 +9,14 @@ package com.criptografia.crypto_publica;
  * @author washi
  */
 import java.security.*;
+import java.security.interfaces.RSAPrivateCrtKey;
+import java.security.spec.RSAPublicKeySpec;
 import java.util.Base64;
 
 /**
  * Clase utilitaria para la generación de pares de claves criptográficas.
- * Soporta algoritmos RSA y ECC (EC).
+ * Soporta algoritmos RSA y ECC (EC), y los poscuánticos ML-KEM (encapsulación de
+ * claves) y ML-DSA (firma), disponibles en el JDK a partir de la versión 24.
  * 
  * Responsabilidades:
  * - Generar pares de claves según el algoritmo seleccionado
@@ -25,29 +28,51 @@ public class GeneradorClaves {
     // Algoritmos soportados
     public static final String ALGORITMO_RSA = "RSA";
     public static final String ALGORITMO_EC  = "EC";
+    public static final String ALGORITMO_ML_KEM = "ML-KEM";
+    public static final String ALGORITMO_ML_DSA = "ML-DSA";
 
     /**
      * Genera un par de claves según el algoritmo y tamaño especificado.
      *
-     * @param algoritmo Tipo de algoritmo ("RSA" o "EC")
-     * @param tamanio   Tamaño de la clave en bits (ej: 2048 para RSA, 256 para EC)
+     * @param algoritmo Tipo de algoritmo ("RSA", "EC", "ML-KEM" o "ML-DSA")
+     * @param tamanio   Tamaño de la clave en bits (ej: 2048 para RSA, 256 para EC) o, para
+     *                  ML-KEM y ML-DSA, el conjunto de parámetros (ej: 768 para ML-KEM-768, 65 para ML-DSA-65)
      * @return KeyPair con las claves públicas y privadas generadas
      * @throws NoSuchAlgorithmException si el algoritmo no es soportado
      */
     public static KeyPair generarParClaves(String algoritmo, int tamanio) throws Exception {
+        KeyPair par = crearGenerador(algoritmo, tamanio).generateKeyPair();
+        RegistroAuditoria.registrar(RegistroAuditoria.GENERAR_CLAVES, algoritmo + "-" + tamanio);
+        return par;
+    }
+
+    /**
+     * Crea un KeyPairGenerator ya inicializado para el algoritmo y tamaño dados.
+     * Útil cuando se generan muchos pares seguidos: el generador puede reutilizarse
+     * dentro del mismo hilo sin volver a buscar el proveedor ni inicializarlo.
+     *
+     * @param algoritmo Tipo de algoritmo ("RSA", "EC", "ML-KEM" o "ML-DSA")
+     * @param tamanio   Tamaño de la clave en bits o conjunto de parámetros
+     * @return KeyPairGenerator inicializado (no es seguro compartirlo entre hilos)
+     * @throws Exception si el algoritmo no es soportado
+     */
+    public static KeyPairGenerator crearGenerador(String algoritmo, int tamanio) throws Exception {
 
-        KeyPairGenerator generador = KeyPairGenerator.getInstance(algoritmo);
+        KeyPairGenerator generador = SelectorProveedores.keyPairGenerator(algoritmo);
 
         if (algoritmo.equals(ALGORITMO_EC)) {
             // Para EC se usa ECGenParameterSpec con el nombre de la curva
             java.security.spec.ECGenParameterSpec curva = getCurvaEC(tamanio);
-            generador.initialize(curva, new SecureRandom());
+            generador.initialize(curva, FuenteAleatoria.obtener());
+        } else if (algoritmo.equals(ALGORITMO_ML_KEM) || algoritmo.equals(ALGORITMO_ML_DSA)) {
+            // Para ML-KEM y ML-DSA se usa el nombre del conjunto de parámetros
+            generador.initialize(getParametrosPQ(algoritmo, tamanio), FuenteAleatoria.obtener());
         } else {
             // Para RSA se usa directamente el tamaño en bits
-            generador.initialize(tamanio, new SecureRandom());
+            generador.initialize(tamanio, FuenteAleatoria.obtener());
         }
 
-        return generador.generateKeyPair();
+        return generador;
     }
 
     /**
@@ -67,6 +92,38 @@ public class GeneradorClaves {
         }
     }
 
+    /**
+     * Mapea el conjunto de parámetros al nombre estándar de ML-KEM o ML-DSA.
+     *
+     * @param algoritmo "ML-KEM" o "ML-DSA"
+     * @param tamanio   512/768/1024 para ML-KEM, 44/65/87 para ML-DSA
+     * @return NamedParameterSpec con el conjunto de parámetros
+     */
+    private static java.security.spec.NamedParameterSpec getParametrosPQ(String algoritmo, int tamanio) {
+        boolean valido = algoritmo.equals(ALGORITMO_ML_KEM)
+                ? tamanio == 512 || tamanio == 768 || tamanio == 1024
+                : tamanio == 44 || tamanio == 65 || tamanio == 87;
+        if (!valido) {
+            throw new IllegalArgumentException("Conjunto de parámetros no válido: " + algoritmo + "-" + tamanio);
+        }
+        return new java.security.spec.NamedParameterSpec(algoritmo + "-" + tamanio);
+    }
+
+    /**
+     * Indica si el JDK en ejecución ofrece un algoritmo de clave (p. ej. ML-KEM antes del JDK 24).
+     *
+     * @param algoritmo Algoritmo de clave
+     * @return true si hay un proveedor que genere claves de ese algoritmo
+     */
+    public static boolean disponible(String algoritmo) {
+        try {
+            SelectorProveedores.keyPairGenerator(algoritmo);
+            return true;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
     /**
      * Convierte una clave pública a formato Base64.
      *
@@ -91,14 +148,14 @@ public class GeneradorClaves {
      * Reconstruye una clave pública RSA a partir de su representación Base64.
      *
      * @param base64     Clave pública codificada en Base64
-     * @param algoritmo  Algoritmo de la clave ("RSA" o "EC")
+     * @param algoritmo  Algoritmo de la clave ("RSA", "EC", "ML-KEM" o "ML-DSA")
      * @return PublicKey reconstruida
      * @throws Exception si la clave no es válida
      */
     public static PublicKey base64APublicKey(String base64, String algoritmo) throws Exception {
         byte[] bytes = Base64.getDecoder().decode(base64);
         java.security.spec.X509EncodedKeySpec spec = new java.security.spec.X509EncodedKeySpec(bytes);
-        KeyFactory factory = KeyFactory.getInstance(algoritmo);
+        KeyFactory factory = SelectorProveedores.keyFactory(algoritmo);
         return factory.generatePublic(spec);
     }
 
@@ -106,14 +163,57 @@ public class GeneradorClaves {
      * Reconstruye una clave privada a partir de su representación Base64.
      *
      * @param base64     Clave privada codificada en Base64
-     * @param algoritmo  Algoritmo de la clave ("RSA" o "EC")
+     * @param algoritmo  Algoritmo de la clave ("RSA", "EC", "ML-KEM" o "ML-DSA")
      * @return PrivateKey reconstruida
      * @throws Exception si la clave no es válida
      */
     public static PrivateKey base64APrivateKey(String base64, String algoritmo) throws Exception {
         byte[] bytes = Base64.getDecoder().decode(base64);
         java.security.spec.PKCS8EncodedKeySpec spec = new java.security.spec.PKCS8EncodedKeySpec(bytes);
-        KeyFactory factory = KeyFactory.getInstance(algoritmo);
+        KeyFactory factory = SelectorProveedores.keyFactory(algoritmo);
         return factory.generatePrivate(spec);
     }
-}
\ No newline at end of file
+
+    /**
+     * Calcula la huella (identificador) de una clave pública: SHA-256 de su codificación X.509.
+     *
+     * @param clavePub Clave pública
+     * @return Huella de 32 bytes
+     * @throws Exception si SHA-256 no está disponible
+     */
+    public static byte[] calcularHuella(PublicKey clavePub) throws Exception {
+        return SelectorProveedores.messageDigest("SHA-256").digest(clavePub.getEncoded());
+    }
+
+    /**
+     * Obtiene la clave pública que corresponde a una privada, cuando la privada la incluye.
+     * Solo es posible con claves RSA en formato CRT (las que genera y guarda esta aplicación).
+     *
+     * @param clavePriv Clave privada
+     * @return Clave pública, o null si no se puede derivar
+     * @throws Exception si la fábrica de claves falla
+     */
+    public static PublicKey clavePublicaDe(PrivateKey clavePriv) throws Exception {
+        if (!(clavePriv instanceof RSAPrivateCrtKey)) {
+            return null;
+        }
+        RSAPrivateCrtKey crt = (RSAPrivateCrtKey) clavePriv;
+        return SelectorProveedores.keyFactory(ALGORITMO_RSA)
+                .generatePublic(new RSAPublicKeySpec(crt.getModulus(), crt.getPublicExponent()));
+    }
+
+    /**
+     * Huella de un par de claves públicas usado en una envoltura híbrida clásica + ML-KEM:
+     * SHA-256 de ambas codificaciones X.509 concatenadas.
+     *
+     * @param clavePubClasica Clave pública RSA o EC
+     * @param clavePubKEM     Clave pública ML-KEM
+     * @return Huella de 32 bytes
+     * @throws Exception si SHA-256 no está disponible
+     */
+    public static byte[] calcularHuella(PublicKey clavePubClasica, PublicKey clavePubKEM) throws Exception {
+        MessageDigest digest = SelectorProveedores.messageDigest("SHA-256");
+        digest.update(clavePubClasica.getEncoded());
+        return digest.digest(clavePubKEM.getEncoded());
+    }
+}
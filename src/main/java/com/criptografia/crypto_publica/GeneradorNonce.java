@@ -0,0 +1,89 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generador de nonces (IV) de 96 bits para una clave de datos concreta.
+ *
+ * Formato del nonce: [Prefijo aleatorio (4 bytes)] + [Contador big-endian (8 bytes)]
+ *
+ * El contador garantiza que ningún nonce se repite bajo la misma clave;
+ * el prefijo aleatorio separa instancias distintas que compartan clave.
+ * El incremento es atómico y sin bloqueos, por lo que una misma instancia
+ * puede usarse desde varios hilos a la vez.
+ *
+ * Debe crearse una instancia por clave de datos, nunca compartirla entre claves.
+ */
+public final class GeneradorNonce {
+
+    public static final int TAMANIO_NONCE   = 12; // 96 bits, recomendado para GCM
+    public static final int TAMANIO_PREFIJO = 4;
+
+    private final byte[] prefijo;
+    private final AtomicLong contador = new AtomicLong();
+
+    /**
+     * Crea un generador con prefijo aleatorio.
+     */
+    public GeneradorNonce() {
+        this(FuenteAleatoria.bytes(TAMANIO_PREFIJO));
+    }
+
+    /**
+     * Crea un generador con un prefijo dado (por ejemplo, leído de un archivo).
+     *
+     * @param prefijo Prefijo de 4 bytes
+     */
+    public GeneradorNonce(byte[] prefijo) {
+        if (prefijo.length != TAMANIO_PREFIJO) {
+            throw new IllegalArgumentException("El prefijo del nonce debe tener " + TAMANIO_PREFIJO + " bytes");
+        }
+        this.prefijo = prefijo.clone();
+    }
+
+    /**
+     * Retorna el siguiente nonce único para la clave asociada.
+     *
+     * @return Nonce de 12 bytes
+     * @throws IllegalStateException si se agotó el espacio del contador
+     */
+    public byte[] siguiente() {
+        long valor = contador.getAndIncrement();
+        if (valor < 0) {
+            throw new IllegalStateException("Espacio de nonces agotado para esta clave");
+        }
+        return componer(prefijo, valor);
+    }
+
+    /**
+     * @return Copia del prefijo usado por este generador
+     */
+    public byte[] getPrefijo() {
+        return prefijo.clone();
+    }
+
+    /**
+     * Construye el nonce correspondiente a un prefijo y un valor de contador.
+     *
+     * @param prefijo  Prefijo de 4 bytes
+     * @param valor    Valor del contador
+     * @return Nonce de 12 bytes
+     */
+    public static byte[] componer(byte[] prefijo, long valor) {
+        byte[] nonce = new byte[TAMANIO_NONCE];
+        System.arraycopy(prefijo, 0, nonce, 0, TAMANIO_PREFIJO);
+        for (int i = TAMANIO_NONCE - 1; i >= TAMANIO_PREFIJO; i--) {
+            nonce[i] = (byte) valor;
+            valor >>>= 8;
+        }
+        return nonce;
+    }
+}
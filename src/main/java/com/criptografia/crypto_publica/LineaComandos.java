@@ -0,0 +1,449 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.awt.GraphicsEnvironment;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.List;
+
+/**
+ * Comandos de línea de comandos (modo sin interfaz gráfica).
+ *
+ * Uso: java -jar crypto_publica.jar <comando> [argumentos]
+ *
+ * Comandos disponibles:
+ * - provisionar <algoritmo> <tamaño> <cantidad> <directorio> [hilos]
+ * - banco-compresion [archivo] [iteraciones]
+ * - carga [--clientes=N] [--virtuales] [--tasa=op/s] [--duracion=s] [--calentamiento=s]
+ *         [--tamanio=bytes] [--mezcla=cifrar:1,descifrar:1,firmar:1,verificar:1] [--salida=archivo.json]
+ * - firmar-archivo <RSA|EC|ML-DSA> <archivo> <clave.key> [firma]
+ * - verificar-archivo <RSA|EC|ML-DSA> <archivo> <clave.pub> [firma]
+ * - verificar-auditoria <registro> [<RSA|EC> <clave.pub>]
+ * - cifrar-incremental <almacén> <archivo> <manifiesto> <clave-rsa.key> <RSA|EC> <clave-firma.key>
+ * - restaurar-incremental <almacén> <manifiesto> <clave-rsa.key> <RSA|EC> <clave-firma.pub> <destino>
+ * - empaquetar <RSA|EC|ML-KEM> <directorio> <contenedor> <clave.pub> [hilos]
+ * - listar-contenedor <RSA|EC|ML-KEM> <contenedor> <clave.key>
+ * - extraer <RSA|EC|ML-KEM> <contenedor> <clave.key> <destino> [nombre]
+ * - descifrar-lote <RSA|EC> <entrada> <clave.key> <salida> [hilos]
+ * - banco-rendimiento [--rapido] [--csv=archivo.csv]
+ * - proveedores [--auto]
+ * - entrenar (ejecución de entrenamiento para la caché AOT, perfil Maven "aot")
+ */
+public class LineaComandos {
+
+    /**
+     * Ejecuta el comando indicado en los argumentos.
+     *
+     * @param args Argumentos de la línea de comandos (args[0] es el comando)
+     * @return Código de salida (0 = éxito)
+     */
+    public static int ejecutar(String[] args) {
+        PrintStream out = System.out;
+        try {
+            // Sin precalentador en este modo: -Dcrypto.*=auto se aplica aquí, antes de la orden
+            Precalentador.aplicarSeleccionAutomatica();
+            switch (args[0]) {
+                case "provisionar":
+                    return provisionar(args, out);
+                case "banco-compresion":
+                    return bancoCompresion(args, out);
+                case "carga":
+                    return carga(args, out);
+                case "firmar-archivo":
+                    return firmarArchivo(args, out);
+                case "verificar-archivo":
+                    return verificarArchivo(args, out);
+                case "verificar-auditoria":
+                    return verificarAuditoria(args, out);
+                case "cifrar-incremental":
+                    return cifrarIncremental(args, out);
+                case "restaurar-incremental":
+                    return restaurarIncremental(args, out);
+                case "empaquetar":
+                    return empaquetar(args, out);
+                case "listar-contenedor":
+                    return listarContenedor(args, out);
+                case "extraer":
+                    return extraer(args, out);
+                case "descifrar-lote":
+                    return descifrarLote(args, out);
+                case "banco-rendimiento":
+                    return bancoRendimiento(args, out);
+                case "proveedores":
+                    return proveedores(args, out);
+                case "entrenar":
+                    return entrenar(out);
+                case "ayuda":
+                case "-h":
+                case "--help":
+                    mostrarAyuda(out);
+                    return 0;
+                default:
+                    System.err.println("Comando desconocido: " + args[0]);
+                    mostrarAyuda(System.err);
+                    return 2;
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println("✗ Argumentos inválidos: " + ex.getMessage());
+            mostrarAyuda(System.err);
+            return 2;
+        } catch (Exception ex) {
+            System.err.println("✗ Error: " + ex.getMessage());
+            return 1;
+        }
+    }
+
+    private static void mostrarAyuda(PrintStream out) {
+        out.println("Uso: crypto_publica <comando> [argumentos]");
+        out.println("  provisionar <RSA|EC|ML-KEM|ML-DSA> <tamaño> <cantidad> <directorio> [hilos]");
+        out.println("      Genera N pares de claves en paralelo y los escribe en el directorio");
+        out.println("  banco-compresion [archivo] [iteraciones]");
+        out.println("      Compara bytes y tiempo del modo híbrido con y sin compresión");
+        out.println("  carga [--clientes=N] [--virtuales] [--tasa=op/s] [--duracion=s] [--calentamiento=s]");
+        out.println("        [--tamanio=bytes] [--mezcla=cifrar:1,descifrar:1,firmar:1,verificar:1] [--salida=archivo.json]");
+        out.println("      Prueba de carga concurrente con percentiles de latencia (tasa 0 = lazo cerrado)");
+        out.println("  firmar-archivo <RSA|EC|ML-DSA> <archivo> <clave.key> [firma]");
+        out.println("      Firma desprendida de un archivo (árbol de hashes en paralelo; por defecto <archivo>.firma)");
+        out.println("  verificar-archivo <RSA|EC|ML-DSA> <archivo> <clave.pub> [firma]");
+        out.println("      Verifica la firma desprendida de un archivo");
+        out.println("  verificar-auditoria <registro> [<RSA|EC> <clave.pub>]");
+        out.println("      Comprueba la cadena de hashes del registro de auditoría y, con la clave, sus sellos");
+        out.println("  cifrar-incremental <almacén> <archivo> <manifiesto> <clave-rsa.key> <RSA|EC> <clave-firma.key>");
+        out.println("      Cifra solo los fragmentos nuevos del archivo y escribe su manifiesto firmado");
+        out.println("  restaurar-incremental <almacén> <manifiesto> <clave-rsa.key> <RSA|EC> <clave-firma.pub> <destino>");
+        out.println("      Verifica el manifiesto y reconstruye el archivo a partir de sus fragmentos");
+        out.println("  empaquetar <RSA|EC|ML-KEM> <directorio> <contenedor> <clave.pub> [hilos]");
+        out.println("      Cifra en paralelo todos los archivos del directorio en un contenedor con índice");
+        out.println("  listar-contenedor <RSA|EC|ML-KEM> <contenedor> <clave.key>");
+        out.println("      Lista los archivos del contenedor (solo se descifra el índice)");
+        out.println("  extraer <RSA|EC|ML-KEM> <contenedor> <clave.key> <destino> [nombre]");
+        out.println("      Extrae un archivo (a <destino>) o, sin nombre, todos (en el directorio <destino>)");
+        out.println("  descifrar-lote <RSA|EC> <entrada> <clave.key> <salida> [hilos]");
+        out.println("      Descifra un mensaje híbrido por línea en una canalización por etapas (salida en orden)");
+        out.println("      Una línea por mensaje; los saltos de línea del texto se escriben como \\n y \\r (y \\ como \\\\)");
+        out.println("  banco-rendimiento [--rapido] [--csv=archivo.csv]");
+        out.println("      Mide generación, cifrado y firma para cada opción de la interfaz en esta máquina");
+        out.println("  proveedores [--auto]");
+        out.println("      Muestra el proveedor JCA de cada algoritmo y el cifrado de datos (--auto mide y elige los más rápidos)");
+        out.println("  entrenar");
+        out.println("      Ejecución de entrenamiento para generar la caché AOT del JDK (perfil Maven \"aot\")");
+        out.println("Sin argumentos se abre la interfaz gráfica (--medir-arranque informa los tiempos de arranque).");
+    }
+
+    // =========================================================================
+    //                              COMANDOS
+    // =========================================================================
+
+    private static int provisionar(String[] args, PrintStream out) throws Exception {
+        if (args.length < 5) {
+            throw new IllegalArgumentException("provisionar requiere algoritmo, tamaño, cantidad y directorio");
+        }
+        String algoritmo = args[1].toUpperCase();
+        int tamanio      = Integer.parseInt(args[2]);
+        long cantidad    = Long.parseLong(args[3]);
+        int hilos        = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+
+        DestinoClaves destino = DestinoClaves.enDirectorio(Paths.get(args[4]));
+        ProvisionadorClaves.Resultado resultado =
+                ProvisionadorClaves.provisionar(algoritmo, tamanio, cantidad, hilos, destino);
+        out.println("✓ " + resultado);
+        return 0;
+    }
+
+    private static int bancoCompresion(String[] args, PrintStream out) throws Exception {
+        String mensaje = args.length > 1
+                ? new String(Files.readAllBytes(Paths.get(args[1])), StandardCharsets.UTF_8)
+                : BancoCompresion.generarJsonEjemplo(2000);
+        int iteraciones = args.length > 2 ? Integer.parseInt(args[2]) : 200;
+        BancoCompresion.comparar(mensaje, iteraciones, out);
+        return 0;
+    }
+
+    private static int firmarArchivo(String[] args, PrintStream out) throws Exception {
+        if (args.length < 4) {
+            throw new IllegalArgumentException("firmar-archivo requiere algoritmo, archivo y clave privada");
+        }
+        String algoritmo = args[1].toUpperCase();
+        Path archivo = Paths.get(args[2]);
+        Path destino = args.length > 4 ? Paths.get(args[4]) : Paths.get(args[2] + ".firma");
+        PrivateKey clavePriv = GeneradorClaves.base64APrivateKey(leerClave(Paths.get(args[3])), algoritmo);
+
+        long inicio = System.nanoTime();
+        Files.write(destino, FirmaArchivo.firmar(archivo, clavePriv, algoritmoFirma(algoritmo)));
+        out.printf("✓ Firma escrita en %s (%d ms)%n", destino, (System.nanoTime() - inicio) / 1_000_000);
+        return 0;
+    }
+
+    private static int verificarArchivo(String[] args, PrintStream out) throws Exception {
+        if (args.length < 4) {
+            throw new IllegalArgumentException("verificar-archivo requiere algoritmo, archivo y clave pública");
+        }
+        String algoritmo = args[1].toUpperCase();
+        Path archivo = Paths.get(args[2]);
+        Path firma = args.length > 4 ? Paths.get(args[4]) : Paths.get(args[2] + ".firma");
+        PublicKey clavePub = GeneradorClaves.base64APublicKey(leerClave(Paths.get(args[3])), algoritmo);
+
+        long inicio = System.nanoTime();
+        boolean valida = FirmaArchivo.verificar(archivo, Files.readAllBytes(firma), clavePub,
+                algoritmoFirma(algoritmo));
+        long ms = (System.nanoTime() - inicio) / 1_000_000;
+        out.println(valida ? "✅ FIRMA VÁLIDA (" + ms + " ms)" : "❌ FIRMA INVÁLIDA (" + ms + " ms)");
+        return valida ? 0 : 1;
+    }
+
+    private static int verificarAuditoria(String[] args, PrintStream out) throws Exception {
+        if (args.length != 2 && args.length != 4) {
+            throw new IllegalArgumentException("verificar-auditoria requiere el registro y, opcionalmente, algoritmo y clave pública");
+        }
+        PublicKey clavePub = args.length == 4
+                ? GeneradorClaves.base64APublicKey(leerClave(Paths.get(args[3])), args[2].toUpperCase())
+                : null;
+        RegistroAuditoria.Verificacion resultado = clavePub == null
+                ? RegistroAuditoria.verificar(Paths.get(args[1]), null)
+                : RegistroAuditoria.verificar(Paths.get(args[1]), clavePub, algoritmoFirma(args[2].toUpperCase()));
+        out.println(resultado);
+        if (clavePub == null) {
+            out.println("  (sin clave pública: los sellos no se verificaron)");
+            return resultado.isValido() ? 0 : 1;
+        }
+        return resultado.isCompleto() ? 0 : 1;
+    }
+
+    private static int cifrarIncremental(String[] args, PrintStream out) throws Exception {
+        if (args.length != 7) {
+            throw new IllegalArgumentException("cifrar-incremental requiere almacén, archivo, manifiesto, "
+                    + "clave RSA privada, algoritmo y clave de firma");
+        }
+        Path directorio = Paths.get(args[1]);
+        PrivateKey claveRSA = GeneradorClaves.base64APrivateKey(
+                leerClave(Paths.get(args[4])), GeneradorClaves.ALGORITMO_RSA);
+        String algoritmo = args[5].toUpperCase();
+        PrivateKey claveFirma = GeneradorClaves.base64APrivateKey(leerClave(Paths.get(args[6])), algoritmo);
+
+        AlmacenIncremental almacen;
+        if (AlmacenIncremental.existe(directorio)) {
+            almacen = AlmacenIncremental.abrir(directorio, claveRSA);
+        } else {
+            // La clave pública se obtiene de la privada (formato CRT) para no pedir otro archivo
+            PublicKey clavePub = GeneradorClaves.clavePublicaDe(claveRSA);
+            if (clavePub == null) {
+                throw new IllegalArgumentException("La clave RSA privada no incluye la clave pública");
+            }
+            almacen = AlmacenIncremental.crear(directorio, clavePub);
+            out.println("✓ Almacén creado en " + directorio);
+        }
+        AlmacenIncremental.Resultado resultado = almacen.cifrar(
+                Paths.get(args[2]), Paths.get(args[3]), claveFirma, algoritmoFirma(algoritmo));
+        out.println("✓ " + resultado);
+        return 0;
+    }
+
+    private static int restaurarIncremental(String[] args, PrintStream out) throws Exception {
+        if (args.length != 7) {
+            throw new IllegalArgumentException("restaurar-incremental requiere almacén, manifiesto, "
+                    + "clave RSA privada, algoritmo, clave pública de firma y destino");
+        }
+        PrivateKey claveRSA = GeneradorClaves.base64APrivateKey(
+                leerClave(Paths.get(args[3])), GeneradorClaves.ALGORITMO_RSA);
+        String algoritmo = args[4].toUpperCase();
+        PublicKey clavePub = GeneradorClaves.base64APublicKey(leerClave(Paths.get(args[5])), algoritmo);
+        AlmacenIncremental almacen = AlmacenIncremental.abrir(Paths.get(args[1]), claveRSA);
+
+        long inicio = System.nanoTime();
+        try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[6])))) {
+            almacen.descifrar(Paths.get(args[2]), clavePub, algoritmoFirma(algoritmo), salida);
+        }
+        out.printf("✓ Archivo restaurado en %s (%d ms)%n", args[6], (System.nanoTime() - inicio) / 1_000_000);
+        return 0;
+    }
+
+    private static int empaquetar(String[] args, PrintStream out) throws Exception {
+        if (args.length < 5) {
+            throw new IllegalArgumentException("empaquetar requiere algoritmo, directorio, contenedor y clave pública");
+        }
+        PublicKey clavePub = GeneradorClaves.base64APublicKey(leerClave(Paths.get(args[4])), args[1].toUpperCase());
+        int hilos = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+        ContenedorCifrado.Resultado resultado =
+                ContenedorCifrado.crear(Paths.get(args[2]), Paths.get(args[3]), clavePub, hilos);
+        out.println("✓ " + resultado);
+        return 0;
+    }
+
+    private static int listarContenedor(String[] args, PrintStream out) throws Exception {
+        if (args.length != 4) {
+            throw new IllegalArgumentException("listar-contenedor requiere algoritmo, contenedor y clave privada");
+        }
+        PrivateKey clavePriv = GeneradorClaves.base64APrivateKey(leerClave(Paths.get(args[3])), args[1].toUpperCase());
+        try (ContenedorCifrado contenedor = ContenedorCifrado.abrir(Paths.get(args[2]), clavePriv)) {
+            for (ContenedorCifrado.Entrada entrada : contenedor.getEntradas()) {
+                out.println(entrada);
+            }
+            out.println(contenedor.getEntradas().size() + " archivos");
+        }
+        return 0;
+    }
+
+    private static int extraer(String[] args, PrintStream out) throws Exception {
+        if (args.length != 5 && args.length != 6) {
+            throw new IllegalArgumentException("extraer requiere algoritmo, contenedor, clave privada y destino");
+        }
+        PrivateKey clavePriv = GeneradorClaves.base64APrivateKey(leerClave(Paths.get(args[3])), args[1].toUpperCase());
+        long inicio = System.nanoTime();
+        try (ContenedorCifrado contenedor = ContenedorCifrado.abrir(Paths.get(args[2]), clavePriv)) {
+            if (args.length == 6) {
+                try (OutputStream salida = new BufferedOutputStream(Files.newOutputStream(Paths.get(args[4])))) {
+                    contenedor.extraer(args[5], salida);
+                }
+            } else {
+                contenedor.extraerTodo(Paths.get(args[4]), 0);
+            }
+        }
+        out.printf("✓ Extraído en %s (%d ms)%n", args[4], (System.nanoTime() - inicio) / 1_000_000);
+        return 0;
+    }
+
+    private static int descifrarLote(String[] args, PrintStream out) throws Exception {
+        if (args.length != 5 && args.length != 6) {
+            throw new IllegalArgumentException("descifrar-lote requiere algoritmo, entrada, clave privada y salida");
+        }
+        PrivateKey clavePriv = GeneradorClaves.base64APrivateKey(leerClave(Paths.get(args[3])), args[1].toUpperCase());
+        int hilos = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+        DescifradoLotes lote = new DescifradoLotes(clavePriv, hilos, DescifradoLotes.CAPACIDAD_COLA_POR_DEFECTO);
+
+        DescifradoLotes.Resumen resumen;
+        try (BufferedReader entrada = Files.newBufferedReader(Paths.get(args[2]), StandardCharsets.US_ASCII);
+             BufferedWriter salida = Files.newBufferedWriter(Paths.get(args[4]), StandardCharsets.UTF_8)) {
+            // Una línea por mensaje; los que fallan dejan la línea vacía para conservar las posiciones
+            // y los saltos de línea del texto se escapan (\n, \r y \\) para no desplazar las siguientes
+            resumen = lote.ejecutar(entrada, (indice, texto, error) -> {
+                if (error != null) {
+                    System.err.println("✗ Mensaje " + (indice + 1) + ": " + error.getMessage());
+                } else {
+                    salida.write(escaparLinea(texto));
+                }
+                salida.newLine();
+            });
+        }
+        out.println((resumen.getErrores() == 0 ? "✓ " : "✗ ") + resumen);
+        return resumen.getErrores() == 0 ? 0 : 1;
+    }
+
+    private static String escaparLinea(String texto) {
+        return texto.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String leerClave(Path archivo) throws Exception {
+        return new String(Files.readAllBytes(archivo), StandardCharsets.US_ASCII).trim();
+    }
+
+    private static String algoritmoFirma(String algoritmoClave) {
+        switch (algoritmoClave) {
+            case GeneradorClaves.ALGORITMO_RSA: return MotorFirma.FIRMA_RSA;
+            case GeneradorClaves.ALGORITMO_EC:  return MotorFirma.FIRMA_ECDSA;
+            case GeneradorClaves.ALGORITMO_ML_DSA: return MotorFirma.FIRMA_ML_DSA;
+            default:
+                throw new IllegalArgumentException("Algoritmo desconocido: " + algoritmoClave);
+        }
+    }
+
+    private static int bancoRendimiento(String[] args, PrintStream out) throws Exception {
+        boolean rapido = false;
+        Path csv = null;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--rapido")) {
+                rapido = true;
+            } else if (args[i].startsWith("--csv=")) {
+                csv = Paths.get(args[i].substring("--csv=".length()));
+            } else {
+                throw new IllegalArgumentException("Opción desconocida: " + args[i]);
+            }
+        }
+        List<BancoRendimiento.Medicion> mediciones = BancoRendimiento.ejecutar(
+                rapido ? 200 : 300, rapido ? 500 : 1000, (medicion, completadas, total) -> out.println(medicion));
+        if (csv != null) {
+            Files.write(csv, BancoRendimiento.aCsv(mediciones).getBytes(StandardCharsets.UTF_8));
+            out.println("✓ CSV guardado en " + csv);
+        }
+        return 0;
+    }
+
+    private static int proveedores(String[] args, PrintStream out) throws Exception {
+        // Con -Dcrypto.*=auto la selección ya se aplicó en ejecutar()
+        if (args.length > 1 && args[1].equals("--auto")) {
+            SelectorProveedores.autoseleccionar();
+            CifradoDatos.autoseleccionar();
+        }
+        out.print(SelectorProveedores.diagnostico());
+        return 0;
+    }
+
+    private static int entrenar(PrintStream out) throws Exception {
+        long inicio = System.nanoTime();
+        // Cargar también las clases de la interfaz cuando hay pantalla disponible
+        if (!GraphicsEnvironment.isHeadless()) {
+            new VentanaPrincipal().dispose();
+        }
+        Precalentador.ejecutar();
+        out.printf("✓ Entrenamiento completado en %d ms%n", (System.nanoTime() - inicio) / 1_000_000);
+        return 0;
+    }
+
+    private static int carga(String[] args, PrintStream out) throws Exception {
+        PruebaCarga.Configuracion config = new PruebaCarga.Configuracion();
+        Path salida = null;
+        for (int i = 1; i < args.length; i++) {
+            String arg = args[i];
+            String valor = arg.contains("=") ? arg.substring(arg.indexOf('=') + 1) : "";
+            if (arg.startsWith("--clientes=")) {
+                config.clientes(Integer.parseInt(valor));
+            } else if (arg.equals("--virtuales")) {
+                config.hilosVirtuales(true);
+            } else if (arg.startsWith("--tasa=")) {
+                config.tasaObjetivo(Double.parseDouble(valor));
+            } else if (arg.startsWith("--duracion=")) {
+                config.duracionSegundos(Integer.parseInt(valor));
+            } else if (arg.startsWith("--calentamiento=")) {
+                config.calentamientoSegundos(Integer.parseInt(valor));
+            } else if (arg.startsWith("--tamanio=")) {
+                config.tamanioMensaje(Integer.parseInt(valor));
+            } else if (arg.startsWith("--mezcla=")) {
+                for (PruebaCarga.Operacion op : PruebaCarga.Operacion.values()) {
+                    config.peso(op, 0);
+                }
+                for (String parte : valor.split(",")) {
+                    String[] opPeso = parte.split(":");
+                    config.peso(PruebaCarga.Operacion.valueOf(opPeso[0].trim().toUpperCase()),
+                            opPeso.length > 1 ? Integer.parseInt(opPeso[1].trim()) : 1);
+                }
+            } else if (arg.startsWith("--salida=")) {
+                salida = Paths.get(valor);
+            } else {
+                throw new IllegalArgumentException("Opción desconocida: " + arg);
+            }
+        }
+
+        PruebaCarga.Resultado resultado = PruebaCarga.ejecutar(config);
+        out.print(resultado);
+        if (salida != null) {
+            resultado.guardar(salida);
+            out.println("✓ Resultados guardados en " + salida);
+        }
+        return 0;
+    }
+}
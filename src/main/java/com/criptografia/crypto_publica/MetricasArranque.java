@@ -0,0 +1,59 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Medición del arranque de la aplicación (modo --medir-arranque).
+ *
+ * Informa, contando desde el inicio de la JVM:
+ * - Tiempo hasta la primera ventana visible
+ * - Tiempo hasta la primera operación criptográfica completada
+ */
+public final class MetricasArranque {
+
+    private static volatile boolean habilitado = false;
+    private static final AtomicBoolean ventanaMarcada   = new AtomicBoolean();
+    private static final AtomicBoolean operacionMarcada = new AtomicBoolean();
+
+    private MetricasArranque() {
+    }
+
+    public static void habilitar() {
+        habilitado = true;
+    }
+
+    /**
+     * Registra que la ventana principal ya es visible (solo la primera vez).
+     */
+    public static void marcarVentanaVisible() {
+        if (habilitado && ventanaMarcada.compareAndSet(false, true)) {
+            informar("primera ventana");
+        }
+    }
+
+    /**
+     * Registra que terminó la primera operación criptográfica (solo la primera vez).
+     *
+     * @param operacion Nombre de la operación
+     */
+    public static void marcarPrimeraOperacion(String operacion) {
+        if (habilitado && operacionMarcada.compareAndSet(false, true)) {
+            informar("primera operación (" + operacion + ")");
+        }
+    }
+
+    private static void informar(String evento) {
+        long inicioJVM = ManagementFactory.getRuntimeMXBean().getStartTime();
+        System.out.printf("[arranque] %s: %d ms desde el inicio de la JVM%n",
+                evento, System.currentTimeMillis() - inicioJVM);
+    }
+}
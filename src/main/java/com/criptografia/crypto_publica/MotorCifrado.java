@@ -11,10 +11,13 @@ package com.criptografia.crypto_publica;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
+import javax.crypto.spec.OAEPParameterSpec;
+import javax.crypto.spec.PSource;
 import javax.crypto.spec.SecretKeySpec;
 import java.security.PrivateKey;
 import java.security.PublicKey;
-import java.security.SecureRandom;
+import java.security.spec.MGF1ParameterSpec;
+import java.util.Arrays;
 import java.util.Base64;
 
 /**
@@ -23,20 +26,36 @@ import java.util.Base64;
  * Soporta dos modos:
  * 1. Cifrado RSA directo (para mensajes pequeños)
  * 2. Cifrado híbrido con ECC: usa AES para cifrar el contenido 
- *    y RSA/EC para proteger la clave AES (mejor rendimiento para datos grandes)
+ *    y RSA/EC para proteger la clave AES (mejor rendimiento para datos grandes).
+ *    La clave AES también puede protegerse con ML-KEM o con una combinación
+ *    clásica + ML-KEM (ver EnvolvedorClave).
  * 
+ * El contenido se cifra con AES-GCM o ChaCha20-Poly1305 (ver CifradoDatos);
+ * la cabecera registra cuál.
+ *
  * Formato de salida del cifrado híbrido:
- * [Clave AES cifrada con RSA (Base64)] + "||SEPARATOR||" + [Mensaje cifrado con AES (Base64)]
+ * [Cabecera (Base64)] + "||SEPARATOR||" + [Clave AES cifrada con RSA (Base64)]
+ *     + "||SEPARATOR||" + [IV + Mensaje cifrado con AES (Base64)]
+ *
+ * La cabecera (ver CabeceraSobre) lleva el identificador de la clave del destinatario,
+ * lo que permite elegir la clave privada correcta de un AnilloClaves sin probarlas todas.
+ *
+ * Antes de descifrar, ValidadorSobre comprueba la estructura y los tamaños del sobre:
+ * uno malformado se rechaza sin llegar a la operación de clave privada.
  */
 public class MotorCifrado {
 
     // Algoritmos y transformaciones
-    private static final String TRANSFORMACION_RSA    = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    static final String         TRANSFORMACION_RSA    = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+    // Parámetros OAEP explícitos: los proveedores difieren en el resumen MGF1 por defecto
+    // (SunJCE usa SHA-1, BouncyCastle SHA-256); se fija el de SunJCE, el formato original
+    static final OAEPParameterSpec PARAMETROS_OAEP = new OAEPParameterSpec(
+            "SHA-256", "MGF1", MGF1ParameterSpec.SHA1, PSource.PSpecified.DEFAULT);
     private static final String ALGORITMO_AES         = "AES";
-    private static final String TRANSFORMACION_AES    = "AES/GCM/NoPadding";
-    private static final int    TAMANIO_IV_GCM        = 12; // 12 bytes recomendado para GCM
-    private static final int    TAMANIO_TAG_GCM       = 128; // 128 bits para el tag de autenticación
-    private static final String SEPARADOR_HIBRIDO    = "||SEPARATOR||";
+    static final String         TRANSFORMACION_AES    = "AES/GCM/NoPadding";
+    private static final int    TAMANIO_CLAVE_AES     = 256;
+    private static final int    TAMANIO_IV_GCM        = GeneradorNonce.TAMANIO_NONCE; // 12 bytes recomendado para GCM
+    static final String         SEPARADOR_HIBRIDO    = "||SEPARATOR||";
 
     /**
      * Cifra un mensaje usando RSA directamente.
@@ -48,8 +67,8 @@ public class MotorCifrado {
      * @throws Exception si el cifrado falla
      */
     public static String cifrarRSA(String mensajeOriginal, PublicKey clavePub) throws Exception {
-        Cipher cipher = Cipher.getInstance(TRANSFORMACION_RSA);
-        cipher.init(Cipher.ENCRYPT_MODE, clavePub);
+        Cipher cipher = SelectorProveedores.cipher(TRANSFORMACION_RSA);
+        cipher.init(Cipher.ENCRYPT_MODE, clavePub, PARAMETROS_OAEP, FuenteAleatoria.obtener());
         byte[] cifrado = cipher.doFinal(mensajeOriginal.getBytes("UTF-8"));
         return Base64.getEncoder().encodeToString(cifrado);
     }
@@ -63,91 +82,324 @@ public class MotorCifrado {
      * @throws Exception si el descifrado falla
      */
     public static String descifrarRSA(String mensajeCifrado, PrivateKey clavePriv) throws Exception {
-        Cipher cipher = Cipher.getInstance(TRANSFORMACION_RSA);
-        cipher.init(Cipher.DECRYPT_MODE, clavePriv);
+        Cipher cipher = SelectorProveedores.cipher(TRANSFORMACION_RSA);
+        cipher.init(Cipher.DECRYPT_MODE, clavePriv, PARAMETROS_OAEP);
         byte[] descifrado = cipher.doFinal(Base64.getDecoder().decode(mensajeCifrado));
+        RegistroAuditoria.registrar(RegistroAuditoria.DESCIFRAR, "RSA directo");
         return new String(descifrado, "UTF-8");
     }
 
+
     /**
      * Cifrado híbrido: genera una clave AES aleatoria, cifra el mensaje con AES-GCM,
      * y luego cifra la clave AES con RSA. Permite cifrar mensajes de cualquier tamaño.
+     * La cabecera del sobre identifica la clave del destinatario (huella de la pública).
      *
      * @param mensajeOriginal Texto plano a cifrar
      * @param clavePubRSA     Clave pública RSA para proteger la clave AES
-     * @return String con formato: [ClavAES_cifrada]||SEPARATOR||[Mensaje_cifrado]
+     * @return String con formato: [Cabecera]||SEPARATOR||[ClavAES_cifrada]||SEPARATOR||[Mensaje_cifrado]
      * @throws Exception si el cifrado falla
      */
     public static String cifrarHibrido(String mensajeOriginal, PublicKey clavePubRSA) throws Exception {
+        return cifrarHibrido(mensajeOriginal, clavePubRSA, (CodecCompresion) null);
+    }
+
+    /**
+     * Cifrado híbrido con etapa opcional de compresión antes de AES-GCM.
+     * Si una muestra del mensaje resulta incompresible, se cifra sin comprimir;
+     * el códec usado (si alguno) queda registrado en la cabecera del sobre.
+     *
+     * @param mensajeOriginal Texto plano a cifrar
+     * @param clavePubRSA     Clave pública RSA para proteger la clave AES
+     * @param codec           Códec de compresión, o null para no comprimir nunca
+     * @return String con el mismo formato que cifrarHibrido(String, PublicKey)
+     * @throws Exception si el cifrado falla
+     */
+    public static String cifrarHibrido(String mensajeOriginal, PublicKey clavePubRSA,
+                                       CodecCompresion codec) throws Exception {
+        return cifrarHibrido(mensajeOriginal, GeneradorClaves.calcularHuella(clavePubRSA), codec,
+                claveAES -> EnvolvedorClave.envolver(claveAES, clavePubRSA));
+    }
+
+    /**
+     * Cifrado híbrido con envoltura combinada clásica + poscuántica: la clave AES solo
+     * se recupera con ambas claves privadas (RSA o EC, y ML-KEM).
+     *
+     * @param mensajeOriginal Texto plano a cifrar
+     * @param clavePubClasica Clave pública RSA o EC del destinatario
+     * @param clavePubKEM     Clave pública ML-KEM del destinatario
+     * @return String con el mismo formato que cifrarHibrido(String, PublicKey)
+     * @throws Exception si el cifrado falla
+     */
+    public static String cifrarHibrido(String mensajeOriginal, PublicKey clavePubClasica,
+                                       PublicKey clavePubKEM) throws Exception {
+        return cifrarHibrido(mensajeOriginal, GeneradorClaves.calcularHuella(clavePubClasica, clavePubKEM), null,
+                claveAES -> EnvolvedorClave.envolver(claveAES, clavePubClasica, clavePubKEM));
+    }
+
+    /**
+     * Envuelve la clave de datos de un sobre para su destinatario.
+     */
+    @FunctionalInterface
+    private interface Envoltura {
+        byte[] envolver(SecretKey claveAES) throws Exception;
+    }
+
+    /**
+     * Recupera la clave de datos de un sobre.
+     */
+    @FunctionalInterface
+    private interface Desenvoltura {
+        SecretKey desenvolver(byte[] claveCifrada) throws Exception;
+    }
+
+    private static String cifrarHibrido(String mensajeOriginal, byte[] idClave, CodecCompresion codec,
+                                        Envoltura envoltura) throws Exception {
         // 1. Generar clave AES aleatoria (256 bits)
-        KeyGenerator genAES = KeyGenerator.getInstance(ALGORITMO_AES);
-        genAES.init(256, new SecureRandom());
-        SecretKey claveAES = genAES.generateKey();
-
-        // 2. Generar IV aleatorio para AES-GCM
-        byte[] iv = new byte[TAMANIO_IV_GCM];
-        new SecureRandom().nextFloat();
-//        new SecureRandom().nextFill(iv);
-
-        // 3. Cifrar el mensaje con AES-GCM
-        Cipher cipherAES = Cipher.getInstance(TRANSFORMACION_AES);
-        javax.crypto.spec.GCMParameterSpec paramGCM = new javax.crypto.spec.GCMParameterSpec(TAMANIO_TAG_GCM, iv);
-        cipherAES.init(Cipher.ENCRYPT_MODE, claveAES, paramGCM);
-        byte[] mensajeCifrado = cipherAES.doFinal(mensajeOriginal.getBytes("UTF-8"));
-
-        // 4. Concatenar IV + mensaje cifrado (el IV es necesario para descifrar)
-        byte[] ivMasMensaje = new byte[iv.length + mensajeCifrado.length];
-        System.arraycopy(iv, 0, ivMasMensaje, 0, iv.length);
-        System.arraycopy(mensajeCifrado, 0, ivMasMensaje, iv.length, mensajeCifrado.length);
+        SecretKey claveAES = generarClaveDatos();
 
-        // 5. Cifrar la clave AES con RSA (la protege para el transporte)
-        Cipher cipherRSA = Cipher.getInstance(TRANSFORMACION_RSA);
-        cipherRSA.init(Cipher.ENCRYPT_MODE, clavePubRSA);
-        byte[] claveAES_cifrada = cipherRSA.doFinal(claveAES.getEncoded());
+        // 2. Construir la cabecera con el identificador de la clave del destinatario
+        //    y comprimir el mensaje si vale la pena
+        CabeceraSobre datosCabecera = new CabeceraSobre(idClave);
+        datosCabecera.setCifrado(CifradoDatos.preferido());
+        byte[] textoPlano = comprimirSiConviene(mensajeOriginal.getBytes("UTF-8"), datosCabecera, codec);
+        byte[] cabecera = datosCabecera.codificar();
 
-        // 6. Combinar ambas partes en un solo String
-        String parte1 = Base64.getEncoder().encodeToString(claveAES_cifrada);
-        String parte2 = Base64.getEncoder().encodeToString(ivMasMensaje);
+        // 3. Cifrar el mensaje con AES-GCM o ChaCha20-Poly1305 (la cabecera queda autenticada como AAD)
+        byte[] ivMasMensaje = cifrarContenido(claveAES, cabecera, datosCabecera.getCifrado(), textoPlano);
 
-        return parte1 + SEPARADOR_HIBRIDO + parte2;
+        // 4. Envolver la clave AES para el destinatario (RSA-OAEP, ECDH, ML-KEM o híbrido)
+        byte[] claveAES_cifrada = envoltura.envolver(claveAES);
+
+        // 5. Combinar las tres partes en un solo String
+        Base64.Encoder b64 = Base64.getEncoder();
+        return b64.encodeToString(cabecera) + SEPARADOR_HIBRIDO
+                + b64.encodeToString(claveAES_cifrada) + SEPARADOR_HIBRIDO
+                + b64.encodeToString(ivMasMensaje);
     }
 
     /**
-     * Descifra un mensaje que fue cifrado con el método híbrido.
+     * Descifra un mensaje que fue cifrado con el método híbrido. Un sobre con cabecera debe
+     * estar dirigido a esta clave (si su identificador se puede derivar); se acepta también
+     * el formato anterior sin cabecera (clave + separador + mensaje).
      *
-     * @param mensajeCifrado  String con formato híbrido (clave + separador + mensaje)
+     * @param mensajeCifrado  String con formato híbrido
      * @param clavePrivRSA    Clave privada RSA para descifrar la clave AES
      * @return Mensaje original descifrado
      * @throws Exception si el descifrado falla o el formato es inválido
      */
     public static String descifrarHibrido(String mensajeCifrado, PrivateKey clavePrivRSA) throws Exception {
-        // 1. Separar las dos partes
-        String[] partes = mensajeCifrado.split(java.util.regex.Pattern.quote(SEPARADOR_HIBRIDO));
-        if (partes.length != 2) {
+        // Estructura y límites antes de cualquier operación con la clave privada
+        ValidadorSobre.Sobre sobre = ValidadorSobre.paraClave(clavePrivRSA).validar(mensajeCifrado);
+        if (sobre.getDatosCabecera() != null) {
+            rechazarNoSimple(sobre.getDatosCabecera());
+        }
+        // Sin cabecera (formato anterior) no hay AAD
+        return descifrarPartes(sobre, claveCifrada -> EnvolvedorClave.desenvolver(claveCifrada, clavePrivRSA));
+    }
+
+    /**
+     * Descifra un mensaje híbrido seleccionando la clave privada del anillo
+     * según el identificador de clave de la cabecera (búsqueda O(1)).
+     *
+     * @param mensajeCifrado String con formato híbrido con cabecera
+     * @param anillo         Anillo con las claves actuales y retiradas
+     * @return Mensaje original descifrado
+     * @throws Exception si el sobre no identifica una clave del anillo o el descifrado falla
+     */
+    public static String descifrarHibrido(String mensajeCifrado, AnilloClaves anillo) throws Exception {
+        ValidadorSobre.Sobre sobre = ValidadorSobre.porDefecto().validar(mensajeCifrado);
+        CabeceraSobre datosCabecera = sobre.getDatosCabecera();
+        if (datosCabecera == null) {
+            throw new IllegalArgumentException("El mensaje no incluye identificador de clave");
+        }
+        rechazarNoSimple(datosCabecera);
+        byte[] idClave = datosCabecera.getIdClave();
+        if (idClave == null) {
+            throw new IllegalArgumentException("El mensaje no incluye identificador de clave");
+        }
+
+        AnilloClaves.Entrada entrada = anillo.buscar(idClave);
+        if (entrada == null) {
+            throw new IllegalArgumentException("El anillo no contiene la clave del destinatario");
+        }
+        return descifrarPartes(sobre,
+                claveCifrada -> EnvolvedorClave.desenvolver(claveCifrada, entrada.getClavePriv()));
+    }
+
+    /**
+     * Descifra un mensaje cifrado con la envoltura combinada clásica + ML-KEM.
+     *
+     * @param mensajeCifrado   String con formato híbrido con cabecera
+     * @param clavePrivClasica Clave privada RSA o EC del destinatario
+     * @param clavePrivKEM     Clave privada ML-KEM del destinatario
+     * @return Mensaje original descifrado
+     * @throws Exception si alguna clave no corresponde o el descifrado falla
+     */
+    public static String descifrarHibrido(String mensajeCifrado, PrivateKey clavePrivClasica,
+                                          PrivateKey clavePrivKEM) throws Exception {
+        ValidadorSobre.Sobre sobre = ValidadorSobre.porDefecto().validar(mensajeCifrado);
+        if (sobre.getDatosCabecera() == null) {
             throw new IllegalArgumentException("Formato de cifrado híbrido inválido");
         }
+        rechazarNoSimple(sobre.getDatosCabecera());
+        return descifrarPartes(sobre,
+                claveCifrada -> EnvolvedorClave.desenvolver(claveCifrada, clavePrivClasica, clavePrivKEM));
+    }
+
+    static void rechazarNoSimple(CabeceraSobre cabecera) {
+        if (cabecera.getAlgoritmoFirma() != null) {
+            throw new IllegalArgumentException("El mensaje está firmado: use MotorFirmaCifrado.descifrarYVerificar");
+        }
+        if (cabecera.getDestinatarios() != 0) {
+            throw new IllegalArgumentException("El mensaje tiene varios destinatarios: use CifradoMultiDestinatario");
+        }
+    }
+
+    static String[] separarPartes(String mensajeCifrado) {
+        // indexOf en lugar de split: sin expresión regular ni arreglos intermedios
+        int primero = mensajeCifrado.indexOf(SEPARADOR_HIBRIDO);
+        int segundo = primero < 0 ? -1
+                : mensajeCifrado.indexOf(SEPARADOR_HIBRIDO, primero + SEPARADOR_HIBRIDO.length());
+        if (primero < 0 || (segundo >= 0
+                && mensajeCifrado.indexOf(SEPARADOR_HIBRIDO, segundo + SEPARADOR_HIBRIDO.length()) >= 0)) {
+            throw new IllegalArgumentException("Formato de cifrado híbrido inválido");
+        }
+        if (segundo < 0) {
+            return new String[]{mensajeCifrado.substring(0, primero),
+                    mensajeCifrado.substring(primero + SEPARADOR_HIBRIDO.length())};
+        }
+        return new String[]{mensajeCifrado.substring(0, primero),
+                mensajeCifrado.substring(primero + SEPARADOR_HIBRIDO.length(), segundo),
+                mensajeCifrado.substring(segundo + SEPARADOR_HIBRIDO.length())};
+    }
+
+    private static String descifrarPartes(ValidadorSobre.Sobre sobre, Desenvoltura desenvoltura) throws Exception {
+        // 1. Recuperar la clave AES con la clave privada del destinatario
+        SecretKey claveAES = desenvoltura.desenvolver(sobre.getClaveCifrada());
+
+        // 2. Descifrar (y descomprimir) el mensaje
+        return new String(descifrarContenido(claveAES, sobre.getCabecera(), sobre.getDatosCabecera(),
+                sobre.getContenido()), "UTF-8");
+    }
+
+    /**
+     * Comprime el texto plano si el códec lo reduce, registrando la compresión en la cabecera.
+     *
+     * @param textoPlano    Datos originales
+     * @param datosCabecera Cabecera del sobre (se actualiza si se comprime)
+     * @param codec         Códec a usar, o null para no comprimir
+     * @return Datos a cifrar (comprimidos o los originales)
+     * @throws Exception si la compresión falla
+     */
+    static byte[] comprimirSiConviene(byte[] textoPlano, CabeceraSobre datosCabecera,
+                                      CodecCompresion codec) throws Exception {
+        if (codec != null && Compresion.esCompresible(textoPlano, codec)) {
+            byte[] comprimido = codec.comprimir(textoPlano, 0, textoPlano.length);
+            if (comprimido.length < textoPlano.length) {
+                datosCabecera.setCompresion(codec.getId(), textoPlano.length);
+                return comprimido;
+            }
+        }
+        return textoPlano;
+    }
+
+    /**
+     * Cifra el contenido bajo un nonce nuevo, autenticando la cabecera.
+     *
+     * @param claveAES   Clave de datos (nueva para cada sobre)
+     * @param cabecera   Cabecera codificada (AAD)
+     * @param cifrado    Cifrado registrado en la cabecera (AES-GCM o ChaCha20-Poly1305)
+     * @param textoPlano Datos a cifrar
+     * @return IV + mensaje cifrado (el IV es necesario para descifrar)
+     * @throws Exception si el cifrado falla
+     */
+    static byte[] cifrarContenido(SecretKey claveAES, byte[] cabecera, CifradoDatos cifrado,
+                                  byte[] textoPlano) throws Exception {
+        // Nonce único para esta clave (prefijo aleatorio + contador)
+        byte[] iv = new GeneradorNonce().siguiente();
+        Cipher cipherAES = cifrado.iniciar(Cipher.ENCRYPT_MODE, claveAES, iv);
+        cipherAES.updateAAD(cabecera);
 
-        byte[] claveAES_cifrada = Base64.getDecoder().decode(partes[0]);
-        byte[] ivMasMensaje     = Base64.getDecoder().decode(partes[1]);
+        byte[] ivMasMensaje = new byte[iv.length + cipherAES.getOutputSize(textoPlano.length)];
+        System.arraycopy(iv, 0, ivMasMensaje, 0, iv.length);
+        cipherAES.doFinal(textoPlano, 0, textoPlano.length, ivMasMensaje, iv.length);
+        return ivMasMensaje;
+    }
+
+    /**
+     * Descifra y autentica IV + mensaje cifrado, y lo descomprime si la cabecera lo indica.
+     *
+     * @param claveAES      Clave de datos
+     * @param cabecera      Cabecera codificada (AAD), o null en el formato anterior
+     * @param datosCabecera Cabecera decodificada, o null en el formato anterior
+     * @param ivMasMensaje  IV + mensaje cifrado
+     * @return Texto plano original
+     * @throws Exception si la autenticación o la descompresión fallan
+     */
+    static byte[] descifrarContenido(SecretKey claveAES, byte[] cabecera, CabeceraSobre datosCabecera,
+                                     byte[] ivMasMensaje) throws Exception {
+        // 1. Extraer el IV (el mensaje cifrado se descifra en su sitio, sin copiarlo)
+        if (ivMasMensaje.length < TAMANIO_IV_GCM + CifradoDatos.TAMANIO_TAG) {
+            throw new IllegalArgumentException("Mensaje cifrado truncado");
+        }
+        byte[] iv = Arrays.copyOf(ivMasMensaje, TAMANIO_IV_GCM);
+
+        // 2. Descifrar el mensaje con el cifrado que indique la cabecera (AES-GCM si no hay)
+        CifradoDatos cifrado = datosCabecera != null ? datosCabecera.getCifrado() : CifradoDatos.AES_GCM;
+        Cipher cipherAES = cifrado.iniciar(Cipher.DECRYPT_MODE, claveAES, iv);
+        if (cabecera != null) {
+            cipherAES.updateAAD(cabecera);
+        }
+        byte[] mensajeOriginal = cipherAES.doFinal(ivMasMensaje, TAMANIO_IV_GCM, ivMasMensaje.length - TAMANIO_IV_GCM);
 
-        // 2. Descifrar la clave AES con RSA
-        Cipher cipherRSA = Cipher.getInstance(TRANSFORMACION_RSA);
-        cipherRSA.init(Cipher.DECRYPT_MODE, clavePrivRSA);
-        byte[] claveAES_bytes = cipherRSA.doFinal(claveAES_cifrada);
-        SecretKey claveAES = new SecretKeySpec(claveAES_bytes, ALGORITMO_AES);
+        // 3. Descomprimir si el emisor comprimió antes de cifrar
+        if (datosCabecera != null && datosCabecera.getCodecCompresion() != 0) {
+            mensajeOriginal = Compresion.porId(datosCabecera.getCodecCompresion())
+                    .descomprimir(mensajeOriginal, datosCabecera.getLongitudOriginal());
+        }
+        return mensajeOriginal;
+    }
 
-        // 3. Extraer IV y mensaje cifrado
-        byte[] iv             = new byte[TAMANIO_IV_GCM];
-        byte[] mensajeCifBytes = new byte[ivMasMensaje.length - TAMANIO_IV_GCM];
-        System.arraycopy(ivMasMensaje, 0, iv, 0, TAMANIO_IV_GCM);
-        System.arraycopy(ivMasMensaje, TAMANIO_IV_GCM, mensajeCifBytes, 0, mensajeCifBytes.length);
+    /**
+     * Cifra (envuelve) una clave de datos con la clave pública RSA del destinatario.
+     *
+     * @param claveDatos  Clave AES a proteger
+     * @param clavePubRSA Clave pública RSA
+     * @return Clave cifrada con RSA-OAEP
+     * @throws Exception si el cifrado falla
+     */
+    static byte[] envolverClave(SecretKey claveDatos, PublicKey clavePubRSA) throws Exception {
+        Cipher cipherRSA = SelectorProveedores.cipher(TRANSFORMACION_RSA);
+        cipherRSA.init(Cipher.ENCRYPT_MODE, clavePubRSA, PARAMETROS_OAEP, FuenteAleatoria.obtener());
+        return cipherRSA.doFinal(claveDatos.getEncoded());
+    }
 
-        // 4. Descifrar el mensaje con AES-GCM
-        Cipher cipherAES = Cipher.getInstance(TRANSFORMACION_AES);
-        javax.crypto.spec.GCMParameterSpec paramGCM = new javax.crypto.spec.GCMParameterSpec(TAMANIO_TAG_GCM, iv);
-        cipherAES.init(Cipher.DECRYPT_MODE, claveAES, paramGCM);
-        byte[] mensajeOriginal = cipherAES.doFinal(mensajeCifBytes);
+    /**
+     * Descifra (desenvuelve) una clave de datos con la clave privada RSA.
+     *
+     * @param claveCifrada Clave cifrada con RSA-OAEP
+     * @param clavePrivRSA Clave privada RSA
+     * @return Clave AES recuperada
+     * @throws Exception si el descifrado falla
+     */
+    static SecretKey desenvolverClave(byte[] claveCifrada, PrivateKey clavePrivRSA) throws Exception {
+        Cipher cipherRSA = SelectorProveedores.cipher(TRANSFORMACION_RSA);
+        cipherRSA.init(Cipher.DECRYPT_MODE, clavePrivRSA, PARAMETROS_OAEP);
+        SecretKey claveDatos = new SecretKeySpec(cipherRSA.doFinal(claveCifrada), ALGORITMO_AES);
+        RegistroAuditoria.registrar(RegistroAuditoria.DESCIFRAR, "RSA-OAEP (clave de datos)");
+        return claveDatos;
+    }
 
-        return new String(mensajeOriginal, "UTF-8");
+    /**
+     * Genera una clave de datos AES-256 usando la fuente aleatoria del hilo actual.
+     *
+     * @return Clave AES nueva
+     * @throws Exception si AES no está disponible
+     */
+    static SecretKey generarClaveDatos() throws Exception {
+        KeyGenerator genAES = SelectorProveedores.keyGenerator(ALGORITMO_AES);
+        genAES.init(TAMANIO_CLAVE_AES, FuenteAleatoria.obtener());
+        return genAES.generateKey();
     }
 }
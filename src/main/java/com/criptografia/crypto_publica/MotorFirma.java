@@ -17,6 +17,9 @@ import java.util.Base64;
  * Soporta:
  * - SHA256withRSA: Firma digital con algoritmo RSA
  * - SHA256withECDSA: Firma digital con curvas elípticas (más eficiente)
+ * - ML-DSA: Firma poscuántica (JDK 24 o posterior; claves ML-DSA-44/65/87)
+ * - Firma híbrida: una firma clásica y una ML-DSA sobre el mismo mensaje;
+ *   solo es válida si lo son ambas
  * 
  * La firma digital proporciona:
  * - Autenticidad: confirma que el remitente es quien dice ser
@@ -28,6 +31,11 @@ public class MotorFirma {
     // Algoritmos de firma soportados
     public static final String FIRMA_RSA  = "SHA256withRSA";
     public static final String FIRMA_ECDSA = "SHA256withECDSA";
+    public static final String FIRMA_ML_DSA = "ML-DSA";
+
+    // Prefijo del mensaje firmado en modo híbrido: una firma extraída del par
+    // no verifica como firma suelta del mismo mensaje
+    private static final String PREFIJO_HIBRIDO = "CPFH";
 
     /**
      * Crea una firma digital para un mensaje dado.
@@ -39,15 +47,16 @@ public class MotorFirma {
      *
      * @param mensaje    Texto a firmar
      * @param clavePriv  Clave privada del remitente
-     * @param algoritmo  Algoritmo de firma (FIRMA_RSA o FIRMA_ECDSA)
+     * @param algoritmo  Algoritmo de firma (FIRMA_RSA, FIRMA_ECDSA o FIRMA_ML_DSA)
      * @return Firma digital codificada en Base64
      * @throws Exception si la firma falla
      */
     public static String firmar(String mensaje, PrivateKey clavePriv, String algoritmo) throws Exception {
-        Signature firma = Signature.getInstance(algoritmo);
+        Signature firma = SelectorProveedores.signature(algoritmo);
         firma.initSign(clavePriv);
         firma.update(mensaje.getBytes("UTF-8"));
         byte[] firmaBytes = firma.sign();
+        RegistroAuditoria.registrar(RegistroAuditoria.FIRMAR, algoritmo);
         return Base64.getEncoder().encodeToString(firmaBytes);
     }
 
@@ -67,13 +76,97 @@ public class MotorFirma {
      * @throws Exception si la verificación falla por error técnico
      */
     public static boolean verificar(String mensaje, String firmaBase64, PublicKey clavePub, String algoritmo) throws Exception {
-        Signature firma = Signature.getInstance(algoritmo);
+        Signature firma = SelectorProveedores.signature(algoritmo);
         firma.initVerify(clavePub);
         firma.update(mensaje.getBytes("UTF-8"));
         byte[] firmaBytes = Base64.getDecoder().decode(firmaBase64);
         return firma.verify(firmaBytes);
     }
 
+    /**
+     * Crea una firma híbrida: una firma clásica (RSA o ECDSA) y una ML-DSA del mismo mensaje.
+     *
+     * Formato (Base64): [Long. firma clásica (2)][Firma clásica][Long. firma ML-DSA (2)][Firma ML-DSA]
+     * Ambas firman PREFIJO_HIBRIDO + algoritmo clásico + mensaje.
+     *
+     * @param mensaje          Texto a firmar
+     * @param clavePrivClasica Clave privada RSA o EC del remitente
+     * @param algoritmoClasico FIRMA_RSA o FIRMA_ECDSA
+     * @param clavePrivMLDSA   Clave privada ML-DSA del remitente
+     * @return Firma híbrida codificada en Base64
+     * @throws Exception si alguna firma falla
+     */
+    public static String firmarHibrido(String mensaje, PrivateKey clavePrivClasica, String algoritmoClasico,
+                                       PrivateKey clavePrivMLDSA) throws Exception {
+        byte[] datos = mensajeHibrido(mensaje, algoritmoClasico);
+        byte[] clasica = firmarBytes(datos, clavePrivClasica, algoritmoClasico);
+        byte[] poscuantica = firmarBytes(datos, clavePrivMLDSA, FIRMA_ML_DSA);
+        RegistroAuditoria.registrar(RegistroAuditoria.FIRMAR, algoritmoClasico + "+" + FIRMA_ML_DSA);
+
+        java.nio.ByteBuffer salida = java.nio.ByteBuffer.allocate(4 + clasica.length + poscuantica.length);
+        salida.putShort((short) clasica.length).put(clasica);
+        salida.putShort((short) poscuantica.length).put(poscuantica);
+        return Base64.getEncoder().encodeToString(salida.array());
+    }
+
+    /**
+     * Verifica una firma híbrida: es válida solo si lo son la clásica y la ML-DSA.
+     *
+     * @param mensaje          Texto original
+     * @param firmaBase64      Firma híbrida en Base64
+     * @param clavePubClasica  Clave pública RSA o EC del remitente
+     * @param algoritmoClasico FIRMA_RSA o FIRMA_ECDSA
+     * @param clavePubMLDSA    Clave pública ML-DSA del remitente
+     * @return true si ambas firmas son válidas
+     * @throws Exception si la firma está mal formada o la verificación falla por error técnico
+     */
+    public static boolean verificarHibrido(String mensaje, String firmaBase64, PublicKey clavePubClasica,
+                                           String algoritmoClasico, PublicKey clavePubMLDSA) throws Exception {
+        java.nio.ByteBuffer entrada = java.nio.ByteBuffer.wrap(Base64.getDecoder().decode(firmaBase64));
+        byte[] clasica = leerFirma(entrada);
+        byte[] poscuantica = leerFirma(entrada);
+        if (entrada.hasRemaining()) {
+            throw new IllegalArgumentException("Firma híbrida mal formada");
+        }
+        byte[] datos = mensajeHibrido(mensaje, algoritmoClasico);
+        // Se verifican las dos siempre, sin cortocircuito
+        boolean validaClasica = verificarBytes(datos, clasica, clavePubClasica, algoritmoClasico);
+        boolean validaPoscuantica = verificarBytes(datos, poscuantica, clavePubMLDSA, FIRMA_ML_DSA);
+        return validaClasica & validaPoscuantica;
+    }
+
+    private static byte[] mensajeHibrido(String mensaje, String algoritmoClasico) throws Exception {
+        if (!algoritmoClasico.equals(FIRMA_RSA) && !algoritmoClasico.equals(FIRMA_ECDSA)) {
+            throw new IllegalArgumentException("Algoritmo clásico no soportado: " + algoritmoClasico);
+        }
+        return (PREFIJO_HIBRIDO + algoritmoClasico + "\n" + mensaje).getBytes("UTF-8");
+    }
+
+    private static byte[] firmarBytes(byte[] datos, PrivateKey clavePriv, String algoritmo) throws Exception {
+        Signature firma = SelectorProveedores.signature(algoritmo);
+        firma.initSign(clavePriv);
+        firma.update(datos);
+        return firma.sign();
+    }
+
+    private static boolean verificarBytes(byte[] datos, byte[] valorFirma, PublicKey clavePub, String algoritmo)
+            throws Exception {
+        Signature firma = SelectorProveedores.signature(algoritmo);
+        firma.initVerify(clavePub);
+        firma.update(datos);
+        return firma.verify(valorFirma);
+    }
+
+    private static byte[] leerFirma(java.nio.ByteBuffer entrada) {
+        int longitud = entrada.remaining() >= 2 ? entrada.getShort() & 0xFFFF : -1;
+        if (longitud < 0 || entrada.remaining() < longitud) {
+            throw new IllegalArgumentException("Firma híbrida mal formada");
+        }
+        byte[] valor = new byte[longitud];
+        entrada.get(valor);
+        return valor;
+    }
+
     /**
      * Calcula el hash SHA-256 de un mensaje para mostrar en la interfaz.
      * Útil para visualizar la integridad del mensaje antes y después de modificaciones.
@@ -83,7 +176,7 @@ public class MotorFirma {
      * @throws Exception si el cálculo falla
      */
     public static String calcularHash(String mensaje) throws Exception {
-        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        MessageDigest digest = SelectorProveedores.messageDigest("SHA-256");
         byte[] hashBytes = digest.digest(mensaje.getBytes("UTF-8"));
 
         // Convertir bytes a hexadecimal
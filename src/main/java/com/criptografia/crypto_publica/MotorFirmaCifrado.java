@@ -0,0 +1,306 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.Base64;
+
+/**
+ * Firma y cifrado en una sola pasada (firmar-y-cifrar / descifrar-y-verificar).
+ *
+ * En lugar de llamar a MotorFirma.firmar y luego a MotorCifrado.cifrarHibrido
+ * (dos codificaciones UTF-8 y dos recorridos completos del mensaje), cada bloque
+ * leído de la entrada alimenta a la vez la firma y el cifrado AEAD mientras
+ * todavía está en caché. La firma se añade al final del texto plano, de modo
+ * que también queda cifrada:
+ *
+ * Texto plano sellado: [Mensaje] + [Firma] + [Longitud de la firma (2 bytes)]
+ *
+ * Formato binario (flujos):
+ * [Long. cabecera (2)][Cabecera][Long. clave (2)][Clave AES cifrada con RSA][IV (12)][Datos cifrados]
+ *
+ * Formato de texto: el mismo que MotorCifrado.cifrarHibrido, con el campo
+ * ETIQUETA_FIRMA de la cabecera indicando el algoritmo de la firma incrustada.
+ */
+public class MotorFirmaCifrado {
+
+    // Tamaño del bloque procesado en cada paso
+    private static final int TAMANIO_BLOQUE = 64 * 1024;
+
+    // Bytes que ocupa la longitud de la firma al final del texto plano
+    private static final int TAMANIO_LONGITUD_FIRMA = 2;
+
+    // =========================================================================
+    //                          API DE TEXTO
+    // =========================================================================
+
+    /**
+     * Firma el mensaje y lo cifra en modo híbrido en una sola pasada.
+     *
+     * @param mensaje        Texto a firmar y cifrar
+     * @param clavePrivFirma Clave privada del remitente
+     * @param algoritmoFirma Algoritmo de firma (MotorFirma.FIRMA_RSA o FIRMA_ECDSA)
+     * @param clavePubRSA    Clave pública RSA del destinatario
+     * @return Sobre firmado en formato de texto híbrido
+     * @throws Exception si la firma o el cifrado fallan
+     */
+    public static String firmarYCifrar(String mensaje, PrivateKey clavePrivFirma, String algoritmoFirma,
+                                       PublicKey clavePubRSA) throws Exception {
+        byte[] datos = mensaje.getBytes(StandardCharsets.UTF_8);
+        Sesion sesion = new Sesion(clavePrivFirma, algoritmoFirma, clavePubRSA);
+
+        BufferSalida cifrado = new BufferSalida(GeneradorNonce.TAMANIO_NONCE + datos.length + 1024);
+        cifrado.write(sesion.iv);
+        sesion.sellar(new ByteArrayInputStream(datos), cifrado);
+
+        Base64.Encoder b64 = Base64.getEncoder();
+        return b64.encodeToString(sesion.cabecera) + MotorCifrado.SEPARADOR_HIBRIDO
+                + b64.encodeToString(sesion.claveCifrada) + MotorCifrado.SEPARADOR_HIBRIDO
+                + cifrado.aBase64();
+    }
+
+    /**
+     * Descifra un sobre firmado y verifica la firma incrustada.
+     *
+     * @param sobre          Sobre producido por firmarYCifrar
+     * @param clavePrivRSA   Clave privada RSA del destinatario
+     * @param clavePubFirma  Clave pública del remitente
+     * @param algoritmoFirma Algoritmo de firma esperado
+     * @return Mensaje original (solo si la firma es válida)
+     * @throws SignatureException si la firma no es válida
+     * @throws Exception si el descifrado falla o el formato es inválido
+     */
+    public static String descifrarYVerificar(String sobre, PrivateKey clavePrivRSA, PublicKey clavePubFirma,
+                                             String algoritmoFirma) throws Exception {
+        // Estructura y límites antes de cualquier operación con la clave privada
+        ValidadorSobre.Sobre partes = ValidadorSobre.paraClave(clavePrivRSA).validar(sobre);
+        if (partes.getCabecera() == null) {
+            throw new IllegalArgumentException("El mensaje no es un sobre firmado");
+        }
+        byte[] cabecera     = partes.getCabecera();
+        byte[] claveCifrada = partes.getClaveCifrada();
+        byte[] ivMasDatos   = partes.getContenido();
+
+        BufferSalida salida = new BufferSalida(ivMasDatos.length);
+        abrir(cabecera, claveCifrada, ivMasDatos, clavePrivRSA, clavePubFirma, algoritmoFirma)
+                .abrir(new ByteArrayInputStream(ivMasDatos, GeneradorNonce.TAMANIO_NONCE,
+                        ivMasDatos.length - GeneradorNonce.TAMANIO_NONCE), salida);
+        return new String(salida.buffer(), 0, salida.size(), StandardCharsets.UTF_8);
+    }
+
+    // =========================================================================
+    //                          API DE FLUJOS
+    // =========================================================================
+
+    /**
+     * Firma y cifra todo el contenido de un flujo, escribiendo un sobre binario.
+     *
+     * @param entrada        Flujo con el mensaje (se lee una única vez)
+     * @param salida         Flujo donde se escribe el sobre
+     * @param clavePrivFirma Clave privada del remitente
+     * @param algoritmoFirma Algoritmo de firma
+     * @param clavePubRSA    Clave pública RSA del destinatario
+     * @throws Exception si la firma, el cifrado o la E/S fallan
+     */
+    public static void firmarYCifrar(InputStream entrada, OutputStream salida, PrivateKey clavePrivFirma,
+                                     String algoritmoFirma, PublicKey clavePubRSA) throws Exception {
+        Sesion sesion = new Sesion(clavePrivFirma, algoritmoFirma, clavePubRSA);
+
+        DataOutputStream out = new DataOutputStream(salida);
+        out.writeShort(sesion.cabecera.length);
+        out.write(sesion.cabecera);
+        out.writeShort(sesion.claveCifrada.length);
+        out.write(sesion.claveCifrada);
+        out.write(sesion.iv);
+        sesion.sellar(entrada, out);
+        out.flush();
+    }
+
+    /**
+     * Descifra un sobre binario y verifica su firma. El mensaje se escribe en
+     * la salida únicamente después de comprobar la firma.
+     *
+     * @param entrada        Flujo con el sobre binario
+     * @param salida         Flujo donde se escribe el mensaje original
+     * @param clavePrivRSA   Clave privada RSA del destinatario
+     * @param clavePubFirma  Clave pública del remitente
+     * @param algoritmoFirma Algoritmo de firma esperado
+     * @throws SignatureException si la firma no es válida
+     * @throws Exception si el descifrado, el formato o la E/S fallan
+     */
+    public static void descifrarYVerificar(InputStream entrada, OutputStream salida, PrivateKey clavePrivRSA,
+                                           PublicKey clavePubFirma, String algoritmoFirma) throws Exception {
+        DataInputStream in = new DataInputStream(entrada);
+        byte[] cabecera = new byte[in.readUnsignedShort()];
+        in.readFully(cabecera);
+        byte[] claveCifrada = new byte[in.readUnsignedShort()];
+        in.readFully(claveCifrada);
+        byte[] iv = new byte[GeneradorNonce.TAMANIO_NONCE];
+        in.readFully(iv);
+
+        abrir(cabecera, claveCifrada, iv, clavePrivRSA, clavePubFirma, algoritmoFirma).abrir(in, salida);
+        salida.flush();
+    }
+
+    // =========================================================================
+    //                          IMPLEMENTACIÓN
+    // =========================================================================
+
+    private static Apertura abrir(byte[] cabecera, byte[] claveCifrada, byte[] iv, PrivateKey clavePrivRSA,
+                                  PublicKey clavePubFirma, String algoritmoFirma) throws Exception {
+        CabeceraSobre datosCabecera = CabeceraSobre.decodificar(cabecera);
+        if (datosCabecera.getAlgoritmoFirma() == null) {
+            throw new IllegalArgumentException("El mensaje no es un sobre firmado");
+        }
+        if (!datosCabecera.getAlgoritmoFirma().equals(algoritmoFirma)) {
+            throw new IllegalArgumentException("Algoritmo de firma inesperado: " + datosCabecera.getAlgoritmoFirma());
+        }
+        if (datosCabecera.getCodecCompresion() != 0) {
+            throw new IllegalArgumentException("Los sobres firmados no admiten compresión");
+        }
+
+        SecretKey claveAES = EnvolvedorClave.desenvolver(claveCifrada, clavePrivRSA);
+        byte[] nonce = new byte[GeneradorNonce.TAMANIO_NONCE];
+        System.arraycopy(iv, 0, nonce, 0, nonce.length);
+        Cipher cipherAES = datosCabecera.getCifrado().iniciar(Cipher.DECRYPT_MODE, claveAES, nonce);
+        cipherAES.updateAAD(cabecera);
+
+        Signature firma = SelectorProveedores.signature(algoritmoFirma);
+        firma.initVerify(clavePubFirma);
+        return new Apertura(cipherAES, firma);
+    }
+
+    /**
+     * Estado del lado emisor: clave de datos, nonce, cabecera y motores de firma y cifrado.
+     */
+    private static class Sesion {
+        final byte[] cabecera;
+        final byte[] claveCifrada;
+        final byte[] iv;
+        final Cipher cipherAES;
+        final Signature firma;
+
+        Sesion(PrivateKey clavePrivFirma, String algoritmoFirma, PublicKey clavePubRSA) throws Exception {
+            CabeceraSobre datosCabecera = new CabeceraSobre(GeneradorClaves.calcularHuella(clavePubRSA));
+            datosCabecera.setAlgoritmoFirma(algoritmoFirma);
+            datosCabecera.setCifrado(CifradoDatos.preferido());
+            cabecera = datosCabecera.codificar();
+
+            SecretKey claveAES = MotorCifrado.generarClaveDatos();
+            iv = new GeneradorNonce().siguiente();
+            cipherAES = datosCabecera.getCifrado().iniciar(Cipher.ENCRYPT_MODE, claveAES, iv);
+            cipherAES.updateAAD(cabecera);
+            claveCifrada = EnvolvedorClave.envolver(claveAES, clavePubRSA);
+
+            firma = SelectorProveedores.signature(algoritmoFirma);
+            firma.initSign(clavePrivFirma, FuenteAleatoria.obtener());
+            RegistroAuditoria.registrar(RegistroAuditoria.FIRMAR, algoritmoFirma + " (firmar y cifrar)");
+        }
+
+        /**
+         * Lee la entrada una sola vez: cada bloque alimenta la firma y el cifrado.
+         * Al final cifra la firma y su longitud, y cierra el cifrado con el tag GCM.
+         */
+        void sellar(InputStream entrada, OutputStream salida) throws Exception {
+            byte[] bloque = new byte[TAMANIO_BLOQUE];
+            int leidos;
+            while ((leidos = entrada.read(bloque)) != -1) {
+                firma.update(bloque, 0, leidos);
+                escribir(salida, cipherAES.update(bloque, 0, leidos));
+            }
+
+            byte[] firmaBytes = firma.sign();
+            escribir(salida, cipherAES.update(firmaBytes));
+            escribir(salida, cipherAES.doFinal(new byte[]{
+                    (byte) (firmaBytes.length >>> 8), (byte) firmaBytes.length}));
+        }
+    }
+
+    /**
+     * Estado del lado receptor: descifra todo, separa la firma y la verifica
+     * sobre el mismo buffer antes de entregar el mensaje.
+     */
+    private static class Apertura {
+        final Cipher cipherAES;
+        final Signature firma;
+
+        Apertura(Cipher cipherAES, Signature firma) {
+            this.cipherAES = cipherAES;
+            this.firma     = firma;
+        }
+
+        void abrir(InputStream entrada, OutputStream salida) throws Exception {
+            // GCM no entrega texto plano hasta verificar el tag: se acumula en un único buffer
+            BufferSalida plano = new BufferSalida(TAMANIO_BLOQUE);
+            byte[] bloque = new byte[TAMANIO_BLOQUE];
+            int leidos;
+            while ((leidos = entrada.read(bloque)) != -1) {
+                escribir(plano, cipherAES.update(bloque, 0, leidos));
+            }
+            escribir(plano, cipherAES.doFinal());
+
+            byte[] datos = plano.buffer();
+            int total = plano.size();
+            if (total < TAMANIO_LONGITUD_FIRMA) {
+                throw new IllegalArgumentException("Sobre firmado truncado");
+            }
+            int longitudFirma = ((datos[total - 2] & 0xFF) << 8) | (datos[total - 1] & 0xFF);
+            int longitudMensaje = total - TAMANIO_LONGITUD_FIRMA - longitudFirma;
+            if (longitudMensaje < 0) {
+                throw new IllegalArgumentException("Sobre firmado truncado");
+            }
+
+            firma.update(datos, 0, longitudMensaje);
+            byte[] firmaBytes = new byte[longitudFirma];
+            System.arraycopy(datos, longitudMensaje, firmaBytes, 0, longitudFirma);
+            if (!firma.verify(firmaBytes)) {
+                throw new SignatureException("Firma inválida: el mensaje fue modificado o el remitente no coincide");
+            }
+            salida.write(datos, 0, longitudMensaje);
+        }
+    }
+
+    private static void escribir(OutputStream salida, byte[] datos) throws IOException {
+        if (datos != null && datos.length > 0) {
+            salida.write(datos);
+        }
+    }
+
+    /**
+     * ByteArrayOutputStream que expone su buffer interno para evitar copias.
+     */
+    private static class BufferSalida extends ByteArrayOutputStream {
+        BufferSalida(int capacidad) {
+            super(capacidad);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        String aBase64() {
+            ByteBuffer codificado = Base64.getEncoder().encode(ByteBuffer.wrap(buf, 0, count));
+            return StandardCharsets.ISO_8859_1.decode(codificado).toString();
+        }
+    }
+}
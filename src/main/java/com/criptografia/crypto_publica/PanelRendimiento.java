@@ -0,0 +1,322 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.swing.*;
+import javax.swing.border.TitledBorder;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Pestaña de rendimiento: ejecuta BancoRendimiento en segundo plano y muestra
+ * operaciones por segundo y latencias de cada opción de la interfaz en esta máquina.
+ */
+public class PanelRendimiento extends JPanel {
+
+    // Duraciones disponibles: {calentamiento, medición} en milisegundos
+    private static final String[] DURACIONES = {"Rápida (0.5 s por prueba)", "Normal (1 s por prueba)", "Precisa (3 s por prueba)"};
+    private static final long[][] TIEMPOS = {{200, 500}, {300, 1000}, {1000, 3000}};
+
+    private static final String[] COLUMNAS = {"Configuración", "Operación", "ops/s", "p50 (ms)", "p90 (ms)", "p99 (ms)", "máx (ms)"};
+
+    private final List<BancoRendimiento.Medicion> mediciones = new ArrayList<>();
+    private final DefaultTableModel modeloTabla;
+    private final GraficoMediciones grafico = new GraficoMediciones();
+    private final JComboBox<String> comboDuracion;
+    private final JComboBox<String> comboGrafico;
+    private final JButton btnEjecutar;
+    private final JButton btnDetener;
+    private final JButton btnExportar;
+    private final JProgressBar barraProgreso;
+    private final JLabel lblEstado;
+    private SwingWorker<Void, BancoRendimiento.Medicion> trabajo;
+
+    public PanelRendimiento() {
+        super(new BorderLayout(10, 10));
+        setBorder(BorderFactory.createEmptyBorder(15, 15, 15, 15));
+
+        // ---- Panel superior: controles ----
+        JPanel panelControles = new JPanel(new FlowLayout(FlowLayout.LEFT, 15, 8));
+        panelControles.setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createEtchedBorder(),
+                "Medición en esta máquina",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("SansSerif", Font.BOLD, 12)));
+
+        panelControles.add(new JLabel("Duración:"));
+        comboDuracion = new JComboBox<>(DURACIONES);
+        comboDuracion.setSelectedIndex(1);
+        comboDuracion.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        panelControles.add(comboDuracion);
+
+        btnEjecutar = new JButton("▶ Ejecutar");
+        btnEjecutar.setFont(new Font("SansSerif", Font.BOLD, 12));
+        btnEjecutar.setFocusPainted(false);
+        btnEjecutar.addActionListener(e -> ejecutar());
+        panelControles.add(btnEjecutar);
+
+        btnDetener = new JButton("⏹ Detener");
+        btnDetener.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        btnDetener.setEnabled(false);
+        btnDetener.addActionListener(e -> trabajo.cancel(true));
+        panelControles.add(btnDetener);
+
+        btnExportar = new JButton("💾 Exportar CSV");
+        btnExportar.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        btnExportar.setEnabled(false);
+        btnExportar.addActionListener(e -> exportarCsv());
+        panelControles.add(btnExportar);
+
+        barraProgreso = new JProgressBar();
+        barraProgreso.setStringPainted(true);
+        barraProgreso.setString("");
+        panelControles.add(barraProgreso);
+
+        lblEstado = new JLabel("Mensajes de " + BancoRendimiento.TAMANIO_MENSAJE + " bytes. RSA 4096 tarda más en generar claves.");
+        lblEstado.setFont(new Font("SansSerif", Font.ITALIC, 11));
+        lblEstado.setForeground(new Color(100, 100, 100));
+        panelControles.add(lblEstado);
+
+        add(panelControles, BorderLayout.NORTH);
+
+        // ---- Panel central: tabla y gráfico ----
+        modeloTabla = new DefaultTableModel(COLUMNAS, 0) {
+            @Override
+            public boolean isCellEditable(int fila, int columna) {
+                return false;
+            }
+        };
+        JTable tabla = new JTable(modeloTabla);
+        tabla.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        tabla.setFillsViewportHeight(true);
+
+        JPanel panelGrafico = new JPanel(new BorderLayout(0, 5));
+        panelGrafico.setBorder(BorderFactory.createTitledBorder(
+                BorderFactory.createEtchedBorder(),
+                "Gráfico (escala logarítmica)",
+                TitledBorder.LEFT,
+                TitledBorder.TOP,
+                new Font("SansSerif", Font.BOLD, 12)));
+        comboGrafico = new JComboBox<>(new String[]{"Operaciones por segundo", "Latencia p50 / p99 (ms)"});
+        comboGrafico.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        comboGrafico.addActionListener(e -> grafico.repaint());
+        JPanel panelSelector = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        panelSelector.add(new JLabel("Mostrar:"));
+        panelSelector.add(comboGrafico);
+        panelGrafico.add(panelSelector, BorderLayout.NORTH);
+        panelGrafico.add(new JScrollPane(grafico), BorderLayout.CENTER);
+
+        JSplitPane division = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(tabla), panelGrafico);
+        division.setResizeWeight(0.4);
+        add(division, BorderLayout.CENTER);
+    }
+
+    // =========================================================================
+    //                              ACCIONES
+    // =========================================================================
+
+    private void ejecutar() {
+        long[] tiempos = TIEMPOS[comboDuracion.getSelectedIndex()];
+        mediciones.clear();
+        modeloTabla.setRowCount(0);
+        grafico.actualizar();
+        btnEjecutar.setEnabled(false);
+        btnExportar.setEnabled(false);
+        btnDetener.setEnabled(true);
+        barraProgreso.setValue(0);
+        lblEstado.setText("Midiendo... (la interfaz sigue disponible)");
+
+        trabajo = new SwingWorker<Void, BancoRendimiento.Medicion>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                try {
+                    BancoRendimiento.ejecutar(tiempos[0], tiempos[1], (medicion, completadas, total) -> {
+                        publish(medicion);
+                        setProgress(completadas * 100 / total);
+                    });
+                    return null;
+                } finally {
+                    // done() llega en cuanto se cancela; solo aquí el hilo ha terminado de verdad
+                    SwingUtilities.invokeLater(() -> trabajoTerminado(this));
+                }
+            }
+
+            @Override
+            protected void process(List<BancoRendimiento.Medicion> nuevas) {
+                if (trabajo != this) {
+                    return; // mediciones tardías de una ejecución anterior
+                }
+                for (BancoRendimiento.Medicion m : nuevas) {
+                    agregarFila(m);
+                }
+                barraProgreso.setValue(getProgress());
+                barraProgreso.setString(mediciones.size() + " pruebas");
+            }
+
+            @Override
+            protected void done() {
+                btnDetener.setEnabled(false);
+                try {
+                    get();
+                    barraProgreso.setValue(100);
+                    lblEstado.setText("✓ Medición completada");
+                } catch (CancellationException ex) {
+                    lblEstado.setText("Deteniendo: esperando a que acabe la prueba en curso...");
+                } catch (Exception ex) {
+                    Throwable causa = ex.getCause() != null ? ex.getCause() : ex;
+                    lblEstado.setText("✗ Error: " + causa.getMessage());
+                }
+            }
+        };
+        trabajo.execute();
+    }
+
+    /**
+     * Reactiva los controles cuando el hilo de fondo ha salido, no al cancelarlo:
+     * así una ejecución nueva nunca se solapa con la anterior.
+     */
+    private void trabajoTerminado(SwingWorker<?, ?> terminado) {
+        if (terminado != trabajo) {
+            return;
+        }
+        btnEjecutar.setEnabled(true);
+        btnExportar.setEnabled(!mediciones.isEmpty());
+        if (terminado.isCancelled()) {
+            lblEstado.setText("Medición detenida: resultados parciales");
+        }
+    }
+
+    private void agregarFila(BancoRendimiento.Medicion m) {
+        mediciones.add(m);
+        RegistroLatencias l = m.getLatencias();
+        modeloTabla.addRow(new Object[]{
+                m.getConfiguracion(),
+                m.getOperacion(),
+                String.format(Locale.ROOT, "%.1f", m.getOpsPorSegundo()),
+                String.format(Locale.ROOT, "%.3f", RegistroLatencias.ms(l.percentil(50))),
+                String.format(Locale.ROOT, "%.3f", RegistroLatencias.ms(l.percentil(90))),
+                String.format(Locale.ROOT, "%.3f", RegistroLatencias.ms(l.percentil(99))),
+                String.format(Locale.ROOT, "%.3f", RegistroLatencias.ms(l.maximo()))
+        });
+        grafico.actualizar();
+    }
+
+    private void exportarCsv() {
+        JFileChooser selector = new JFileChooser();
+        selector.setSelectedFile(new File("rendimiento.csv"));
+        if (selector.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        try {
+            Files.write(selector.getSelectedFile().toPath(),
+                    BancoRendimiento.aCsv(mediciones).getBytes(StandardCharsets.UTF_8));
+            lblEstado.setText("✓ CSV guardado en " + selector.getSelectedFile().getName());
+        } catch (Exception ex) {
+            JOptionPane.showMessageDialog(this, "No se pudo guardar el CSV: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // =========================================================================
+    //                              GRÁFICO
+    // =========================================================================
+
+    /**
+     * Barras horizontales en escala logarítmica: las operaciones van de unas pocas por
+     * segundo (generar RSA 4096) a decenas de miles (verificar RSA), así que una escala
+     * lineal dejaría la mayoría de las barras invisibles.
+     */
+    private class GraficoMediciones extends JComponent {
+        private static final int ALTO_FILA = 22;
+        private static final int ANCHO_ETIQUETA = 260;
+        private final Color colorOps = new Color(46, 125, 50);
+        private final Color colorP50 = new Color(30, 90, 160);
+        private final Color colorP99 = new Color(180, 60, 60);
+
+        void actualizar() {
+            revalidate();
+            repaint();
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            return new Dimension(600, Math.max(100, mediciones.size() * ALTO_FILA + 30));
+        }
+
+        @Override
+        protected void paintComponent(Graphics g) {
+            Graphics2D g2 = (Graphics2D) g.create();
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2.setColor(Color.WHITE);
+            g2.fillRect(0, 0, getWidth(), getHeight());
+            g2.setFont(new Font("SansSerif", Font.PLAIN, 11));
+            if (mediciones.isEmpty()) {
+                g2.setColor(Color.GRAY);
+                g2.drawString("Pulse \"Ejecutar\" para medir", 15, 25);
+                g2.dispose();
+                return;
+            }
+
+            boolean latencia = comboGrafico.getSelectedIndex() == 1;
+            double maximo = 1;
+            for (BancoRendimiento.Medicion m : mediciones) {
+                maximo = Math.max(maximo, latencia ? RegistroLatencias.ms(m.getLatencias().percentil(99)) : m.getOpsPorSegundo());
+            }
+            // Escala desde 0.01 (latencias) o 1 (ops/s) hasta el máximo redondeado a potencia de 10
+            double minimoLog = latencia ? -2 : 0;
+            double maximoLog = Math.max(minimoLog + 1, Math.ceil(Math.log10(maximo)));
+            int anchoBarras = Math.max(50, getWidth() - ANCHO_ETIQUETA - 90);
+
+            int y = 10;
+            for (BancoRendimiento.Medicion m : mediciones) {
+                g2.setColor(Color.DARK_GRAY);
+                g2.drawString(m.getConfiguracion() + " · " + m.getOperacion(), 10, y + 14);
+                if (latencia) {
+                    double p50 = RegistroLatencias.ms(m.getLatencias().percentil(50));
+                    double p99 = RegistroLatencias.ms(m.getLatencias().percentil(99));
+                    int ancho99 = escalar(p99, minimoLog, maximoLog, anchoBarras);
+                    int ancho50 = escalar(p50, minimoLog, maximoLog, anchoBarras);
+                    g2.setColor(colorP99);
+                    g2.fillRect(ANCHO_ETIQUETA, y + 3, ancho99, ALTO_FILA - 6);
+                    g2.setColor(colorP50);
+                    g2.fillRect(ANCHO_ETIQUETA, y + 3, ancho50, ALTO_FILA - 6);
+                    g2.setColor(Color.DARK_GRAY);
+                    g2.drawString(String.format(Locale.ROOT, "%.2f / %.2f", p50, p99), ANCHO_ETIQUETA + ancho99 + 5, y + 14);
+                } else {
+                    int ancho = escalar(m.getOpsPorSegundo(), minimoLog, maximoLog, anchoBarras);
+                    g2.setColor(colorOps);
+                    g2.fillRect(ANCHO_ETIQUETA, y + 3, ancho, ALTO_FILA - 6);
+                    g2.setColor(Color.DARK_GRAY);
+                    g2.drawString(String.format(Locale.ROOT, "%.1f", m.getOpsPorSegundo()), ANCHO_ETIQUETA + ancho + 5, y + 14);
+                }
+                y += ALTO_FILA;
+            }
+            if (latencia) {
+                g2.setColor(colorP50);
+                g2.drawString("■ p50", ANCHO_ETIQUETA, y + 14);
+                g2.setColor(colorP99);
+                g2.drawString("■ p99", ANCHO_ETIQUETA + 50, y + 14);
+            }
+            g2.dispose();
+        }
+
+        private int escalar(double valor, double minimoLog, double maximoLog, int ancho) {
+            double log = Math.log10(Math.max(valor, Math.pow(10, minimoLog)));
+            return (int) Math.round((log - minimoLog) / (maximoLog - minimoLog) * ancho);
+        }
+    }
+}
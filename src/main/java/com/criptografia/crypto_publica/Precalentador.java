@@ -0,0 +1,112 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.security.KeyPair;
+import java.security.Security;
+
+/**
+ * Precalentamiento de proveedores JCA y rutas criptográficas frecuentes.
+ *
+ * La primera operación criptográfica paga la carga de los proveedores, la carga
+ * de clases y la ejecución en modo intérprete. Al lanzar este trabajo en un hilo
+ * de fondo mientras aparece la ventana, ese coste queda oculto al usuario.
+ *
+ * También se usa como "ejecución de entrenamiento" para generar la caché AOT
+ * del JDK (perfil Maven "aot").
+ */
+public class Precalentador {
+
+    // Iteraciones suficientes para que el JIT compile las rutas calientes (nivel C1)
+    private static final int ITERACIONES = 200;
+
+    private static volatile Thread hilo;
+
+    /**
+     * Lanza el precalentamiento en un hilo de fondo de baja prioridad (una sola vez).
+     */
+    public static synchronized void iniciarEnSegundoPlano() {
+        if (hilo != null) {
+            return;
+        }
+        hilo = new Thread(() -> {
+            try {
+                ejecutar();
+            } catch (Exception ex) {
+                // El precalentamiento es opcional: un fallo aquí no debe afectar a la aplicación
+                System.err.println("Precalentamiento incompleto: " + ex.getMessage());
+            }
+        }, "precalentador");
+        hilo.setDaemon(true);
+        hilo.setPriority(Thread.MIN_PRIORITY);
+        hilo.start();
+    }
+
+    /**
+     * Ejecuta el precalentamiento en el hilo actual.
+     *
+     * @throws Exception si alguna operación falla
+     */
+    public static void ejecutar() throws Exception {
+        // Las operaciones de precalentamiento no son del usuario: no se auditan
+        RegistroAuditoria.sinAuditoria(Precalentador::precalentar);
+    }
+
+    /**
+     * Aplica la selección automática de proveedores y de cifrado de datos cuando está
+     * activada por propiedad (-Dcrypto.proveedores=auto, -Dcrypto.cifrado=auto). La
+     * interfaz la aplica al precalentar y la línea de comandos antes de cada orden.
+     *
+     * @return true si se midió y eligió algo
+     * @throws Exception si alguna medición falla
+     */
+    public static boolean aplicarSeleccionAutomatica() throws Exception {
+        boolean aplicada = false;
+        if (SelectorProveedores.autoActivado()) {
+            SelectorProveedores.autoseleccionar();
+            aplicada = true;
+        }
+        if (CifradoDatos.autoActivado()) {
+            // Después de elegir proveedores, para medir cada cifrado con el que se usará
+            CifradoDatos.autoseleccionar();
+            aplicada = true;
+        }
+        return aplicada;
+    }
+
+    private static void precalentar() throws Exception {
+        // 1. Cargar todos los proveedores instalados
+        Security.getProviders();
+        FuenteAleatoria.obtener().nextInt();
+        // La elección se consulta con "proveedores"; aquí no se escribe nada en la consola
+        aplicarSeleccionAutomatica();
+
+        // 2. Ejercitar las rutas de EC (rápidas) y RSA con las claves por defecto de la interfaz
+        KeyPair parEC  = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_EC, 256);
+        KeyPair parRSA = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_RSA, 2048);
+        GeneradorClaves.clavePubABase64(parRSA.getPublic());
+        GeneradorClaves.clavePrivABase64(parRSA.getPrivate());
+
+        String mensaje = "Mensaje de precalentamiento";
+        for (int i = 0; i < ITERACIONES; i++) {
+            String firmaEC = MotorFirma.firmar(mensaje, parEC.getPrivate(), MotorFirma.FIRMA_ECDSA);
+            MotorFirma.verificar(mensaje, firmaEC, parEC.getPublic(), MotorFirma.FIRMA_ECDSA);
+            MotorFirma.calcularHash(mensaje);
+        }
+        // Las operaciones RSA privadas son caras: menos iteraciones
+        for (int i = 0; i < ITERACIONES / 10; i++) {
+            String hibrido = MotorCifrado.cifrarHibrido(mensaje, parRSA.getPublic());
+            MotorCifrado.descifrarHibrido(hibrido, parRSA.getPrivate());
+            String directo = MotorCifrado.cifrarRSA(mensaje, parRSA.getPublic());
+            MotorCifrado.descifrarRSA(directo, parRSA.getPrivate());
+            String firmaRSA = MotorFirma.firmar(mensaje, parRSA.getPrivate(), MotorFirma.FIRMA_RSA);
+            MotorFirma.verificar(mensaje, firmaRSA, parRSA.getPublic(), MotorFirma.FIRMA_RSA);
+        }
+    }
+}
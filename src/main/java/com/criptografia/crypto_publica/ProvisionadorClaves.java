@@ -0,0 +1,140 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Aprovisionamiento masivo de pares de claves usando todos los núcleos.
+ *
+ * Cada hilo trabajador:
+ * 1. Crea un único KeyPairGenerator (no se comparte entre hilos)
+ * 2. Toma el siguiente índice libre de un contador atómico
+ * 3. Genera el par y lo entrega de inmediato al destino (no se acumulan en memoria)
+ * 4. Registra la latencia de la generación
+ *
+ * La búsqueda de primos de RSA tiene una varianza muy alta, por eso el
+ * resultado informa percentiles de latencia además del rendimiento medio.
+ */
+public class ProvisionadorClaves {
+
+    /**
+     * Resultado de un aprovisionamiento.
+     */
+    public static class Resultado {
+        private final String algoritmo;
+        private final int tamanio;
+        private final long pares;
+        private final long duracionNanos;
+        private final RegistroLatencias latencias;
+
+        Resultado(String algoritmo, int tamanio, long pares, long duracionNanos, RegistroLatencias latencias) {
+            this.algoritmo     = algoritmo;
+            this.tamanio       = tamanio;
+            this.pares         = pares;
+            this.duracionNanos = duracionNanos;
+            this.latencias     = latencias;
+        }
+
+        public long getPares() {
+            return pares;
+        }
+
+        public long getDuracionNanos() {
+            return duracionNanos;
+        }
+
+        public double getParesPorSegundo() {
+            return duracionNanos == 0 ? 0 : pares * 1_000_000_000.0 / duracionNanos;
+        }
+
+        /**
+         * @return Latencias de generación por par (solo la generación, sin el almacenamiento)
+         */
+        public RegistroLatencias getLatencias() {
+            return latencias;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s-%d: %d pares en %.2f s (%.1f pares/s)%n  latencia: %s",
+                    algoritmo, tamanio, pares, duracionNanos / 1e9, getParesPorSegundo(), latencias.resumen());
+        }
+    }
+
+    /**
+     * Genera N pares de claves en paralelo y los entrega al destino a medida que se producen.
+     *
+     * @param algoritmo Tipo de algoritmo ("RSA", "EC", "ML-KEM" o "ML-DSA")
+     * @param tamanio   Tamaño de la clave en bits
+     * @param cantidad  Número de pares a generar
+     * @param hilos     Número de hilos trabajadores (0 = todos los núcleos)
+     * @param destino   Destino de almacenamiento
+     * @return Resultado con rendimiento y latencias
+     * @throws Exception el primer error ocurrido en cualquier trabajador
+     */
+    public static Resultado provisionar(String algoritmo, int tamanio, long cantidad, int hilos,
+                                        DestinoClaves destino) throws Exception {
+        if (cantidad < 0) {
+            throw new IllegalArgumentException("La cantidad de pares no puede ser negativa");
+        }
+        int numHilos = hilos > 0 ? hilos : Runtime.getRuntime().availableProcessors();
+
+        // Validar algoritmo y tamaño antes de lanzar los hilos
+        GeneradorClaves.crearGenerador(algoritmo, tamanio);
+
+        AtomicLong siguiente = new AtomicLong();
+        AtomicReference<Exception> error = new AtomicReference<>();
+        RegistroLatencias[] registros = new RegistroLatencias[numHilos];
+        List<Thread> trabajadores = new ArrayList<>(numHilos);
+
+        long inicio = System.nanoTime();
+        for (int h = 0; h < numHilos; h++) {
+            RegistroLatencias registro = new RegistroLatencias();
+            registros[h] = registro;
+            Thread t = new Thread(() -> {
+                try {
+                    KeyPairGenerator generador = GeneradorClaves.crearGenerador(algoritmo, tamanio);
+                    long indice;
+                    while (error.get() == null && (indice = siguiente.getAndIncrement()) < cantidad) {
+                        long t0 = System.nanoTime();
+                        KeyPair par = generador.generateKeyPair();
+                        registro.registrar(System.nanoTime() - t0);
+                        destino.guardar(indice, par);
+                    }
+                } catch (Exception ex) {
+                    error.compareAndSet(null, ex);
+                }
+            }, "provisionador-" + h);
+            trabajadores.add(t);
+            t.start();
+        }
+        for (Thread t : trabajadores) {
+            t.join();
+        }
+        long duracion = System.nanoTime() - inicio;
+
+        if (error.get() != null) {
+            throw error.get();
+        }
+
+        RegistroLatencias total = new RegistroLatencias();
+        for (RegistroLatencias r : registros) {
+            total.combinar(r);
+        }
+        RegistroAuditoria.registrar(RegistroAuditoria.GENERAR_CLAVES,
+                algoritmo + "-" + tamanio + " x" + total.getCantidad() + " (aprovisionamiento)");
+        return new Resultado(algoritmo, tamanio, total.getCantidad(), duracion, total);
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generador de carga concurrente para los motores criptográficos.
+ *
+ * N clientes (hilos de plataforma o virtuales) ejecutan una mezcla configurable
+ * de cifrar, descifrar, firmar y verificar en dos modos:
+ * - Lazo cerrado: cada cliente lanza la siguiente operación al terminar la anterior
+ * - Tasa fija:    cada operación tiene una hora de inicio prevista según la tasa objetivo
+ *
+ * En tasa fija la latencia se mide desde la hora prevista, no desde el inicio real.
+ * Así, si el sistema se atasca, las operaciones que debieron empezar durante el
+ * atasco cuentan su espera (corrección de la "omisión coordinada"); de lo contrario
+ * los percentiles altos saldrían engañosamente bajos.
+ *
+ * Los resultados se imprimen y pueden guardarse en JSON para comparar versiones.
+ */
+public class PruebaCarga {
+
+    /**
+     * Operaciones que puede ejecutar un cliente.
+     */
+    public enum Operacion { CIFRAR, DESCIFRAR, FIRMAR, VERIFICAR }
+
+    /**
+     * Parámetros de una prueba de carga.
+     */
+    public static class Configuracion {
+        int clientes = Runtime.getRuntime().availableProcessors();
+        boolean hilosVirtuales = false;
+        double tasaObjetivo = 0;            // operaciones/s en total; 0 = lazo cerrado
+        int duracionSegundos = 30;
+        int calentamientoSegundos = 5;
+        int tamanioMensaje = 1024;
+        int[] pesos = {1, 1, 1, 1};         // indexado por Operacion.ordinal()
+
+        public Configuracion clientes(int clientes) {
+            this.clientes = clientes;
+            return this;
+        }
+
+        public Configuracion hilosVirtuales(boolean hilosVirtuales) {
+            this.hilosVirtuales = hilosVirtuales;
+            return this;
+        }
+
+        public Configuracion tasaObjetivo(double tasaObjetivo) {
+            this.tasaObjetivo = tasaObjetivo;
+            return this;
+        }
+
+        public Configuracion duracionSegundos(int duracionSegundos) {
+            this.duracionSegundos = duracionSegundos;
+            return this;
+        }
+
+        public Configuracion calentamientoSegundos(int calentamientoSegundos) {
+            this.calentamientoSegundos = calentamientoSegundos;
+            return this;
+        }
+
+        public Configuracion tamanioMensaje(int tamanioMensaje) {
+            this.tamanioMensaje = tamanioMensaje;
+            return this;
+        }
+
+        public Configuracion peso(Operacion operacion, int peso) {
+            this.pesos[operacion.ordinal()] = peso;
+            return this;
+        }
+
+        private void validar() {
+            int total = 0;
+            for (int p : pesos) {
+                if (p < 0) {
+                    throw new IllegalArgumentException("Los pesos de la mezcla no pueden ser negativos");
+                }
+                total += p;
+            }
+            if (total == 0) {
+                throw new IllegalArgumentException("La mezcla debe incluir al menos una operación");
+            }
+            if (clientes <= 0 || duracionSegundos <= 0 || calentamientoSegundos < 0 || tasaObjetivo < 0) {
+                throw new IllegalArgumentException("Parámetros de carga inválidos");
+            }
+        }
+    }
+
+    /**
+     * Resultado agregado de una prueba de carga.
+     */
+    public static class Resultado {
+        private final Configuracion config;
+        private final long duracionNanos;
+        private final long errores;
+        private final RegistroLatencias total;
+        private final RegistroLatencias[] porOperacion;
+
+        Resultado(Configuracion config, long duracionNanos, long errores, RegistroLatencias total,
+                  RegistroLatencias[] porOperacion) {
+            this.config        = config;
+            this.duracionNanos = duracionNanos;
+            this.errores       = errores;
+            this.total         = total;
+            this.porOperacion  = porOperacion;
+        }
+
+        /**
+         * Rendimiento logrado: operaciones medidas entre el inicio de la medición y el fin
+         * real de la última. En tasa fija no puede superar la tasa objetivo, pero sí quedarse
+         * por debajo si el sistema se satura y las operaciones se retrasan.
+         */
+        public double getRendimiento() {
+            return total.getCantidad() * 1e9 / duracionNanos;
+        }
+
+        /**
+         * @return Tasa pedida en op/s (0 = lazo cerrado)
+         */
+        public double getTasaObjetivo() {
+            return config.tasaObjetivo;
+        }
+
+        /**
+         * @return Tiempo real de la medición, hasta que terminó la última operación
+         */
+        public long getDuracionNanos() {
+            return duracionNanos;
+        }
+
+        public RegistroLatencias getLatencias() {
+            return total;
+        }
+
+        public RegistroLatencias getLatencias(Operacion operacion) {
+            return porOperacion[operacion.ordinal()];
+        }
+
+        public long getErrores() {
+            return errores;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "%d clientes (%s), %s, %d s medidos%n",
+                    config.clientes, config.hilosVirtuales ? "virtuales" : "plataforma",
+                    config.tasaObjetivo > 0 ? String.format(Locale.ROOT, "tasa fija %.0f op/s", config.tasaObjetivo)
+                            : "lazo cerrado",
+                    config.duracionSegundos));
+            sb.append(String.format(Locale.ROOT, "Rendimiento: %.1f op/s logrados%s  (%d operaciones en %.2f s, %d errores)%n",
+                    getRendimiento(),
+                    config.tasaObjetivo > 0 ? String.format(Locale.ROOT, " de %.0f pedidos", config.tasaObjetivo) : "",
+                    total.getCantidad(), duracionNanos / 1e9, errores));
+            sb.append(String.format(Locale.ROOT, "%-10s %9s %10s %10s %10s %10s%n",
+                    "Operación", "Cantidad", "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+            for (Operacion op : Operacion.values()) {
+                agregarFila(sb, op.name(), porOperacion[op.ordinal()]);
+            }
+            agregarFila(sb, "TOTAL", total);
+            return sb.toString();
+        }
+
+        private static void agregarFila(StringBuilder sb, String nombre, RegistroLatencias r) {
+            if (r.getCantidad() == 0) {
+                return;
+            }
+            sb.append(String.format(Locale.ROOT, "%-10s %9d %10.3f %10.3f %10.3f %10.3f%n", nombre, r.getCantidad(),
+                    RegistroLatencias.ms(r.percentil(50)), RegistroLatencias.ms(r.percentil(99)),
+                    RegistroLatencias.ms(r.percentil(99.9)), RegistroLatencias.ms(r.maximo())));
+        }
+
+        /**
+         * Serializa el resultado en JSON.
+         */
+        public String aJson() {
+            StringBuilder sb = new StringBuilder(1024);
+            sb.append("{\n");
+            sb.append(String.format(Locale.ROOT,
+                    "  \"clientes\": %d,%n  \"hilosVirtuales\": %b,%n  \"tasaObjetivo\": %.1f,%n"
+                            + "  \"duracionSegundos\": %d,%n  \"tamanioMensaje\": %d,%n",
+                    config.clientes, config.hilosVirtuales, config.tasaObjetivo,
+                    config.duracionSegundos, config.tamanioMensaje));
+            sb.append(String.format(Locale.ROOT,
+                    "  \"rendimiento\": %.2f,%n  \"duracionMedidaSegundos\": %.3f,%n  \"errores\": %d,%n",
+                    getRendimiento(), duracionNanos / 1e9, errores));
+            sb.append("  \"latenciasMs\": {\n");
+            List<String> filas = new ArrayList<>();
+            for (Operacion op : Operacion.values()) {
+                if (porOperacion[op.ordinal()].getCantidad() > 0) {
+                    filas.add(filaJson(op.name(), porOperacion[op.ordinal()]));
+                }
+            }
+            filas.add(filaJson("TOTAL", total));
+            sb.append(String.join(",\n", filas)).append("\n  }\n}\n");
+            return sb.toString();
+        }
+
+        private static String filaJson(String nombre, RegistroLatencias r) {
+            return String.format(Locale.ROOT,
+                    "    \"%s\": {\"cantidad\": %d, \"p50\": %.4f, \"p99\": %.4f, \"p999\": %.4f, \"max\": %.4f}",
+                    nombre, r.getCantidad(), RegistroLatencias.ms(r.percentil(50)),
+                    RegistroLatencias.ms(r.percentil(99)), RegistroLatencias.ms(r.percentil(99.9)),
+                    RegistroLatencias.ms(r.maximo()));
+        }
+
+        /**
+         * Guarda el resultado en un archivo JSON.
+         */
+        public void guardar(Path archivo) throws IOException {
+            Files.write(archivo, aJson().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    /**
+     * Ejecuta una prueba de carga.
+     *
+     * @param config Parámetros de la prueba
+     * @return Resultado agregado
+     * @throws Exception si la preparación falla
+     */
+    public static Resultado ejecutar(Configuracion config) throws Exception {
+        config.validar();
+
+        // Datos compartidos (solo lectura) para todas las operaciones
+        KeyPair parRSA = GeneradorClaves.generarParClaves(GeneradorClaves.ALGORITMO_RSA, 2048);
+        String mensaje = generarMensaje(config.tamanioMensaje);
+        String cifrado = MotorCifrado.cifrarHibrido(mensaje, parRSA.getPublic());
+        String firma   = MotorFirma.firmar(mensaje, parRSA.getPrivate(), MotorFirma.FIRMA_RSA);
+        Datos datos = new Datos(parRSA, mensaje, cifrado, firma);
+
+        long inicio      = System.nanoTime();
+        long inicioMedir = inicio + config.calentamientoSegundos * 1_000_000_000L;
+        long fin         = inicioMedir + config.duracionSegundos * 1_000_000_000L;
+        // Intervalo entre operaciones de un mismo cliente (0 = lazo cerrado)
+        long intervalo   = config.tasaObjetivo > 0 ? (long) (1e9 * config.clientes / config.tasaObjetivo) : 0;
+
+        AtomicLong errores = new AtomicLong();
+        List<Cliente> clientes = new ArrayList<>(config.clientes);
+        List<Thread> hilos = new ArrayList<>(config.clientes);
+        for (int i = 0; i < config.clientes; i++) {
+            // En tasa fija se escalonan los clientes para no lanzar todos a la vez
+            long desfase = intervalo * i / config.clientes;
+            Cliente cliente = new Cliente(config, datos, inicio + desfase, inicioMedir, fin, intervalo, errores);
+            clientes.add(cliente);
+            Thread hilo = config.hilosVirtuales
+                    ? Thread.ofVirtual().name("carga-", i).unstarted(cliente)
+                    : Thread.ofPlatform().name("carga-", i).unstarted(cliente);
+            hilos.add(hilo);
+        }
+        for (Thread hilo : hilos) {
+            hilo.start();
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+
+        RegistroLatencias total = new RegistroLatencias();
+        RegistroLatencias[] porOperacion = new RegistroLatencias[Operacion.values().length];
+        for (int i = 0; i < porOperacion.length; i++) {
+            porOperacion[i] = new RegistroLatencias();
+        }
+        // La medición dura hasta que termina la última operación, no hasta el fin nominal:
+        // en tasa fija cada cliente completa siempre tasa × duración operaciones
+        long ultimaFinalizacion = fin;
+        for (Cliente cliente : clientes) {
+            for (int i = 0; i < porOperacion.length; i++) {
+                porOperacion[i].combinar(cliente.registros[i]);
+                total.combinar(cliente.registros[i]);
+            }
+            if (cliente.ultimaFinalizacion != 0) {
+                ultimaFinalizacion = Math.max(ultimaFinalizacion, cliente.ultimaFinalizacion);
+            }
+        }
+        return new Resultado(config, ultimaFinalizacion - inicioMedir, errores.get(), total, porOperacion);
+    }
+
+    /**
+     * Datos de prueba compartidos por todos los clientes.
+     */
+    private static class Datos {
+        final KeyPair par;
+        final String mensaje;
+        final String cifrado;
+        final String firma;
+
+        Datos(KeyPair par, String mensaje, String cifrado, String firma) {
+            this.par     = par;
+            this.mensaje = mensaje;
+            this.cifrado = cifrado;
+            this.firma   = firma;
+        }
+    }
+
+    /**
+     * Cliente de carga: un hilo con sus propios registros de latencia.
+     */
+    private static class Cliente implements Runnable {
+        private final Configuracion config;
+        private final Datos datos;
+        private final long primeraOperacion;
+        private final long inicioMedir;
+        private final long fin;
+        private final long intervalo;
+        private final AtomicLong errores;
+        final RegistroLatencias[] registros = new RegistroLatencias[Operacion.values().length];
+        long ultimaFinalizacion = 0; // se lee tras join()
+
+        Cliente(Configuracion config, Datos datos, long primeraOperacion, long inicioMedir, long fin,
+                long intervalo, AtomicLong errores) {
+            this.config           = config;
+            this.datos            = datos;
+            this.primeraOperacion = primeraOperacion;
+            this.inicioMedir      = inicioMedir;
+            this.fin              = fin;
+            this.intervalo        = intervalo;
+            this.errores          = errores;
+            for (int i = 0; i < registros.length; i++) {
+                registros[i] = new RegistroLatencias();
+            }
+        }
+
+        @Override
+        public void run() {
+            long previsto = primeraOperacion;
+            while (true) {
+                long ahora = System.nanoTime();
+                if (intervalo > 0) {
+                    // Tasa fija: esperar a la hora prevista (si vamos atrasados, no se espera)
+                    if (previsto >= fin) {
+                        break;
+                    }
+                    while (ahora < previsto) {
+                        LockSupport.parkNanos(previsto - ahora);
+                        ahora = System.nanoTime();
+                    }
+                } else {
+                    if (ahora >= fin) {
+                        break;
+                    }
+                    previsto = ahora;
+                }
+
+                Operacion op = elegirOperacion();
+                try {
+                    ejecutarOperacion(op);
+                } catch (Exception ex) {
+                    errores.incrementAndGet();
+                }
+                long terminado = System.nanoTime();
+                if (previsto >= inicioMedir) {
+                    registros[op.ordinal()].registrar(terminado - previsto);
+                    ultimaFinalizacion = terminado;
+                }
+                previsto += intervalo;
+            }
+        }
+
+        private Operacion elegirOperacion() {
+            int total = 0;
+            for (int p : config.pesos) {
+                total += p;
+            }
+            int r = ThreadLocalRandom.current().nextInt(total);
+            for (Operacion op : Operacion.values()) {
+                r -= config.pesos[op.ordinal()];
+                if (r < 0) {
+                    return op;
+                }
+            }
+            return Operacion.CIFRAR;
+        }
+
+        private void ejecutarOperacion(Operacion op) throws Exception {
+            switch (op) {
+                case CIFRAR:
+                    MotorCifrado.cifrarHibrido(datos.mensaje, datos.par.getPublic());
+                    break;
+                case DESCIFRAR:
+                    MotorCifrado.descifrarHibrido(datos.cifrado, datos.par.getPrivate());
+                    break;
+                case FIRMAR:
+                    MotorFirma.firmar(datos.mensaje, datos.par.getPrivate(), MotorFirma.FIRMA_RSA);
+                    break;
+                case VERIFICAR:
+                    if (!MotorFirma.verificar(datos.mensaje, datos.firma, datos.par.getPublic(), MotorFirma.FIRMA_RSA)) {
+                        throw new IllegalStateException("Firma inválida");
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static String generarMensaje(int tamanio) {
+        StringBuilder sb = new StringBuilder(tamanio);
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        while (sb.length() < tamanio) {
+            sb.append((char) ('a' + rnd.nextInt(26)));
+        }
+        return sb.toString();
+    }
+}
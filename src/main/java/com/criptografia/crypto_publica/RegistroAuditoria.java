@@ -0,0 +1,547 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registro de auditoría de solo anexado, encadenado por hashes y sellado con firmas.
+ *
+ * Cada operación sensible (generación de claves, descifrado, firma) añade una línea:
+ *   secuencia|marca de tiempo (ms)|operación|detalle|hash
+ * donde hash = SHA-256(hash anterior || "secuencia|marca|operación|detalle"), partiendo
+ * de 32 bytes a cero. Modificar, borrar o reordenar una línea rompe la cadena.
+ *
+ * Cada SELLO_CADA_ENTRADAS entradas como mucho (antes si pasa un minuto, al reanudar un
+ * registro que no terminaba en sello y al cerrar) se añade una entrada SELLO cuyo
+ * detalle es "algoritmo:firma Base64" de la firma del último hash con MotorFirma. Un
+ * sello impide que alguien sin la clave de sellado reescriba la cadena entera.
+ *
+ * Con la clave pública, el verificador exige además un sello válido al menos cada
+ * SELLO_CADA_ENTRADAS entradas y con el algoritmo esperado (nunca el que indique el
+ * archivo), e informa de las entradas finales posteriores al último sello como no
+ * verificadas: quitar los sellos y recalcular la cadena ya no pasa por un registro íntegro.
+ *
+ * Escritura con confirmación en grupo: las operaciones solo encolan su entrada
+ * (microsegundos); un único hilo escritor reúne las entradas que llegan durante
+ * una ventana corta, calcula la cadena, las escribe y hace un solo fsync por lote.
+ *
+ * Mientras no se configure, registrar() no hace nada. Configuración por propiedades:
+ *   -Dcrypto.auditoria.archivo=auditoria.log
+ *   -Dcrypto.auditoria.clave=sello.key  -Dcrypto.auditoria.algoritmo=RSA|EC   (opcional, para sellar)
+ */
+public class RegistroAuditoria {
+
+    // Operaciones registradas
+    public static final String GENERAR_CLAVES = "GENERAR_CLAVES";
+    public static final String DESCIFRAR      = "DESCIFRAR";
+    public static final String FIRMAR         = "FIRMAR";
+    public static final String SELLO          = "SELLO";
+
+    static final String PROPIEDAD_ARCHIVO   = "crypto.auditoria.archivo";
+    static final String PROPIEDAD_CLAVE     = "crypto.auditoria.clave";
+    static final String PROPIEDAD_ALGORITMO = "crypto.auditoria.algoritmo";
+
+    private static final long VENTANA_NANOS      = 2_000_000L;        // ventana de confirmación en grupo
+    private static final int  LOTE_MAXIMO        = 4096;
+    private static final int  CAPACIDAD_COLA     = 65_536;
+    private static final long SELLO_CADA_ENTRADAS = 1000;
+    private static final long SELLO_CADA_NANOS   = 60_000_000_000L;  // 1 minuto
+    private static final int  TAMANIO_HASH       = 32;
+
+    private static volatile RegistroAuditoria activo;
+    // Permite excluir operaciones internas (precalentamiento, mediciones) del registro
+    private static final ThreadLocal<Boolean> omitir = ThreadLocal.withInitial(() -> Boolean.FALSE);
+
+    /**
+     * Entrada pendiente de escribir.
+     */
+    private static class Entrada {
+        final long marca;
+        final String operacion;
+        final String detalle;
+        final CompletableFuture<Void> escrita = new CompletableFuture<>();
+
+        Entrada(long marca, String operacion, String detalle) {
+            this.marca = marca;
+            this.operacion = operacion;
+            this.detalle = detalle;
+        }
+    }
+
+    private final FileChannel canal;
+    private final PrivateKey claveSello;
+    private final String algoritmoSello;
+    private final BlockingQueue<Entrada> cola = new LinkedBlockingQueue<>(CAPACIDAD_COLA);
+    private final Thread escritor;
+    private volatile boolean abierto = true;
+
+    // Estado de la cadena: solo lo usa el hilo escritor
+    private final MessageDigest digest;
+    private long secuencia;
+    private byte[] ultimoHash;
+    private long entradasDesdeSello = 0;
+    private long ultimoSello = System.nanoTime();
+    private boolean selloPendiente;   // el registro existente no terminaba en sello
+
+    private RegistroAuditoria(Path archivo, PrivateKey claveSello, String algoritmoSello) throws Exception {
+        this.claveSello = claveSello;
+        this.algoritmoSello = algoritmoSello;
+        this.digest = SelectorProveedores.messageDigest("SHA-256");
+        this.canal = FileChannel.open(archivo, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        reanudar();
+        this.escritor = new Thread(this::escribir, "auditoria");
+        this.escritor.setDaemon(true);
+        this.escritor.start();
+    }
+
+    // =========================================================================
+    //                          API ESTÁTICA (GANCHOS)
+    // =========================================================================
+
+    /**
+     * Activa el registro global de auditoría. Si ya había uno activo, se cierra.
+     *
+     * @param archivo        Archivo de registro (se continúa si ya existe)
+     * @param claveSello     Clave privada para los sellos, o null para no sellar
+     * @param algoritmoSello Algoritmo de firma de los sellos (MotorFirma.FIRMA_RSA o FIRMA_ECDSA)
+     * @throws Exception si el archivo no se puede abrir o su última entrada no es válida
+     */
+    public static synchronized void configurar(Path archivo, PrivateKey claveSello, String algoritmoSello)
+            throws Exception {
+        cerrar();
+        activo = new RegistroAuditoria(archivo, claveSello, algoritmoSello);
+    }
+
+    /**
+     * Configura el registro a partir de las propiedades del sistema, si están definidas.
+     * El registro se cierra (y se sella) automáticamente al terminar la JVM.
+     *
+     * @throws Exception si la configuración indicada no es válida
+     */
+    public static void configurarDesdePropiedades() throws Exception {
+        String archivo = System.getProperty(PROPIEDAD_ARCHIVO);
+        if (archivo == null) {
+            return;
+        }
+        PrivateKey clave = null;
+        String algoritmoFirma = null;
+        String rutaClave = System.getProperty(PROPIEDAD_CLAVE);
+        if (rutaClave != null) {
+            String algoritmo = System.getProperty(PROPIEDAD_ALGORITMO, GeneradorClaves.ALGORITMO_RSA).toUpperCase();
+            String base64 = new String(Files.readAllBytes(Paths.get(rutaClave)), StandardCharsets.US_ASCII).trim();
+            clave = GeneradorClaves.base64APrivateKey(base64, algoritmo);
+            algoritmoFirma = algoritmo.equals(GeneradorClaves.ALGORITMO_EC) ? MotorFirma.FIRMA_ECDSA : MotorFirma.FIRMA_RSA;
+        }
+        configurar(Paths.get(archivo), clave, algoritmoFirma);
+        Runtime.getRuntime().addShutdownHook(new Thread(RegistroAuditoria::cerrar, "auditoria-cierre"));
+    }
+
+    /**
+     * Cierra el registro activo: escribe lo pendiente, añade un sello final y libera el archivo.
+     */
+    public static synchronized void cerrar() {
+        RegistroAuditoria registro = activo;
+        activo = null;
+        if (registro != null) {
+            registro.detener();
+        }
+    }
+
+    public static boolean configurado() {
+        return activo != null;
+    }
+
+    /**
+     * Registra una operación. No hace nada si el registro no está configurado.
+     * Solo encola la entrada; la escritura y el fsync ocurren en el hilo escritor.
+     *
+     * @param operacion Operación (GENERAR_CLAVES, DESCIFRAR, FIRMAR, ...)
+     * @param detalle   Detalle legible (algoritmo, tamaño...). Nunca datos sensibles.
+     * @return Futuro que se completa cuando la entrada es durable (ya completado si no hay registro)
+     */
+    public static CompletableFuture<Void> registrar(String operacion, String detalle) {
+        RegistroAuditoria registro = activo;
+        if (registro == null || omitir.get()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return registro.encolar(operacion, detalle);
+    }
+
+    /**
+     * Ejecuta una tarea interna sin registrar sus operaciones (p. ej. el precalentamiento).
+     */
+    public static void sinAuditoria(TareaInterna tarea) throws Exception {
+        boolean anterior = omitir.get();
+        omitir.set(Boolean.TRUE);
+        try {
+            tarea.ejecutar();
+        } finally {
+            omitir.set(anterior);
+        }
+    }
+
+    @FunctionalInterface
+    public interface TareaInterna {
+        void ejecutar() throws Exception;
+    }
+
+    // =========================================================================
+    //                          ESCRITOR (CONFIRMACIÓN EN GRUPO)
+    // =========================================================================
+
+    private CompletableFuture<Void> encolar(String operacion, String detalle) {
+        Entrada entrada = new Entrada(System.currentTimeMillis(), operacion, limpiar(detalle));
+        try {
+            // Si el escritor va retrasado, la operación espera: nunca se pierden entradas
+            while (!cola.offer(entrada, 100, TimeUnit.MILLISECONDS)) {
+                if (!abierto) {
+                    entrada.escrita.completeExceptionally(new IllegalStateException("Registro de auditoría cerrado"));
+                    break;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            entrada.escrita.completeExceptionally(ex);
+        }
+        return entrada.escrita;
+    }
+
+    private void escribir() {
+        // Las firmas de los sellos no deben volver a entrar en la cola del propio escritor
+        omitir.set(Boolean.TRUE);
+        List<Entrada> lote = new ArrayList<>();
+        StringBuilder texto = new StringBuilder();
+        try {
+            if (selloPendiente && claveSello != null) {
+                // Cubre las entradas que quedaron sin sellar (p. ej. tras una caída)
+                sellar(texto);
+                volcar(texto);
+            }
+            while (abierto || !cola.isEmpty()) {
+                Entrada primera = cola.poll(100, TimeUnit.MILLISECONDS);
+                if (primera != null) {
+                    // Reunir lo que llegue durante la ventana para compartir un único fsync
+                    lote.add(primera);
+                    long limite = System.nanoTime() + VENTANA_NANOS;
+                    long espera;
+                    while (lote.size() < LOTE_MAXIMO && (espera = limite - System.nanoTime()) > 0) {
+                        Entrada siguiente = cola.poll(espera, TimeUnit.NANOSECONDS);
+                        if (siguiente == null) {
+                            break;
+                        }
+                        lote.add(siguiente);
+                    }
+                    for (Entrada e : lote) {
+                        anexar(texto, e.marca, e.operacion, e.detalle);
+                        // Dentro del lote: nunca más de SELLO_CADA_ENTRADAS entradas sin sello
+                        if (entradasDesdeSello >= SELLO_CADA_ENTRADAS) {
+                            sellar(texto);
+                        }
+                    }
+                }
+                boolean tocaSello = entradasDesdeSello >= SELLO_CADA_ENTRADAS
+                        || (entradasDesdeSello > 0 && System.nanoTime() - ultimoSello >= SELLO_CADA_NANOS);
+                if (tocaSello) {
+                    sellar(texto);
+                }
+                if (texto.length() > 0) {
+                    volcar(texto);
+                }
+                for (Entrada e : lote) {
+                    e.escrita.complete(null);
+                }
+                lote.clear();
+            }
+            if (entradasDesdeSello > 0) {
+                sellar(texto);
+                volcar(texto);
+            }
+        } catch (Exception ex) {
+            System.err.println("✗ Registro de auditoría detenido: " + ex.getMessage());
+            abierto = false;
+            for (Entrada e : lote) {
+                e.escrita.completeExceptionally(ex);
+            }
+            Entrada pendiente;
+            while ((pendiente = cola.poll()) != null) {
+                pendiente.escrita.completeExceptionally(ex);
+            }
+        }
+    }
+
+    private void anexar(StringBuilder texto, long marca, String operacion, String detalle) {
+        String contenido = secuencia + "|" + marca + "|" + operacion + "|" + detalle;
+        ultimoHash = encadenar(digest, ultimoHash, contenido);
+        texto.append(contenido).append('|').append(HexFormat.of().formatHex(ultimoHash)).append('\n');
+        secuencia++;
+        entradasDesdeSello = operacion.equals(SELLO) ? 0 : entradasDesdeSello + 1;
+    }
+
+    private void sellar(StringBuilder texto) throws Exception {
+        ultimoSello = System.nanoTime();
+        if (claveSello == null) {
+            entradasDesdeSello = 0;
+            return;
+        }
+        // Se firma el hash de la última entrada, codificado en hexadecimal
+        String firma = MotorFirma.firmar(HexFormat.of().formatHex(ultimoHash), claveSello, algoritmoSello);
+        anexar(texto, System.currentTimeMillis(), SELLO, algoritmoSello + ":" + firma);
+    }
+
+    private void volcar(StringBuilder texto) throws IOException {
+        ByteBuffer datos = ByteBuffer.wrap(texto.toString().getBytes(StandardCharsets.UTF_8));
+        while (datos.hasRemaining()) {
+            canal.write(datos, canal.size());
+        }
+        canal.force(false);
+        texto.setLength(0);
+    }
+
+    private void detener() {
+        abierto = false;
+        try {
+            escritor.join();
+            canal.close();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (IOException ex) {
+            System.err.println("✗ Error al cerrar el registro de auditoría: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Recupera la secuencia y el último hash de un registro existente. Si la última
+     * línea quedó a medias (caída durante la escritura), se descarta.
+     */
+    private void reanudar() throws IOException {
+        secuencia = 0;
+        ultimoHash = new byte[TAMANIO_HASH];
+        long tamanio = canal.size();
+        if (tamanio == 0) {
+            return;
+        }
+        int leer = (int) Math.min(tamanio, 64 * 1024);
+        ByteBuffer finArchivo = ByteBuffer.allocate(leer);
+        while (finArchivo.hasRemaining() && canal.read(finArchivo, tamanio - leer + finArchivo.position()) >= 0) {
+            // leer el final del archivo
+        }
+        byte[] fin = finArchivo.array();
+        int ultimoSalto = leer - 1;
+        while (ultimoSalto >= 0 && fin[ultimoSalto] != '\n') {
+            ultimoSalto--;
+        }
+        if (ultimoSalto < 0) {
+            throw new IllegalStateException("Registro de auditoría ilegible: no se encontró una línea completa");
+        }
+        if (ultimoSalto != leer - 1) {
+            canal.truncate(tamanio - leer + ultimoSalto + 1);
+        }
+        int inicio = ultimoSalto - 1;
+        while (inicio >= 0 && fin[inicio] != '\n') {
+            inicio--;
+        }
+        String linea = new String(fin, inicio + 1, ultimoSalto - inicio - 1, StandardCharsets.UTF_8);
+        String[] campos = linea.split("\\|", -1);
+        if (campos.length != 5) {
+            throw new IllegalStateException("Registro de auditoría ilegible: última entrada mal formada");
+        }
+        secuencia = Long.parseLong(campos[0]) + 1;
+        ultimoHash = HexFormat.of().parseHex(campos[4]);
+        selloPendiente = !campos[2].equals(SELLO);
+    }
+
+    private static byte[] encadenar(MessageDigest digest, byte[] anterior, String contenido) {
+        digest.update(anterior);
+        digest.update(contenido.getBytes(StandardCharsets.UTF_8));
+        return digest.digest();
+    }
+
+    private static String limpiar(String detalle) {
+        return detalle == null ? "" : detalle.replace('|', '/').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    // =========================================================================
+    //                          VERIFICADOR FUERA DE LÍNEA
+    // =========================================================================
+
+    /**
+     * Resultado de la verificación de un registro.
+     */
+    public static class Verificacion {
+        private long entradas;
+        private long sellos;
+        private long sinSellar;
+        private boolean valido = true;
+        private String error;
+
+        public long getEntradas() {
+            return entradas;
+        }
+
+        public long getSellos() {
+            return sellos;
+        }
+
+        public boolean isValido() {
+            return valido;
+        }
+
+        /**
+         * @return Entradas posteriores al último sello válido (no verificadas; solo con clave pública)
+         */
+        public long getEntradasSinSellar() {
+            return sinSellar;
+        }
+
+        /**
+         * @return true si la cadena es válida y todas sus entradas están cubiertas por un sello
+         */
+        public boolean isCompleto() {
+            return valido && sinSellar == 0;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        void fallar(long linea, String motivo) {
+            valido = false;
+            error = "línea " + linea + ": " + motivo;
+        }
+
+        @Override
+        public String toString() {
+            if (!valido) {
+                return "❌ Registro alterado (" + error + ")";
+            }
+            if (sinSellar > 0) {
+                return String.format("⚠ Cadena íntegra (%d entradas, %d sellos válidos), pero las últimas %d "
+                        + "entradas no están selladas: no verificadas", entradas, sellos, sinSellar);
+            }
+            return String.format("✅ Registro íntegro: %d entradas, %d sellos válidos", entradas, sellos);
+        }
+    }
+
+    /**
+     * Como verificar(Path, PublicKey, String), con el algoritmo de sello que corresponde
+     * al tipo de la clave (SHA256withRSA o SHA256withECDSA).
+     *
+     * @param archivo      Registro de auditoría
+     * @param clavePublica Clave pública de sellado RSA o EC, o null para comprobar solo la cadena
+     * @return Resultado de la verificación (se detiene en el primer error)
+     * @throws IOException si el archivo no se puede leer
+     */
+    public static Verificacion verificar(Path archivo, PublicKey clavePublica) throws IOException {
+        String algoritmoSello = null;
+        if (clavePublica != null) {
+            switch (clavePublica.getAlgorithm()) {
+                case GeneradorClaves.ALGORITMO_RSA: algoritmoSello = MotorFirma.FIRMA_RSA; break;
+                case GeneradorClaves.ALGORITMO_EC:  algoritmoSello = MotorFirma.FIRMA_ECDSA; break;
+                default:
+                    throw new IllegalArgumentException("Clave de sellado no soportada: " + clavePublica.getAlgorithm());
+            }
+        }
+        return verificar(archivo, clavePublica, algoritmoSello);
+    }
+
+    /**
+     * Recorre el registro completo y comprueba la cadena de hashes, la secuencia
+     * y (si se da la clave pública) los sellos: cada uno debe usar el algoritmo esperado
+     * y no pueden pasar más de SELLO_CADA_ENTRADAS entradas sin un sello válido. Las
+     * entradas posteriores al último sello se informan como no verificadas.
+     *
+     * @param archivo        Registro de auditoría
+     * @param clavePublica   Clave pública de sellado, o null para comprobar solo la cadena
+     * @param algoritmoSello Algoritmo de firma esperado en los sellos (se ignora sin clave)
+     * @return Resultado de la verificación (se detiene en el primer error)
+     * @throws IOException si el archivo no se puede leer
+     */
+    public static Verificacion verificar(Path archivo, PublicKey clavePublica, String algoritmoSello)
+            throws IOException {
+        Verificacion resultado = new Verificacion();
+        MessageDigest digest;
+        try {
+            digest = SelectorProveedores.messageDigest("SHA-256");
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+        byte[] hash = new byte[TAMANIO_HASH];
+        long numeroLinea = 0;
+        try (BufferedReader lector = Files.newBufferedReader(archivo, StandardCharsets.UTF_8)) {
+            String linea;
+            while ((linea = lector.readLine()) != null) {
+                numeroLinea++;
+                int separador = linea.lastIndexOf('|');
+                String[] campos = linea.split("\\|", -1);
+                if (campos.length != 5 || separador < 0) {
+                    resultado.fallar(numeroLinea, "formato inválido");
+                    return resultado;
+                }
+                if (!campos[0].equals(Long.toString(resultado.entradas))) {
+                    resultado.fallar(numeroLinea, "secuencia " + campos[0] + ", se esperaba " + resultado.entradas);
+                    return resultado;
+                }
+                byte[] anterior = hash;
+                hash = encadenar(digest, hash, linea.substring(0, separador));
+                if (!HexFormat.of().formatHex(hash).equals(campos[4])) {
+                    resultado.fallar(numeroLinea, "el hash no coincide con la cadena");
+                    return resultado;
+                }
+                if (clavePublica != null) {
+                    if (campos[2].equals(SELLO)) {
+                        // El algoritmo es el esperado, nunca el que diga el archivo
+                        String prefijo = algoritmoSello + ":";
+                        if (!campos[3].startsWith(prefijo)) {
+                            resultado.fallar(numeroLinea, "sello con un algoritmo distinto de " + algoritmoSello);
+                            return resultado;
+                        }
+                        boolean selloValido;
+                        try {
+                            selloValido = MotorFirma.verificar(HexFormat.of().formatHex(anterior),
+                                    campos[3].substring(prefijo.length()), clavePublica, algoritmoSello);
+                        } catch (Exception ex) {
+                            selloValido = false;
+                        }
+                        if (!selloValido) {
+                            resultado.fallar(numeroLinea, "sello con firma inválida");
+                            return resultado;
+                        }
+                        resultado.sellos++;
+                        resultado.sinSellar = 0;
+                    } else if (++resultado.sinSellar > SELLO_CADA_ENTRADAS) {
+                        resultado.fallar(numeroLinea, "más de " + SELLO_CADA_ENTRADAS + " entradas sin sello");
+                        return resultado;
+                    }
+                }
+                resultado.entradas++;
+            }
+        }
+        return resultado;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Registro de latencias (en nanosegundos) con cálculo de percentiles.
+ *
+ * No es seguro entre hilos: cada hilo usa su propio registro y al final
+ * se combinan con {@link #combinar(RegistroLatencias)}. Guarda todas las
+ * muestras, por lo que los percentiles son exactos.
+ */
+public class RegistroLatencias {
+
+    private long[] muestras;
+    private int cantidad;
+    private boolean ordenado;
+
+    public RegistroLatencias() {
+        this(1024);
+    }
+
+    public RegistroLatencias(int capacidadInicial) {
+        muestras = new long[Math.max(16, capacidadInicial)];
+    }
+
+    /**
+     * Agrega una muestra.
+     *
+     * @param nanos Latencia en nanosegundos
+     */
+    public void registrar(long nanos) {
+        if (cantidad == muestras.length) {
+            muestras = Arrays.copyOf(muestras, cantidad * 2);
+        }
+        muestras[cantidad++] = nanos;
+        ordenado = false;
+    }
+
+    /**
+     * Agrega todas las muestras de otro registro a este.
+     *
+     * @param otro Registro a incorporar
+     */
+    public void combinar(RegistroLatencias otro) {
+        if (cantidad + otro.cantidad > muestras.length) {
+            muestras = Arrays.copyOf(muestras, Math.max(muestras.length * 2, cantidad + otro.cantidad));
+        }
+        System.arraycopy(otro.muestras, 0, muestras, cantidad, otro.cantidad);
+        cantidad += otro.cantidad;
+        ordenado = false;
+    }
+
+    public int getCantidad() {
+        return cantidad;
+    }
+
+    /**
+     * Retorna el percentil indicado (método del rango más cercano).
+     *
+     * @param percentil Valor entre 0 y 100 (ej: 99.9)
+     * @return Latencia en nanosegundos, o 0 si no hay muestras
+     */
+    public long percentil(double percentil) {
+        if (cantidad == 0) {
+            return 0;
+        }
+        ordenar();
+        int rango = (int) Math.ceil(percentil / 100.0 * cantidad);
+        return muestras[Math.min(cantidad - 1, Math.max(0, rango - 1))];
+    }
+
+    public long maximo() {
+        return percentil(100);
+    }
+
+    public double promedio() {
+        if (cantidad == 0) {
+            return 0;
+        }
+        double suma = 0;
+        for (int i = 0; i < cantidad; i++) {
+            suma += muestras[i];
+        }
+        return suma / cantidad;
+    }
+
+    /**
+     * Resumen legible en milisegundos: p50, p90, p99, p99.9 y máximo.
+     */
+    public String resumen() {
+        return String.format(Locale.ROOT, "p50=%.3f ms  p90=%.3f ms  p99=%.3f ms  p99.9=%.3f ms  max=%.3f ms",
+                ms(percentil(50)), ms(percentil(90)), ms(percentil(99)), ms(percentil(99.9)), ms(maximo()));
+    }
+
+    /**
+     * Convierte nanosegundos a milisegundos.
+     */
+    public static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    private void ordenar() {
+        if (!ordenado) {
+            Arrays.sort(muestras, 0, cantidad);
+            ordenado = true;
+        }
+    }
+}
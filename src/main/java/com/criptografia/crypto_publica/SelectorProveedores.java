@@ -0,0 +1,313 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import javax.crypto.Cipher;
+import javax.crypto.KEM;
+import javax.crypto.KeyAgreement;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Selección del proveedor JCA para cada algoritmo.
+ *
+ * Por defecto se usa el primer proveedor instalado que ofrezca el algoritmo
+ * (comportamiento estándar de getInstance). Un proveedor se puede fijar:
+ * - Por código: fijar("Cipher", "AES/GCM/NoPadding", "SunJCE")
+ * - Por propiedad del sistema: -Dcrypto.proveedor.Cipher.AES/GCM/NoPadding=SunJCE
+ *
+ * En modo automático (autoseleccionar o -Dcrypto.proveedores=auto) se mide brevemente
+ * cada proveedor instalado para AES-GCM, RSA-OAEP y los algoritmos de firma, y se
+ * guarda el más rápido. Las decisiones se consultan con diagnostico().
+ */
+public final class SelectorProveedores {
+
+    public static final String CIPHER           = "Cipher";
+    public static final String SIGNATURE        = "Signature";
+    public static final String KEY_PAIR_GEN     = "KeyPairGenerator";
+    public static final String KEY_FACTORY      = "KeyFactory";
+    public static final String KEY_GENERATOR    = "KeyGenerator";
+    public static final String MESSAGE_DIGEST   = "MessageDigest";
+    public static final String KEY_AGREEMENT    = "KeyAgreement";
+    public static final String KEM_TIPO         = "KEM";
+
+    static final String PROPIEDAD_MODO      = "crypto.proveedores";
+    static final String PREFIJO_PROPIEDAD   = "crypto.proveedor.";
+
+    // Tiempo de medición por proveedor y algoritmo en modo automático
+    private static final long MEDICION_NANOS = 100_000_000L;
+
+    // "Tipo.Algoritmo" → proveedor elegido (ausente = proveedor por defecto)
+    private static final Map<String, Provider> elegidos = new ConcurrentHashMap<>();
+    // "Tipo.Algoritmo" → motivo de la elección, para el diagnóstico
+    private static final Map<String, String> motivos = new ConcurrentHashMap<>();
+
+    static {
+        for (String nombre : System.getProperties().stringPropertyNames()) {
+            if (nombre.startsWith(PREFIJO_PROPIEDAD)) {
+                String servicio = nombre.substring(PREFIJO_PROPIEDAD.length());
+                int punto = servicio.indexOf('.');
+                if (punto > 0) {
+                    try {
+                        fijar(servicio.substring(0, punto), servicio.substring(punto + 1),
+                                System.getProperty(nombre));
+                    } catch (IllegalArgumentException ex) {
+                        motivos.put(servicio, "propiedad ignorada: " + ex.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    private SelectorProveedores() {
+    }
+
+    /**
+     * Indica si el modo automático está activado por propiedad del sistema.
+     */
+    public static boolean autoActivado() {
+        return "auto".equalsIgnoreCase(System.getProperty(PROPIEDAD_MODO));
+    }
+
+    /**
+     * Fija el proveedor de un algoritmo.
+     *
+     * @param tipo            Tipo de servicio (CIPHER, SIGNATURE, ...)
+     * @param algoritmo       Algoritmo o transformación, p. ej. "AES/GCM/NoPadding"
+     * @param nombreProveedor Nombre del proveedor instalado
+     * @throws IllegalArgumentException si el proveedor no existe o no ofrece el algoritmo
+     */
+    public static void fijar(String tipo, String algoritmo, String nombreProveedor) {
+        Provider proveedor = Security.getProvider(nombreProveedor);
+        if (proveedor == null) {
+            throw new IllegalArgumentException("Proveedor no instalado: " + nombreProveedor);
+        }
+        if (!ofrece(tipo, algoritmo, proveedor)) {
+            throw new IllegalArgumentException(nombreProveedor + " no ofrece " + tipo + "." + algoritmo);
+        }
+        elegidos.put(tipo + "." + algoritmo, proveedor);
+        motivos.put(tipo + "." + algoritmo, proveedor.getName() + " (fijado)");
+    }
+
+    /**
+     * Vuelve al proveedor por defecto para un algoritmo.
+     */
+    public static void liberar(String tipo, String algoritmo) {
+        elegidos.remove(tipo + "." + algoritmo);
+        motivos.remove(tipo + "." + algoritmo);
+    }
+
+    // =========================================================================
+    //                          CREACIÓN DE MOTORES
+    // =========================================================================
+
+    public static Cipher cipher(String transformacion) throws Exception {
+        Provider p = elegidos.get(CIPHER + "." + transformacion);
+        return p == null ? Cipher.getInstance(transformacion) : Cipher.getInstance(transformacion, p);
+    }
+
+    public static Signature signature(String algoritmo) throws Exception {
+        Provider p = elegidos.get(SIGNATURE + "." + algoritmo);
+        return p == null ? Signature.getInstance(algoritmo) : Signature.getInstance(algoritmo, p);
+    }
+
+    public static KeyPairGenerator keyPairGenerator(String algoritmo) throws Exception {
+        Provider p = elegidos.get(KEY_PAIR_GEN + "." + algoritmo);
+        return p == null ? KeyPairGenerator.getInstance(algoritmo) : KeyPairGenerator.getInstance(algoritmo, p);
+    }
+
+    public static KeyFactory keyFactory(String algoritmo) throws Exception {
+        Provider p = elegidos.get(KEY_FACTORY + "." + algoritmo);
+        return p == null ? KeyFactory.getInstance(algoritmo) : KeyFactory.getInstance(algoritmo, p);
+    }
+
+    public static KeyGenerator keyGenerator(String algoritmo) throws Exception {
+        Provider p = elegidos.get(KEY_GENERATOR + "." + algoritmo);
+        return p == null ? KeyGenerator.getInstance(algoritmo) : KeyGenerator.getInstance(algoritmo, p);
+    }
+
+    public static MessageDigest messageDigest(String algoritmo) throws Exception {
+        Provider p = elegidos.get(MESSAGE_DIGEST + "." + algoritmo);
+        return p == null ? MessageDigest.getInstance(algoritmo) : MessageDigest.getInstance(algoritmo, p);
+    }
+
+    public static KeyAgreement keyAgreement(String algoritmo) throws Exception {
+        Provider p = elegidos.get(KEY_AGREEMENT + "." + algoritmo);
+        return p == null ? KeyAgreement.getInstance(algoritmo) : KeyAgreement.getInstance(algoritmo, p);
+    }
+
+    public static KEM kem(String algoritmo) throws Exception {
+        Provider p = elegidos.get(KEM_TIPO + "." + algoritmo);
+        return p == null ? KEM.getInstance(algoritmo) : KEM.getInstance(algoritmo, p);
+    }
+
+    // =========================================================================
+    //                          MODO AUTOMÁTICO
+    // =========================================================================
+
+    /**
+     * Mide los proveedores instalados para AES-GCM, RSA-OAEP, SHA256withRSA y
+     * SHA256withECDSA y elige el más rápido de cada uno. Los algoritmos fijados
+     * explícitamente no se modifican.
+     *
+     * @throws Exception si no se pueden generar las claves de prueba
+     */
+    public static void autoseleccionar() throws Exception {
+        // Claves de prueba creadas directamente: no son operaciones del usuario ni se auditan
+        KeyPair parRSA = GeneradorClaves.crearGenerador(GeneradorClaves.ALGORITMO_RSA, 2048).generateKeyPair();
+        KeyPair parEC  = GeneradorClaves.crearGenerador(GeneradorClaves.ALGORITMO_EC, 256).generateKeyPair();
+        SecretKey claveAES = MotorCifrado.generarClaveDatos();
+        byte[] bloque = FuenteAleatoria.bytes(16 * 1024);
+        byte[] mensaje = FuenteAleatoria.bytes(1024);
+
+        elegirMasRapido(CIPHER, MotorCifrado.TRANSFORMACION_AES, p -> {
+            Cipher c = Cipher.getInstance(MotorCifrado.TRANSFORMACION_AES, p);
+            c.init(Cipher.ENCRYPT_MODE, claveAES, new GCMParameterSpec(128, FuenteAleatoria.bytes(12)));
+            c.doFinal(bloque);
+        });
+        elegirMasRapido(CIPHER, MotorCifrado.TRANSFORMACION_RSA, p -> {
+            Cipher c = Cipher.getInstance(MotorCifrado.TRANSFORMACION_RSA, p);
+            c.init(Cipher.ENCRYPT_MODE, parRSA.getPublic(), MotorCifrado.PARAMETROS_OAEP, FuenteAleatoria.obtener());
+            byte[] envuelta = c.doFinal(claveAES.getEncoded());
+            c.init(Cipher.DECRYPT_MODE, parRSA.getPrivate(), MotorCifrado.PARAMETROS_OAEP);
+            c.doFinal(envuelta);
+        });
+        elegirMasRapido(SIGNATURE, MotorFirma.FIRMA_RSA, p -> firmarYVerificar(p, MotorFirma.FIRMA_RSA, parRSA, mensaje));
+        elegirMasRapido(SIGNATURE, MotorFirma.FIRMA_ECDSA, p -> firmarYVerificar(p, MotorFirma.FIRMA_ECDSA, parEC, mensaje));
+    }
+
+    private static void firmarYVerificar(Provider p, String algoritmo, KeyPair par, byte[] mensaje) throws Exception {
+        Signature s = Signature.getInstance(algoritmo, p);
+        s.initSign(par.getPrivate(), FuenteAleatoria.obtener());
+        s.update(mensaje);
+        byte[] firma = s.sign();
+        s.initVerify(par.getPublic());
+        s.update(mensaje);
+        if (!s.verify(firma)) {
+            throw new IllegalStateException("Verificación fallida");
+        }
+    }
+
+    @FunctionalInterface
+    private interface Operacion {
+        void ejecutar(Provider proveedor) throws Exception;
+    }
+
+    private static void elegirMasRapido(String tipo, String algoritmo, Operacion operacion) {
+        String clave = tipo + "." + algoritmo;
+        if (elegidos.containsKey(clave)) {
+            return;
+        }
+        Provider mejor = null;
+        double mejorTasa = 0;
+        StringBuilder medidas = new StringBuilder();
+        for (Provider proveedor : Security.getProviders()) {
+            if (!ofrece(tipo, algoritmo, proveedor)) {
+                continue;
+            }
+            double tasa;
+            try {
+                tasa = medir(proveedor, operacion);
+            } catch (Exception ex) {
+                // Proveedor incompatible con las claves de prueba: se descarta
+                continue;
+            }
+            if (medidas.length() > 0) {
+                medidas.append(", ");
+            }
+            medidas.append(String.format("%s %.0f op/s", proveedor.getName(), tasa));
+            if (tasa > mejorTasa) {
+                mejor = proveedor;
+                mejorTasa = tasa;
+            }
+        }
+        if (mejor != null) {
+            elegidos.put(clave, mejor);
+            motivos.put(clave, mejor.getName() + " (auto: " + medidas + ")");
+        }
+    }
+
+    private static double medir(Provider proveedor, Operacion operacion) throws Exception {
+        // Calentamiento breve para no medir la carga de clases
+        for (int i = 0; i < 5; i++) {
+            operacion.ejecutar(proveedor);
+        }
+        long inicio = System.nanoTime();
+        long fin = inicio + MEDICION_NANOS;
+        long operaciones = 0;
+        long ahora;
+        do {
+            operacion.ejecutar(proveedor);
+            operaciones++;
+            ahora = System.nanoTime();
+        } while (ahora < fin);
+        return operaciones * 1e9 / (ahora - inicio);
+    }
+
+    private static boolean ofrece(String tipo, String algoritmo, Provider proveedor) {
+        try {
+            switch (tipo) {
+                case CIPHER:         Cipher.getInstance(algoritmo, proveedor); break;
+                case SIGNATURE:      Signature.getInstance(algoritmo, proveedor); break;
+                case KEY_PAIR_GEN:   KeyPairGenerator.getInstance(algoritmo, proveedor); break;
+                case KEY_FACTORY:    KeyFactory.getInstance(algoritmo, proveedor); break;
+                case KEY_GENERATOR:  KeyGenerator.getInstance(algoritmo, proveedor); break;
+                case MESSAGE_DIGEST: MessageDigest.getInstance(algoritmo, proveedor); break;
+                case KEY_AGREEMENT:  KeyAgreement.getInstance(algoritmo, proveedor); break;
+                case KEM_TIPO:       KEM.getInstance(algoritmo, proveedor); break;
+                default:
+                    throw new IllegalArgumentException("Tipo de servicio desconocido: " + tipo);
+            }
+            return true;
+        } catch (IllegalArgumentException ex) {
+            throw ex;
+        } catch (Exception ex) {
+            return false;
+        }
+    }
+
+    // =========================================================================
+    //                          DIAGNÓSTICO
+    // =========================================================================
+
+    /**
+     * Describe los proveedores instalados y el elegido para cada algoritmo.
+     *
+     * @return Informe legible, una línea por decisión
+     */
+    public static String diagnostico() {
+        StringBuilder sb = new StringBuilder("Proveedores instalados:");
+        for (Provider proveedor : Security.getProviders()) {
+            sb.append(' ').append(proveedor.getName());
+        }
+        sb.append('\n');
+        List<String> claves = new ArrayList<>(motivos.keySet());
+        claves.sort(null);
+        if (claves.isEmpty()) {
+            sb.append("  (todos los algoritmos usan el proveedor por defecto)\n");
+        }
+        for (String clave : claves) {
+            sb.append("  ").append(clave).append(" → ").append(motivos.get(clave)).append('\n');
+        }
+        sb.append(CifradoDatos.diagnostico()).append('\n');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,527 @@
+/*
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Licenses/license-default.txt to change this license
+ * Click nbfs://nbhost/SystemFileSystem/Templates/Classes/Class.java to edit this template
+ */
+package com.criptografia.crypto_publica;
+
+/**
+ *
+ * @author washi
+ */
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.RSAKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Validación estricta de sobres híbridos antes de descifrarlos.
+ *
+ * Un sobre malformado o malicioso no debe costar una operación de clave privada ni
+ * memoria proporcional a su tamaño. El validador recorre el texto sin expresiones
+ * regulares ni copias y rechaza, de lo más barato a lo más caro:
+ * 1. Tamaño total por encima del máximo que permiten los límites
+ * 2. Estructura: número de separadores
+ * 3. Longitudes decodificadas (calculadas sin decodificar) de cabecera, clave y contenido
+ * 4. Alfabeto Base64 de cada parte
+ * 5. Versión y campos de la cabecera (decodificada en un búfer acotado), longitud
+ *    original declarada si hay compresión e identificador de clave
+ * Solo entonces se decodifican la clave envuelta y el contenido, ya con tamaños acotados.
+ *
+ * Cada rechazo lanza {@link Rechazo} (una IllegalArgumentException) y suma uno al
+ * contador de su motivo; metricas() los resume. Los mismos contadores se acumulan además
+ * para todos los validadores del proceso (metricasGlobales()), incluidos los que se crean
+ * para una sola llamada.
+ */
+public class ValidadorSobre {
+
+    /**
+     * Motivos de rechazo, en el orden en que se comprueban.
+     */
+    public enum Motivo {
+        TAMANIO("tamaño total"),
+        ESTRUCTURA("estructura"),
+        CABECERA_LONGITUD("longitud de cabecera"),
+        CLAVE_LONGITUD("longitud de clave envuelta"),
+        CONTENIDO_LONGITUD("longitud de contenido"),
+        BASE64("Base64 inválido"),
+        VERSION("versión"),
+        CABECERA("cabecera inválida"),
+        COMPRESION("longitud original declarada"),
+        ID_CLAVE("identificador de clave");
+
+        private final String descripcion;
+
+        Motivo(String descripcion) {
+            this.descripcion = descripcion;
+        }
+
+        public String getDescripcion() {
+            return descripcion;
+        }
+    }
+
+    /**
+     * Sobre rechazado por el validador.
+     */
+    public static class Rechazo extends IllegalArgumentException {
+        private static final long serialVersionUID = 1L;
+
+        private final Motivo motivo;
+
+        Rechazo(Motivo motivo, String detalle) {
+            super("Sobre rechazado (" + motivo.getDescripcion() + "): " + detalle);
+            this.motivo = motivo;
+        }
+
+        public Motivo getMotivo() {
+            return motivo;
+        }
+    }
+
+    /**
+     * Límites de aceptación. Los valores por defecto admiten cualquier sobre que
+     * produce la aplicación con claves de hasta 4096 bits y ML-KEM-1024.
+     */
+    public static class Limites {
+        // Contenido máximo por defecto; se puede cambiar con -Dcrypto.sobre.contenidoMaximo=bytes
+        static final int CONTENIDO_MAXIMO_POR_DEFECTO =
+                Integer.getInteger("crypto.sobre.contenidoMaximo", 64 * 1024 * 1024);
+
+        int cabeceraMaxima = 512;
+        int claveMaxima = 8 * 1024;
+        int longitudClave = 0;                           // 0 = cualquiera hasta claveMaxima
+        int contenidoMaximo = CONTENIDO_MAXIMO_POR_DEFECTO;
+        int longitudOriginalMaxima = CONTENIDO_MAXIMO_POR_DEFECTO;
+        boolean formatoAnterior = true;
+        final List<byte[]> idsClave = new ArrayList<>();  // vacía = cualquier id
+        byte[] idPropio;                                  // id de la clave de paraClave, o null
+        AnilloClaves anillo;
+
+        /**
+         * @param bytes Tamaño máximo de la cabecera decodificada
+         */
+        public Limites cabeceraMaxima(int bytes) {
+            this.cabeceraMaxima = bytes;
+            return this;
+        }
+
+        /**
+         * @param bytes Tamaño máximo de la clave envuelta decodificada
+         */
+        public Limites claveMaxima(int bytes) {
+            this.claveMaxima = bytes;
+            return this;
+        }
+
+        /**
+         * @param bytes Tamaño exacto de la clave envuelta (p. ej. el módulo RSA), 0 = cualquiera
+         */
+        public Limites longitudClave(int bytes) {
+            this.longitudClave = bytes;
+            return this;
+        }
+
+        /**
+         * @param bytes Tamaño máximo del contenido decodificado (nonce + texto cifrado + tag)
+         */
+        public Limites contenidoMaximo(int bytes) {
+            this.contenidoMaximo = bytes;
+            return this;
+        }
+
+        /**
+         * @param bytes Longitud original máxima que puede declarar un sobre comprimido
+         */
+        public Limites longitudOriginalMaxima(int bytes) {
+            this.longitudOriginalMaxima = bytes;
+            return this;
+        }
+
+        /**
+         * @param aceptar Si se acepta el formato anterior sin cabecera (clave + separador + contenido)
+         */
+        public Limites formatoAnterior(boolean aceptar) {
+            this.formatoAnterior = aceptar;
+            return this;
+        }
+
+        /**
+         * Acepta solo sobres con cabecera dirigidos a este identificador (se puede repetir).
+         *
+         * @param idClave Huella SHA-256 de la clave pública del destinatario
+         */
+        public Limites idClave(byte[] idClave) {
+            this.idsClave.add(idClave.clone());
+            return this;
+        }
+
+        /**
+         * Acepta solo sobres con cabecera dirigidos a alguna clave del anillo.
+         */
+        public Limites anillo(AnilloClaves anillo) {
+            this.anillo = anillo;
+            return this;
+        }
+
+        /**
+         * Ajusta los límites a una clave privada RSA: longitud exacta de la clave envuelta
+         * y, si la clave incluye el exponente público, su identificador. A diferencia de
+         * idClave, el identificador solo se exige a los sobres con cabecera: el formato
+         * anterior sigue aceptándose mientras formatoAnterior lo permita.
+         *
+         * @param clavePriv Clave privada del destinatario
+         * @throws Exception si no se puede derivar la clave pública
+         */
+        public Limites paraClave(PrivateKey clavePriv) throws Exception {
+            if (clavePriv instanceof RSAKey) {
+                longitudClave((((RSAKey) clavePriv).getModulus().bitLength() + 7) / 8);
+            }
+            PublicKey clavePub = GeneradorClaves.clavePublicaDe(clavePriv);
+            if (clavePub != null) {
+                idPropio = GeneradorClaves.calcularHuella(clavePub);
+            }
+            return this;
+        }
+
+        // Longitud Base64 (con relleno) de n bytes
+        private static long enBase64(long n) {
+            return (n + 2) / 3 * 4;
+        }
+
+        long longitudTotalMaxima() {
+            return enBase64(cabeceraMaxima) + enBase64(claveMaxima) + enBase64(contenidoMaximo)
+                    + 2L * MotorCifrado.SEPARADOR_HIBRIDO.length();
+        }
+    }
+
+    /**
+     * Sobre aceptado, con sus partes ya decodificadas.
+     */
+    public static class Sobre {
+        private final byte[] cabecera;
+        private final CabeceraSobre datosCabecera;
+        private final byte[] claveCifrada;
+        private final byte[] contenido;
+
+        Sobre(byte[] cabecera, CabeceraSobre datosCabecera, byte[] claveCifrada, byte[] contenido) {
+            this.cabecera      = cabecera;
+            this.datosCabecera = datosCabecera;
+            this.claveCifrada  = claveCifrada;
+            this.contenido     = contenido;
+        }
+
+        /**
+         * @return Cabecera codificada (AAD), o null en el formato anterior
+         */
+        public byte[] getCabecera() {
+            return cabecera;
+        }
+
+        /**
+         * @return Cabecera decodificada, o null en el formato anterior
+         */
+        public CabeceraSobre getDatosCabecera() {
+            return datosCabecera;
+        }
+
+        public byte[] getClaveCifrada() {
+            return claveCifrada;
+        }
+
+        /**
+         * @return Nonce + contenido cifrado + tag
+         */
+        public byte[] getContenido() {
+            return contenido;
+        }
+    }
+
+    // Contenido mínimo: nonce y tag, aunque el texto plano esté vacío
+    private static final int CONTENIDO_MINIMO = GeneradorNonce.TAMANIO_NONCE + CifradoDatos.TAMANIO_TAG;
+
+    // Valor de cada carácter del alfabeto Base64 estándar (-1 = fuera del alfabeto)
+    private static final byte[] VALORES_BASE64 = new byte[128];
+
+    static {
+        Arrays.fill(VALORES_BASE64, (byte) -1);
+        String alfabeto = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alfabeto.length(); i++) {
+            VALORES_BASE64[alfabeto.charAt(i)] = (byte) i;
+        }
+    }
+
+    // Contadores de todos los validadores del proceso
+    private static final Contadores GLOBALES = new Contadores();
+
+    private static final ValidadorSobre POR_DEFECTO = new ValidadorSobre(new Limites());
+
+    private final Limites limites;
+    private final long longitudTotalMaxima;
+    private final Contadores contadores = new Contadores();
+
+    /**
+     * Sobres aceptados y rechazos por motivo.
+     */
+    private static class Contadores {
+        final AtomicLong aceptados = new AtomicLong();
+        final AtomicLongArray rechazos = new AtomicLongArray(Motivo.values().length);
+
+        long rechazosTotales() {
+            long total = 0;
+            for (int i = 0; i < rechazos.length(); i++) {
+                total += rechazos.get(i);
+            }
+            return total;
+        }
+
+        String resumen() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("Sobres validados: ").append(aceptados.get()).append(" aceptados, ")
+                    .append(rechazosTotales()).append(" rechazados\n");
+            for (Motivo motivo : Motivo.values()) {
+                long n = rechazos.get(motivo.ordinal());
+                if (n > 0) {
+                    sb.append("  ").append(motivo.getDescripcion()).append(": ").append(n).append('\n');
+                }
+            }
+            return sb.toString();
+        }
+    }
+
+    /**
+     * @param limites Límites de aceptación (no se deben modificar después)
+     */
+    public ValidadorSobre(Limites limites) {
+        this.limites = limites;
+        this.longitudTotalMaxima = limites.longitudTotalMaxima();
+    }
+
+    /**
+     * @return Validador con los límites por defecto que usa MotorCifrado.descifrarHibrido
+     */
+    public static ValidadorSobre porDefecto() {
+        return POR_DEFECTO;
+    }
+
+    /**
+     * Validador con los límites por defecto ajustados a una clave privada (Limites.paraClave):
+     * si su identificador se puede derivar, los sobres con cabecera deben ir dirigidos a ella.
+     * No se guarda: sus rechazos quedan en metricasGlobales().
+     *
+     * @param clavePriv Clave privada con la que se va a descifrar
+     * @return Validador de esa clave
+     * @throws Exception si no se puede derivar la clave pública
+     */
+    public static ValidadorSobre paraClave(PrivateKey clavePriv) throws Exception {
+        return new ValidadorSobre(new Limites().paraClave(clavePriv));
+    }
+
+    // =========================================================================
+    //                              VALIDACIÓN
+    // =========================================================================
+
+    /**
+     * Valida un sobre y, si es aceptable, decodifica sus partes.
+     *
+     * @param sobre Sobre híbrido en texto
+     * @return Partes decodificadas
+     * @throws Rechazo si el sobre no cumple la estructura o los límites
+     */
+    public Sobre validar(String sobre) {
+        // 1. Tamaño total
+        if (sobre == null || sobre.length() > longitudTotalMaxima) {
+            throw rechazar(Motivo.TAMANIO, sobre == null ? "vacío" : sobre.length() + " caracteres");
+        }
+
+        // 2. Estructura: 2 o 3 partes, sin expresiones regulares
+        String separador = MotorCifrado.SEPARADOR_HIBRIDO;
+        int primero = sobre.indexOf(separador);
+        int segundo = primero < 0 ? -1 : sobre.indexOf(separador, primero + separador.length());
+        if (primero < 0 || (segundo >= 0 && sobre.indexOf(separador, segundo + separador.length()) >= 0)) {
+            throw rechazar(Motivo.ESTRUCTURA, "se esperaban 2 o 3 partes");
+        }
+        boolean conCabecera = segundo >= 0;
+        if (!conCabecera && !limites.formatoAnterior) {
+            throw rechazar(Motivo.ESTRUCTURA, "formato anterior sin cabecera no admitido");
+        }
+        if (!conCabecera && (!limites.idsClave.isEmpty() || limites.anillo != null)) {
+            // Sin cabecera no hay identificador que comprobar; paraClave no cuenta como fijado
+            throw rechazar(Motivo.ID_CLAVE, "el formato anterior no incluye identificador de clave");
+        }
+        int inicioClave = conCabecera ? primero + separador.length() : 0;
+        int finClave    = conCabecera ? segundo : primero;
+        int inicioDatos = finClave + separador.length();
+
+        // 3. Longitudes decodificadas, calculadas sin decodificar
+        int longitudCabecera = conCabecera ? longitudDecodificada(sobre, 0, primero) : 0;
+        if (conCabecera && (longitudCabecera < 1 || longitudCabecera > limites.cabeceraMaxima)) {
+            throw rechazar(Motivo.CABECERA_LONGITUD, longitudCabecera + " bytes");
+        }
+        int longitudClaveCifrada = longitudDecodificada(sobre, inicioClave, finClave);
+        if (longitudClaveCifrada < 1 || longitudClaveCifrada > limites.claveMaxima
+                || (limites.longitudClave > 0 && longitudClaveCifrada != limites.longitudClave)) {
+            throw rechazar(Motivo.CLAVE_LONGITUD, longitudClaveCifrada + " bytes");
+        }
+        int longitudContenido = longitudDecodificada(sobre, inicioDatos, sobre.length());
+        if (longitudContenido < CONTENIDO_MINIMO || longitudContenido > limites.contenidoMaximo) {
+            throw rechazar(Motivo.CONTENIDO_LONGITUD, longitudContenido + " bytes");
+        }
+
+        // 4. Alfabeto Base64
+        if ((conCabecera && !esBase64(sobre, 0, primero)) || !esBase64(sobre, inicioClave, finClave)
+                || !esBase64(sobre, inicioDatos, sobre.length())) {
+            throw rechazar(Motivo.BASE64, "carácter fuera del alfabeto o relleno incorrecto");
+        }
+
+        // 5. Cabecera (acotada por cabeceraMaxima)
+        byte[] cabecera = null;
+        CabeceraSobre datosCabecera = null;
+        if (conCabecera) {
+            cabecera = decodificar(sobre, 0, primero, longitudCabecera);
+            if ((cabecera[0] & 0xFF) != CabeceraSobre.VERSION_ACTUAL) {
+                throw rechazar(Motivo.VERSION, String.valueOf(cabecera[0] & 0xFF));
+            }
+            try {
+                datosCabecera = CabeceraSobre.decodificar(cabecera);
+            } catch (IllegalArgumentException ex) {
+                throw rechazar(Motivo.CABECERA, ex.getMessage());
+            }
+            if (datosCabecera.getCodecCompresion() != 0
+                    && datosCabecera.getLongitudOriginal() > limites.longitudOriginalMaxima) {
+                throw rechazar(Motivo.COMPRESION, datosCabecera.getLongitudOriginal() + " bytes");
+            }
+            comprobarIdClave(datosCabecera.getIdClave());
+        }
+
+        // 6. Solo ahora, con tamaños acotados, se decodifican la clave y el contenido
+        byte[] claveCifrada = decodificar(sobre, inicioClave, finClave, longitudClaveCifrada);
+        byte[] contenido = decodificar(sobre, inicioDatos, sobre.length(), longitudContenido);
+        contadores.aceptados.incrementAndGet();
+        GLOBALES.aceptados.incrementAndGet();
+        return new Sobre(cabecera, datosCabecera, claveCifrada, contenido);
+    }
+
+    private void comprobarIdClave(byte[] idClave) {
+        if (limites.idsClave.isEmpty() && limites.anillo == null && limites.idPropio == null) {
+            return;
+        }
+        if (idClave == null) {
+            throw rechazar(Motivo.ID_CLAVE, "el sobre no incluye identificador de clave");
+        }
+        if (limites.idPropio != null && MessageDigest.isEqual(limites.idPropio, idClave)) {
+            return;
+        }
+        for (byte[] aceptado : limites.idsClave) {
+            if (MessageDigest.isEqual(aceptado, idClave)) {
+                return;
+            }
+        }
+        if (limites.anillo != null && limites.anillo.buscar(idClave) != null) {
+            return;
+        }
+        throw rechazar(Motivo.ID_CLAVE, "el sobre está dirigido a otra clave");
+    }
+
+    private Rechazo rechazar(Motivo motivo, String detalle) {
+        contadores.rechazos.incrementAndGet(motivo.ordinal());
+        GLOBALES.rechazos.incrementAndGet(motivo.ordinal());
+        return new Rechazo(motivo, detalle);
+    }
+
+    // =========================================================================
+    //                              BASE64
+    // =========================================================================
+
+    // Longitud decodificada de texto[desde, hasta), o -1 si la longitud no es válida
+    private static int longitudDecodificada(String texto, int desde, int hasta) {
+        int n = hasta - desde;
+        if (n <= 0 || n % 4 != 0) {
+            return -1;
+        }
+        int relleno = texto.charAt(hasta - 1) != '=' ? 0 : texto.charAt(hasta - 2) != '=' ? 1 : 2;
+        return n / 4 * 3 - relleno;
+    }
+
+    private static boolean esBase64(String texto, int desde, int hasta) {
+        int fin = hasta;
+        while (fin > desde && fin > hasta - 2 && texto.charAt(fin - 1) == '=') {
+            fin--;
+        }
+        for (int i = desde; i < fin; i++) {
+            char c = texto.charAt(i);
+            if (c >= 128 || VALORES_BASE64[c] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Decodifica texto[desde, hasta), ya validado, en un arreglo del tamaño exacto
+    private static byte[] decodificar(String texto, int desde, int hasta, int longitud) {
+        byte[] salida = new byte[longitud];
+        int pos = 0;
+        for (int i = desde; i < hasta; i += 4) {
+            int bloque = 0;
+            int validos = 0;
+            for (int j = 0; j < 4; j++) {
+                char c = texto.charAt(i + j);
+                bloque <<= 6;
+                if (c != '=') {
+                    bloque |= VALORES_BASE64[c];
+                    validos++;
+                }
+            }
+            salida[pos++] = (byte) (bloque >> 16);
+            if (validos > 2) {
+                salida[pos++] = (byte) (bloque >> 8);
+            }
+            if (validos > 3) {
+                salida[pos++] = (byte) bloque;
+            }
+        }
+        return salida;
+    }
+
+    // =========================================================================
+    //                              MÉTRICAS
+    // =========================================================================
+
+    public long getAceptados() {
+        return contadores.aceptados.get();
+    }
+
+    public long getRechazos(Motivo motivo) {
+        return contadores.rechazos.get(motivo.ordinal());
+    }
+
+    public long getRechazosTotales() {
+        return contadores.rechazosTotales();
+    }
+
+    /**
+     * @return Sobres aceptados y rechazados por este validador, con el desglose por motivo
+     */
+    public String metricas() {
+        return contadores.resumen();
+    }
+
+    public static long getAceptadosGlobales() {
+        return GLOBALES.aceptados.get();
+    }
+
+    public static long getRechazosGlobales(Motivo motivo) {
+        return GLOBALES.rechazos.get(motivo.ordinal());
+    }
+
+    /**
+     * @return Sobres aceptados y rechazados por todos los validadores del proceso
+     */
+    public static String metricasGlobales() {
+        return GLOBALES.resumen();
+    }
+}
@@ -17,6 +17,7 @@ import java.awt.event.ActionEvent;
 import java.security.KeyPair;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.util.function.Supplier;
 
 /**
  * Ventana principal de la aplicación.
@@ -74,6 +75,9 @@ public class VentanaPrincipal extends JFrame {
     private JLabel lblEstadoFirma;
     private JComboBox<String> comboAlgoFirma;
 
+    // Clave de la propiedad que guarda el constructor de una pestaña aún no construida
+    private static final String CONSTRUCTOR_TAB = "constructorTab";
+
     // ===================== CONSTRUCTOR =====================
     public VentanaPrincipal() {
         configurarVentana();
@@ -109,15 +113,45 @@ public class VentanaPrincipal extends JFrame {
         // ---- TABS ----
         JTabbedPane tabs = new JTabbedPane();
         tabs.setFont(new Font("SansSerif", Font.BOLD, 14));
+        // Solo la primera pestaña se construye al arrancar; el resto al seleccionarla
         tabs.addTab("🔑 Generación de Claves", crearTabClaves());
-        tabs.addTab("🔒 Cifrado / Descifrado", crearTabCifrado());
-        tabs.addTab("✍️  Firma Digital",        crearTabFirma());
+        agregarTabDiferida(tabs, "🔒 Cifrado / Descifrado", this::crearTabCifrado);
+        agregarTabDiferida(tabs, "✍️  Firma Digital",        this::crearTabFirma);
+        agregarTabDiferida(tabs, "📊 Rendimiento",           PanelRendimiento::new);
+        tabs.addChangeListener(ev -> construirTabSeleccionada(tabs));
         panelPrincipal.add(tabs, BorderLayout.CENTER);
 
         // ---- FOOTER ----
         panelPrincipal.add(crearFooter(), BorderLayout.SOUTH);
     }
 
+    /**
+     * Agrega una pestaña vacía cuyo contenido se construye la primera vez que se selecciona.
+     */
+    private void agregarTabDiferida(JTabbedPane tabs, String titulo, Supplier<JPanel> constructor) {
+        JPanel contenedor = new JPanel(new BorderLayout());
+        contenedor.putClientProperty(CONSTRUCTOR_TAB, constructor);
+        tabs.addTab(titulo, contenedor);
+    }
+
+    /**
+     * Construye el contenido de la pestaña seleccionada si todavía no existe.
+     */
+    @SuppressWarnings("unchecked")
+    private void construirTabSeleccionada(JTabbedPane tabs) {
+        if (!(tabs.getSelectedComponent() instanceof JPanel)) {
+            return;
+        }
+        JPanel contenedor = (JPanel) tabs.getSelectedComponent();
+        Supplier<JPanel> constructor = (Supplier<JPanel>) contenedor.getClientProperty(CONSTRUCTOR_TAB);
+        if (constructor == null) {
+            return;
+        }
+        contenedor.putClientProperty(CONSTRUCTOR_TAB, null);
+        contenedor.add(constructor.get(), BorderLayout.CENTER);
+        contenedor.revalidate();
+    }
+
     // =========================================================================
     //                          HEADER Y FOOTER
     // =========================================================================
@@ -166,6 +200,16 @@ public class VentanaPrincipal extends JFrame {
         contenedorTexto.add(Box.createVerticalStrut(2)); // Espacio entre líneas
         contenedorTexto.add(texto2);
 
+        // Indicar si las operaciones quedan registradas en el registro de auditoría
+        if (RegistroAuditoria.configurado()) {
+            JLabel texto3 = new JLabel("🧾 Registro de auditoría activo: las operaciones quedan encadenadas y selladas.");
+            texto3.setFont(new Font("SansSerif", Font.ITALIC, 11));
+            texto3.setForeground(new Color(46, 125, 50));
+            texto3.setAlignmentX(JLabel.CENTER_ALIGNMENT);
+            contenedorTexto.add(Box.createVerticalStrut(2));
+            contenedorTexto.add(texto3);
+        }
+
         footer.add(contenedorTexto, BorderLayout.CENTER);
 
         return footer;
@@ -387,6 +431,7 @@ public class VentanaPrincipal extends JFrame {
         panelConfig.add(new JLabel("Algoritmo de Firma:"));
         comboAlgoFirma = new JComboBox<>(new String[]{"SHA256withRSA", "SHA256withECDSA"});
         comboAlgoFirma.setFont(new Font("SansSerif", Font.PLAIN, 12));
+        seleccionarAlgoFirma();
         panelConfig.add(comboAlgoFirma);
 
         JLabel lblInfoFirma = new JLabel("  ℹ️  Requerido: Claves RSA generadas");
@@ -535,12 +580,9 @@ public class VentanaPrincipal extends JFrame {
                     lblEstadoClaves.setForeground(new Color(46, 125, 50));
                     btnGenerarClaves.setEnabled(true);
 
-                    // Actualizar combo de firma según algoritmo
-                    if (algo.equals(GeneradorClaves.ALGORITMO_EC)) {
-                        comboAlgoFirma.setSelectedItem("SHA256withECDSA");
-                    } else {
-                        comboAlgoFirma.setSelectedItem("SHA256withRSA");
-                    }
+                    // Actualizar combo de firma según algoritmo (si la pestaña ya existe)
+                    seleccionarAlgoFirma();
+                    MetricasArranque.marcarPrimeraOperacion("generar claves");
                 });
 
             } catch (Exception ex) {
@@ -582,6 +624,7 @@ public class VentanaPrincipal extends JFrame {
             lblEstadoCifrado.setForeground(new Color(46, 125, 50));
             areaMensajeCifrado.setText(cifrado);
             areaMensajeDescifrado.setText("");
+            MetricasArranque.marcarPrimeraOperacion("cifrar");
 
         } catch (Exception ex) {
             lblEstadoCifrado.setText("✗ Error al cifrar: " + ex.getMessage());
@@ -615,6 +658,7 @@ public class VentanaPrincipal extends JFrame {
             }
             lblEstadoCifrado.setForeground(new Color(46, 125, 50));
             areaMensajeDescifrado.setText(descifrado);
+            MetricasArranque.marcarPrimeraOperacion("descifrar");
 
         } catch (Exception ex) {
             lblEstadoCifrado.setText("✗ Error al descifrar: " + ex.getMessage());
@@ -646,6 +690,7 @@ public class VentanaPrincipal extends JFrame {
             areaHashMensaje.setText(hash);
             lblEstadoFirma.setText("✓ Firma generada exitosamente");
             lblEstadoFirma.setForeground(new Color(100, 50, 150));
+            MetricasArranque.marcarPrimeraOperacion("firmar");
 
         } catch (Exception ex) {
             lblEstadoFirma.setText("✗ Error: " + ex.getMessage());
@@ -695,6 +740,21 @@ public class VentanaPrincipal extends JFrame {
     //                         MÉTODOS AUXILIARES
     // =========================================================================
 
+    /**
+     * Selecciona el algoritmo de firma acorde a las claves actuales.
+     * No hace nada si la pestaña de firma aún no se ha construido.
+     */
+    private void seleccionarAlgoFirma() {
+        if (comboAlgoFirma == null) {
+            return;
+        }
+        if (GeneradorClaves.ALGORITMO_EC.equals(algoritmoActual)) {
+            comboAlgoFirma.setSelectedItem("SHA256withECDSA");
+        } else {
+            comboAlgoFirma.setSelectedItem("SHA256withRSA");
+        }
+    }
+
     /**
      * Actualiza las opciones de tamaño según el algoritmo seleccionado.
      */